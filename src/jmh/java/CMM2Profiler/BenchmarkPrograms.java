@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler;
+
+import CMM2Profiler.cli.ProgramGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Input programs for the benchmarks. A program with about the requested number
+ * of lines, four include files and a matching profiler log is written by the
+ * {@link ProgramGenerator} to a temporary directory. The contents depend on the
+ * line count only.
+ *
+ * @author Matthias Grimm
+ */
+public final class BenchmarkPrograms
+{
+    public static final String NAME = "bench";
+
+    private BenchmarkPrograms()
+    {
+    }
+
+    /**
+     * @param lines  Number of lines of the program
+     * @return Directory with the program and its profiler log
+     */
+    public static File create(int lines) throws IOException
+    {
+        File dir = Files.createTempDirectory("cmm2bench").toFile();
+
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.setSeed(lines);
+        generator.setIncludes(4);
+        generator.setLines(lines);
+        generator.generate(dir, NAME);
+
+        File[] files = dir.listFiles();
+        dir.deleteOnExit();
+        if (files != null)
+            for (File file : files) file.deleteOnExit();
+        return dir;
+    }
+}
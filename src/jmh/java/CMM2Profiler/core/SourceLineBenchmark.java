@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import CMM2Profiler.BenchmarkPrograms;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the creation of source lines: splitting off the comment,
+ * categorizing and the MMBasic lexer.
+ *
+ * @author Matthias Grimm
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SourceLineBenchmark
+{
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int lines;
+
+    private String[] text;
+    private LineStore store;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        File dir = BenchmarkPrograms.create(lines);
+        List<String> content = Files.readAllLines(new File(dir, BenchmarkPrograms.NAME + ".bas").toPath());
+        text = content.toArray(new String[0]);
+
+        store = new LineStore(text.length);
+        for (String line : text) store.add(line);
+    }
+
+    /**
+     * Construction of all source lines, including the lexer.
+     */
+    @Benchmark
+    public LineStore createSourceLines()
+    {
+        LineStore result = new LineStore();
+        int level = 0;
+        for (String line : text) {
+            SourceLine srcLine = new SourceLine(result, result.add(line));
+            level = srcLine.setLevel(level);
+        }
+        return result;
+    }
+
+    /**
+     * The MMBasic lexer alone.
+     */
+    @Benchmark
+    public LineStore lex()
+    {
+        store.tokenSize = 0;
+        for (int idx=0; idx < store.size; idx++)
+            MMBasic.lex(store, idx);
+        return store;
+    }
+}
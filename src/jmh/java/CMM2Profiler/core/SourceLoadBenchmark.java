@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import CMM2Profiler.BenchmarkPrograms;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the stages of {@link Source#load}. The snapshot cache is
+ * disabled, so every load reads and analyses the files.
+ *
+ * @author Matthias Grimm
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dcmm2profiler.cache=")
+public class SourceLoadBenchmark
+{
+    @State(Scope.Benchmark)
+    public static class Program
+    {
+        @Param({"1000", "10000", "100000", "1000000"})
+        public int lines;
+
+        public File dir;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException
+        {
+            dir = BenchmarkPrograms.create(lines);
+        }
+    }
+
+    /**
+     * Source with the files read, but not yet cleaned up.
+     */
+    @State(Scope.Thread)
+    public static class Loaded
+    {
+        public Source source;
+
+        @Setup(Level.Invocation)
+        public void setup(Program program) throws IOException
+        {
+            source = new Source();
+            source.loadFiles(program.dir.getPath(), BenchmarkPrograms.NAME);
+        }
+    }
+
+    /**
+     * Source after the cleanup, references not yet extracted.
+     */
+    @State(Scope.Thread)
+    public static class Cleaned
+    {
+        public Source source;
+
+        @Setup(Level.Invocation)
+        public void setup(Program program) throws IOException
+        {
+            source = new Source();
+            source.loadFiles(program.dir.getPath(), BenchmarkPrograms.NAME);
+            source.cleanupSourceLines();
+        }
+    }
+
+    @Benchmark
+    public Source load(Program program) throws IOException
+    {
+        Source source = new Source();
+        source.load(program.dir.getPath(), BenchmarkPrograms.NAME);
+        return source;
+    }
+
+    @Benchmark
+    public Source loadFiles(Program program) throws IOException
+    {
+        Source source = new Source();
+        source.loadFiles(program.dir.getPath(), BenchmarkPrograms.NAME);
+        return source;
+    }
+
+    @Benchmark
+    public Source cleanupSourceLines(Loaded loaded) throws IOException
+    {
+        loaded.source.cleanupSourceLines();
+        return loaded.source;
+    }
+
+    @Benchmark
+    public Source extractFunctionReferences(Cleaned cleaned) throws IOException
+    {
+        cleaned.source.extractFunctionReferences();
+        return cleaned.source;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.gui;
+
+import CMM2Profiler.BenchmarkPrograms;
+import CMM2Profiler.core.Source;
+import CMM2Profiler.core.SourceLine;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of the cell texts of one frame while scrolling through the profiler
+ * tree. Each invocation renders the line number, calls, time and code of a page
+ * of rows and moves one row down. The "formatted" variant is the former
+ * String.format() path of the cell factories. Run it with the gc profiler to
+ * see the allocation rate per frame.
+ *
+ * @author Matthias Grimm
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dcmm2profiler.cache=")
+@State(Scope.Thread)
+public class CellTextBenchmark
+{
+    private static final int ROWS = 50;         // visible rows of the tree table
+    private static final int LINES = 100000;
+
+    private MainWindowData data;
+    private SourceLine[] lines;
+    private int top;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        File dir = BenchmarkPrograms.create(LINES);
+        Source src = new Source();
+        src.load(dir.getPath(), BenchmarkPrograms.NAME);
+        data = new MainWindowData();
+        data.setSource(src);
+        data.updateProfilerTree();
+        data.setSourceTimeScaler(2);
+
+        lines = new SourceLine[data.getSource().getSourceLineCnt()];
+        for (int n = 0; n < lines.length; n++)
+            lines[n] = data.getSource().getSourceLine(n);
+    }
+
+    @Benchmark
+    public void formatted(Blackhole bh)
+    {
+        for (int row = 0; row < ROWS; row++) {
+            SourceLine srcLine = nextLine(row);
+            bh.consume(String.format("%d", srcLine.getLineNo()));
+            bh.consume(String.format("%d", srcLine.getCalls()));
+            bh.consume(String.format("%.2f", srcLine.getTime()/1000));
+            if (srcLine.getLevel() > 0) {
+                String format = String.format("%%%ds%%s", srcLine.getLevel()*4);
+                bh.consume(String.format(format, "", srcLine.getSource()));
+            } else
+                bh.consume(srcLine.getSource());
+        }
+        top++;
+    }
+
+    @Benchmark
+    public void cached(Blackhole bh)
+    {
+        for (int row = 0; row < ROWS; row++) {
+            SourceLine srcLine = nextLine(row);
+            bh.consume(CellText.number(srcLine.getLineNo()));
+            bh.consume(CellText.number(srcLine.getCalls()));
+            bh.consume(data.getTimeText(srcLine));
+            bh.consume(data.getCodeText(srcLine));
+        }
+        top++;
+    }
+
+    private SourceLine nextLine(int row)
+    {
+        return lines[(top + row) % lines.length];
+    }
+}
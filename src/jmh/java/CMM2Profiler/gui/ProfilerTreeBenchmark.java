@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.gui;
+
+import CMM2Profiler.BenchmarkPrograms;
+import CMM2Profiler.core.Source;
+import CMM2Profiler.core.SourceLine;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javafx.scene.control.TreeItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of building the profiler tree. TreeItems don't need a running
+ * JavaFX toolkit, so this runs headless.
+ *
+ * @author Matthias Grimm
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dcmm2profiler.cache=")
+@State(Scope.Thread)
+public class ProfilerTreeBenchmark
+{
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int lines;
+
+    private MainWindowData data;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        File dir = BenchmarkPrograms.create(lines);
+        Source src = new Source();
+        src.load(dir.getPath(), BenchmarkPrograms.NAME);
+        data = new MainWindowData();
+        data.setSource(src);
+    }
+
+    @Benchmark
+    public TreeItem<SourceLine> updateProfilerTree()
+    {
+        data.updateProfilerTree();
+        return data.getProfilerTree();
+    }
+}
@@ -16,6 +16,7 @@
  */
 package CMM2Profiler;
 
+import java.io.File;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 
@@ -39,6 +40,20 @@ public final class Defaults
     public static final int       APP_REVISION = 4;
     public static final String    APP_SUFFIX = "-1";
     public static final LocalDate APP_DATE = LocalDate.of(2026, 2, 16);
+
+    /**
+     * CACHE_DIR is the directory for the snapshots of analysed programs. It can be changed
+     * with the system property "cmm2profiler.cache". An empty value disables the cache.
+     */
+    public static final String CACHE_DIR = System.getProperty("cmm2profiler.cache",
+            System.getProperty("user.home") + File.separator + "." + APP_NAME + File.separator + "cache");
+
+    /**
+     * CACHE_SIZE is the size of all snapshots in the cache directory in MB. If it is exceeded,
+     * the snapshots used least recently are deleted. It can be changed with the system
+     * property "cmm2profiler.cachesize".
+     */
+    public static final long CACHE_SIZE = Long.getLong("cmm2profiler.cachesize", 256);
    
     public static String getVersionString()
     {
@@ -2,6 +2,10 @@
 
 package CMM2Profiler;
 
+import CMM2Profiler.cli.BatchRunner;
+import CMM2Profiler.cli.ProgramGenerator;
+import java.util.Arrays;
+
 /**
  *
  * @author grimm
@@ -9,11 +13,20 @@ package CMM2Profiler;
 public class Launcher {
 
     /**
+     * The option --batch runs the headless batch mode and --generate writes a
+     * synthetic program. Both don't load any JavaFX class. Without them the GUI
+     * will be started.
+     *
      * @param args the command line arguments
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch"))
+            System.exit(BatchRunner.run(Arrays.copyOfRange(args, 1, args.length)));
+        if (args.length > 0 && args[0].equals("--generate"))
+            System.exit(ProgramGenerator.run(Arrays.copyOfRange(args, 1, args.length)));
+
         Main.main(args);
         System.exit(0);
     }
-    
+
 }
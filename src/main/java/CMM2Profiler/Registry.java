@@ -16,20 +16,55 @@
  */
 package CMM2Profiler;
 
+import CMM2Profiler.utils.ExecutorStats;
+import CMM2Profiler.utils.InstrumentedExecutor;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Master data container class of the application
+ * Master data container class of the application.<p>
+ *
+ * The work of the application runs on three executors:
+ * <ul>
+ * <li>errands - one thread per {@link CMM2Profiler.utils.Errand}, a virtual thread
+ *   if the runtime supports them
+ * <li>io - a bounded pool to read files
+ * <li>compute - a work stealing pool sized to the machine for the CPU bound
+ *   stages of the analysis
+ * </ul>
+ * The sizes are configured with the system properties "cmm2profiler.iothreads",
+ * "cmm2profiler.computethreads" and "cmm2profiler.virtualthreads". The executors
+ * count their tasks, see {@link #getStatistics()}. With the system property
+ * "cmm2profiler.executorstats" the counters are printed to stdout on close.
  * 
  * @author Matthias Grimm <matthiasgrimm@users.sourceforge.net>
  */
 public class Registry
 {
+    private static final int ERRAND_THREADS = 10;       // without virtual threads
+    private static final int IO_THREADS = Integer.getInteger("cmm2profiler.iothreads", 4);
+    private static final int COMPUTE_THREADS = Integer.getInteger("cmm2profiler.computethreads",
+                                                    Runtime.getRuntime().availableProcessors());
+
     private static volatile Registry instance = null;   // Singleton object instance 
 
-    private ExecutorService threadExecutor = Executors.newFixedThreadPool(10);
+    // threads of the io and compute pools, see getWorkerThreadIds()
+    private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+
+    private final InstrumentedExecutor threadExecutor = new InstrumentedExecutor("errands", createErrandExecutor());
+    private final InstrumentedExecutor ioExecutor = new InstrumentedExecutor("io", createIOExecutor(workers));
+    private final ForkJoinPool computePool = createComputePool(workers);
+    private final InstrumentedExecutor computeExecutor = new InstrumentedExecutor("compute", computePool);
     
     /**
      * This method is the global access to the Registry object, which is a Singleton
@@ -58,20 +93,107 @@ public class Registry
     {
     }
 
+    /**
+     * Virtual threads are only available since Java 21, so they are looked up at
+     * runtime. Without them a fixed pool is used.
+     */
+    private static ExecutorService createErrandExecutor()
+    {
+        if (Boolean.parseBoolean(System.getProperty("cmm2profiler.virtualthreads", "true"))) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                // no virtual threads, e.g. an older runtime or only as preview feature
+            }
+        }
+        return Executors.newFixedThreadPool(ERRAND_THREADS);
+    }
+
+    private static ExecutorService createIOExecutor(Set<Thread> workers)
+    {
+        AtomicInteger cnt = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread thread = new Thread(task, "io-"+cnt.incrementAndGet());
+            thread.setDaemon(true);
+            workers.add(thread);
+            return thread;
+        };
+
+        int threads = Math.max(1, IO_THREADS);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ForkJoinPool createComputePool(Set<Thread> workers)
+    {
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            workers.add(thread);
+            return thread;
+        };
+        return new ForkJoinPool(Math.max(1, COMPUTE_THREADS), factory, null, false);
+    }
+
     /**
      * Cleanup stuff before close the program
      */
     public void close()
     {
-        threadExecutor.shutdown();
-        try {
-            if (!threadExecutor.awaitTermination(200, TimeUnit.MILLISECONDS))
-                threadExecutor.shutdownNow();
-            
-        } catch (InterruptedException e) {
-            threadExecutor.shutdownNow();
+        if (Boolean.getBoolean("cmm2profiler.executorstats"))
+            for (ExecutorStats stats : getStatistics())
+                System.out.println(stats);
+
+        for (ExecutorService executor : List.of(threadExecutor, ioExecutor, computePool)) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(200, TimeUnit.MILLISECONDS))
+                    executor.shutdownNow();
+
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
-    public ExecutorService getExecutor() { return threadExecutor; }
+    /**
+     * @return Executor of the errands
+     */
+    public ExecutorService getExecutor()        { return threadExecutor; }
+
+    /**
+     * @return Bounded executor to read files
+     */
+    public ExecutorService getIOExecutor()      { return ioExecutor; }
+
+    /**
+     * @return Executor of the work stealing pool for CPU bound tasks
+     */
+    public ExecutorService getComputeExecutor() { return computeExecutor; }
+
+    /**
+     * @return Work stealing pool for CPU bound tasks, e.g. to split the work with
+     *         fork join tasks. These tasks aren't counted.
+     */
+    public ForkJoinPool getComputePool()        { return computePool; }
+
+    /**
+     * @return Ids of the live threads of the io and compute pools, e.g. to
+     *         measure their allocations
+     */
+    public long[] getWorkerThreadIds()
+    {
+        workers.removeIf(thread -> thread.getState() == Thread.State.TERMINATED);
+        return workers.stream().mapToLong(Thread::getId).toArray();
+    }
+
+    /**
+     * @return Counters of the errand, io and compute executors
+     */
+    public List<ExecutorStats> getStatistics()
+    {
+        return List.of(threadExecutor.getStats(), ioExecutor.getStats(), computeExecutor.getStats());
+    }
 }
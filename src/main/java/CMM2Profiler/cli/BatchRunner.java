@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.cli;
+
+import CMM2Profiler.Defaults;
+import CMM2Profiler.Registry;
+import CMM2Profiler.core.Source;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless batch mode. Every program given on the command line is loaded with
+ * {@link Source#load} and a {@link Report} is printed or written to a file. The
+ * programs are processed in parallel, one thread per core. This class and the
+ * core package don't use any JavaFX class, so the batch mode runs on machines
+ * without a display.
+ * <p>
+ * An argument is either a .bas or .csv file or a directory. A directory adds
+ * every program in it, which has a .bas or a .csv file. Reports of programs with
+ * the same name from different directories are written to &lt;name&gt;.txt,
+ * &lt;name&gt;-2.txt and so on, in the order the programs are given.
+ *
+ * @author Matthias Grimm
+ */
+public class BatchRunner
+{
+    private int topCnt = 20;
+    private File outputDir = null;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    // program name -> {base directory, file name without extension, report file}
+    private final LinkedHashMap<String,String[]> programs = new LinkedHashMap<>();
+    private final HashSet<String> reportNames = new HashSet<>();
+
+    /**
+     * Run the batch mode.
+     *
+     * @param args  Command line arguments behind "--batch"
+     * @return Exit code: 0 on success, 1 if a program failed, 2 for bad arguments
+     */
+    public static int run(String[] args)
+    {
+        BatchRunner runner = new BatchRunner();
+        try {
+            if (!runner.parseArgs(args)) {
+                usage(System.out);
+                return 0;
+            }
+            if (runner.programs.isEmpty())
+                throw new IllegalArgumentException("No program given");
+
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            usage(System.err);
+            return 2;
+        }
+
+        try {
+            return runner.process();
+        } finally {
+            Registry.get().close();
+        }
+    }
+
+    private static void usage(PrintStream out)
+    {
+        out.println(Defaults.APP_NAME + " " + Defaults.getVersionString());
+        out.println("Usage: CMM2Profiler --batch [options] <file or directory> ...");
+        out.println("  --top <n>         Number of top functions and lines, default 20");
+        out.println("  --output <dir>    Write one report per program into <dir>");
+        out.println("  --threads <n>     Number of programs processed in parallel");
+        out.println("  --help            Show this help");
+    }
+
+    /**
+     * @return false, if the usage should be shown
+     */
+    private boolean parseArgs(String[] args)
+    {
+        for (int n=0; n < args.length; n++) {
+            switch (args[n]) {
+                case "--help":
+                    return false;
+                case "--top":
+                    topCnt = parseNumber(args, ++n);
+                    break;
+                case "--output":
+                    outputDir = new File(getValue(args, ++n));
+                    break;
+                case "--threads":
+                    threads = parseNumber(args, ++n);
+                    break;
+                default:
+                    if (args[n].startsWith("--"))
+                        throw new IllegalArgumentException("Unknown option " + args[n]);
+                    addInput(new File(args[n]));
+            }
+        }
+        return true;
+    }
+
+    private static String getValue(String[] args, int idx)
+    {
+        if (idx >= args.length) throw new IllegalArgumentException("Missing value for " + args[idx-1]);
+        return args[idx];
+    }
+
+    private static int parseNumber(String[] args, int idx)
+    {
+        String value = getValue(args, idx);
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) return number;
+        } catch (NumberFormatException ex) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid value for " + args[idx-1] + ": " + value);
+    }
+
+    private void addInput(File fh)
+    {
+        if (fh.isDirectory()) {
+            File[] files = fh.listFiles();
+            if (files == null) throw new IllegalArgumentException("Can't read directory " + fh);
+
+            Arrays.sort(files);
+            for (File file : files)
+                if (file.isFile() && hasExtension(file.getName()))
+                    addProgram(file);
+
+        } else if (fh.isFile() && hasExtension(fh.getName())) {
+            addProgram(fh);
+        } else
+            throw new IllegalArgumentException("Not a .bas or .csv file: " + fh);
+    }
+
+    private static boolean hasExtension(String name)
+    {
+        String tmp = name.toLowerCase(Locale.US);
+        return tmp.endsWith(".bas") || tmp.endsWith(".csv");
+    }
+
+    private void addProgram(File fh)
+    {
+        String name = fh.getName();
+        String path = name.substring(0, name.length()-4);
+        String base = fh.getAbsoluteFile().getParent();
+        String key = new File(base, path).getPath();
+        if (!programs.containsKey(key))
+            programs.put(key, new String[] {base, path, reportName(path)});
+    }
+
+    /**
+     * Report file of a program, that isn't used by another program yet. Case is
+     * ignored, as some file systems do.
+     */
+    private String reportName(String path)
+    {
+        String name = path + ".txt";
+        for (int n=2; !reportNames.add(name.toLowerCase(Locale.ROOT)); n++)
+            name = path + "-" + n + ".txt";
+        return name;
+    }
+
+    private int process()
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, programs.size()));
+        int result = 0;
+        try {
+            ArrayList<Future<String>> reports = new ArrayList<>();
+            for (String[] program : programs.values())
+                reports.add(executor.submit(createTask(program[0], program[1], program[2])));
+
+            int n = 0;
+            for (String name : programs.keySet()) {
+                try {
+                    String report = reports.get(n++).get();
+                    if (outputDir == null)
+                        System.out.println(report);
+                    else
+                        System.out.println(name + ": " + report);
+
+                } catch (ExecutionException ex) {
+                    System.err.println(name + ": " + ex.getCause().getMessage());
+                    result = 1;
+                }
+            }
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            result = 1;
+
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * Load one program and create its report. If an output directory is set,
+     * the report is written to the report file and the name of that file is
+     * returned instead of the report.
+     */
+    private Callable<String> createTask(String base, String path, String reportName)
+    {
+        return () -> {
+            Source source = new Source();
+            if (source.load(base, path) == Source.Mode.NODATA)
+                throw new IOException("Neither " + path + ".bas nor " + path + ".csv found");
+
+            String report = new Report(new File(base, path).getPath(), source, topCnt).toString();
+            if (outputDir == null) return report;
+
+            if (!outputDir.isDirectory() && !outputDir.mkdirs())
+                throw new IOException("Can't create directory " + outputDir);
+
+            File fh = new File(outputDir, reportName);
+            Files.write(fh.toPath(), report.getBytes(StandardCharsets.UTF_8));
+            return fh.getPath();
+        };
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.cli;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Generator for synthetic MMBasic programs and matching CMM2 profiler logs. The
+ * program consists of a main file and a tree of include files. SUBs and FUNCTIONs
+ * are distributed over all files, their bodies contain nested FOR, DO, IF and
+ * SELECT blocks, calls of other routines, comments and empty lines.
+ * <p>
+ * The profiler log has one row per source line in the format
+ *
+ *     calls,time,"code",file name,line number
+ *
+ * The execution counts follow the blocks: a loop multiplies the count of its
+ * body, the branches of IF and SELECT split it. The output only depends on
+ * the seed and the settings. Both files are written line by line, so the size
+ * of the program is not limited by the memory.
+ *
+ * @author Matthias Grimm
+ */
+public class ProgramGenerator
+{
+    private long seed = 1;
+    private int subs = 30;
+    private int functions = 10;
+    private int statements = 20;        // statements per routine
+    private int depth = 3;              // maximum nesting of blocks
+    private int comments = 10;          // percentage of comment lines
+    private int includes = 3;
+    private int fanout = 2;             // include files included by each file
+    private boolean profile = true;
+
+    private Random random;
+    private Writer src;
+    private Writer log;
+    private String fileName;
+    private int lineNo;
+    private long lineCnt;
+    private final StringBuilder row = new StringBuilder();
+
+    public void setSeed(long value)          { seed = value; }
+    public void setSubs(int value)           { subs = value; }
+    public void setFunctions(int value)      { functions = value; }
+    public void setStatements(int value)     { statements = value; }
+    public void setDepth(int value)          { depth = value; }
+    public void setComments(int value)       { comments = value; }
+    public void setIncludes(int value)       { includes = value; }
+    public void setFanout(int value)         { fanout = Math.max(1, value); }
+    public void setProfile(boolean value)    { profile = value; }
+
+    /**
+     * Choose the number of SUBs and FUNCTIONs, so that the program has about the
+     * given number of lines.
+     *
+     * @param lines  Number of lines of the complete program
+     */
+    public void setLines(long lines)
+    {
+        // Both branches of an IF and the cases of a SELECT have their own body, so a
+        // routine has about 2.3 lines per statement plus header, end and empty line.
+        long routines = Math.max(1, lines / (statements*23/10 + 3));
+        functions = (int) Math.min(Integer.MAX_VALUE, routines / 4);
+        subs = (int) Math.min(Integer.MAX_VALUE, routines - functions);
+    }
+
+    /**
+     * Write the program "&lt;name&gt;.bas", its include files "&lt;name&gt;_&lt;n&gt;.inc"
+     * and the profiler log "&lt;name&gt;.csv" into the directory.
+     *
+     * @param dir   Output directory
+     * @param name  Name of the program without extension
+     * @return Number of source lines written
+     * @throws IOException if a file can't be written
+     */
+    public long generate(File dir, String name) throws IOException
+    {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Can't create directory " + dir);
+
+        random = new Random(seed);
+        lineCnt = 0;
+
+        Writer csv = profile ? Files.newBufferedWriter(new File(dir, name + ".csv").toPath(), StandardCharsets.UTF_8) : Writer.nullWriter();
+        try (Writer out = csv) {
+            log = out;
+            log.write("B:/" + name + ".bas\n");
+
+            int files = includes + 1;
+            for (int file=0; file < files; file++) {
+                String path = file == 0 ? name + ".bas" : includeName(name, file);
+                try (BufferedWriter writer = Files.newBufferedWriter(new File(dir, path).toPath(), StandardCharsets.UTF_8)) {
+                    src = writer;
+                    fileName = file == 0 ? "" : path;
+                    lineNo = 0;
+                    writeFile(name, file, files);
+                }
+            }
+        } finally {
+            src = null;
+            log = null;
+        }
+        return lineCnt;
+    }
+
+    private static String includeName(String name, int file)
+    {
+        return name + "_" + file + ".inc";
+    }
+
+    /**
+     * Write one file. File 0 is the main program, file n is included by file
+     * n/fanout, rounded up. The routines are dealt out to the files in turns.
+     */
+    private void writeFile(String name, int file, int files) throws IOException
+    {
+        if (file == 0) {
+            emit("' Generated program, seed " + seed, 0, 0);
+            emit("OPTION EXPLICIT", 1, 2);
+        } else
+            emit("' Include file " + file, 0, 0);
+
+        for (int child=file*fanout+1; child <= file*fanout+fanout && child < files; child++)
+            emit("#INCLUDE \"" + includeName(name, child) + "\"", 1, 1);
+        emit("", 0, 0);
+
+        if (file == 0) {
+            emit("DIM INTEGER a, b, x, k0, k1, k2, k3", 1, 3);
+            emit("DIM INTEGER i0, i1, i2, i3", 1, 2);
+            emit("", 0, 0);
+            body(0, statements, 1);
+            emit("END", 1, 1);
+            emit("", 0, 0);
+        }
+
+        for (int routine=file; routine < subs + functions; routine += files) {
+            long calls = 1 + random.nextInt(1000);
+            boolean isSub = routine < subs;
+            String routineName = isSub ? "Sub" + routine : "Func" + (routine - subs);
+
+            emit(isSub ? "SUB " + routineName + "(a, b)" : "FUNCTION " + routineName + "(a)", calls, 1);
+            body(1, statements, calls);
+            if (!isSub) emit("  " + routineName + " = x", calls, 1);
+            emit(isSub ? "END SUB" : "END FUNCTION", calls, 1);
+            emit("", 0, 0);
+        }
+    }
+
+    /**
+     * Write a sequence of statements. Blocks count with the number of statements
+     * of their body.
+     */
+    private void body(int level, int count, long calls) throws IOException
+    {
+        String indent = "  ".repeat(level);
+        int n = 0;
+        while (n < count) {
+            int kind = random.nextInt(100);
+            if (kind < comments) {
+                emit(indent + "' comment " + n, 0, 0);
+                n++;
+
+            } else if (kind < comments + 3) {
+                emit("", 0, 0);
+                n++;
+
+            } else if (kind < comments + 25 && level <= depth) {
+                int inner = Math.min(count - n, 1 + random.nextInt(4));
+                block(level, inner, calls, indent);
+                n += inner;
+
+            } else if (kind < comments + 40) {
+                call(indent, calls);
+                n++;
+
+            } else if (kind < comments + 45) {
+                emit(indent + "IF x > " + random.nextInt(100) + " THEN x = 0", calls, 1);
+                n++;
+
+            } else {
+                emit(indent + "x = x + a * " + random.nextInt(100), calls, 1);
+                n++;
+            }
+        }
+    }
+
+    private void block(int level, int count, long calls, String indent) throws IOException
+    {
+        int loops = 1 + random.nextInt(10);
+        switch (random.nextInt(4)) {
+            case 0:
+                emit(indent + "FOR i" + level + " = 1 TO " + loops, calls, 2);
+                body(level+1, count, calls*loops);
+                emit(indent + "NEXT i" + level, calls*loops, 1);
+                break;
+
+            case 1:
+                emit(indent + "k" + level + " = 0", calls, 1);
+                emit(indent + "DO WHILE k" + level + " < " + loops, calls, 2);
+                body(level+1, count, calls*loops);
+                emit(indent + "  INC k" + level, calls*loops, 1);
+                emit(indent + "LOOP", calls*loops, 1);
+                break;
+
+            case 2:
+                long taken = calls * random.nextInt(101) / 100;
+                emit(indent + "IF a > " + random.nextInt(100) + " THEN", calls, 1);
+                body(level+1, count, taken);
+                emit(indent + "ELSE", calls - taken, 0);
+                body(level+1, count, calls - taken);
+                emit(indent + (random.nextBoolean() ? "ENDIF" : "END IF"), calls, 0);
+                break;
+
+            default:
+                emit(indent + "SELECT CASE a", calls, 1);
+                for (int c=0; c < 3; c++) {
+                    emit(indent + "  CASE " + c, calls/3, 0);
+                    body(level+2, Math.max(1, count/3), calls/3);
+                }
+                emit(indent + "END SELECT", calls, 0);
+                break;
+        }
+    }
+
+    private void call(String indent, long calls) throws IOException
+    {
+        int target = random.nextInt(subs + functions);
+        if (target < subs)
+            emit(indent + "Sub" + target + " a, x", calls, 3);
+        else
+            emit(indent + "x = Func" + (target - subs) + "(a + x)", calls, 3);
+    }
+
+    /**
+     * Write one source line and its row of the profiler log.
+     *
+     * @param code   Source line
+     * @param calls  Execution count
+     * @param cost   Weight of the line, the time of one execution is random
+     *               between 0 and 10 µs per unit of weight
+     */
+    private void emit(String code, long calls, int cost) throws IOException
+    {
+        src.write(code);
+        src.write('\n');
+        lineNo++;
+        lineCnt++;
+        if (!profile) return;
+
+        int count = (int) Math.min(Integer.MAX_VALUE, calls);
+        int time = count == 0 || cost == 0 ? 0 : random.nextInt(10000 * cost);   // ns
+
+        row.setLength(0);
+        row.append(count).append(',').append(time / 1000).append('.');
+        int fraction = time % 1000;
+        if (fraction < 100) row.append('0');
+        if (fraction < 10) row.append('0');
+        row.append(fraction).append(",\"");
+        for (int pos=0; pos < code.length(); pos++) {
+            char c = code.charAt(pos);
+            if (c == '"') row.append('"');
+            row.append(c);
+        }
+        row.append("\",").append(fileName).append(',').append(lineNo).append('\n');
+        log.append(row);
+    }
+
+    // -----------------------------------------------------------------------------------
+    //                                  Command line
+    // -----------------------------------------------------------------------------------
+
+    /**
+     * Run the generator from the command line.
+     *
+     * @param args  Command line arguments behind "--generate"
+     * @return Exit code: 0 on success, 1 if a file couldn't be written, 2 for bad arguments
+     */
+    public static int run(String[] args)
+    {
+        ProgramGenerator generator = new ProgramGenerator();
+        File dir = new File(".");
+        String name = "program";
+        long lines = -1;
+
+        try {
+            for (int n=0; n < args.length; n++) {
+                switch (args[n]) {
+                    case "--help":
+                        usage();
+                        return 0;
+                    case "--seed":       generator.setSeed(Long.parseLong(value(args, ++n))); break;
+                    case "--lines":      lines = Long.parseLong(value(args, ++n)); break;
+                    case "--subs":       generator.setSubs(Integer.parseInt(value(args, ++n))); break;
+                    case "--functions":  generator.setFunctions(Integer.parseInt(value(args, ++n))); break;
+                    case "--statements": generator.setStatements(Integer.parseInt(value(args, ++n))); break;
+                    case "--depth":      generator.setDepth(Integer.parseInt(value(args, ++n))); break;
+                    case "--comments":   generator.setComments(Integer.parseInt(value(args, ++n))); break;
+                    case "--includes":   generator.setIncludes(Integer.parseInt(value(args, ++n))); break;
+                    case "--fanout":     generator.setFanout(Integer.parseInt(value(args, ++n))); break;
+                    case "--no-profile": generator.setProfile(false); break;
+                    case "--output":     dir = new File(value(args, ++n)); break;
+                    default:
+                        if (args[n].startsWith("--"))
+                            throw new IllegalArgumentException("Unknown option " + args[n]);
+                        name = args[n];
+                }
+            }
+            if (generator.subs + generator.functions < 1 || generator.statements < 1 || generator.includes < 0)
+                throw new IllegalArgumentException("Invalid program size");
+
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            usage();
+            return 2;
+        }
+
+        if (lines > 0) generator.setLines(lines);
+
+        try {
+            long cnt = generator.generate(dir, name);
+            System.out.println(String.format("%s: %d lines in %d files", new File(dir, name).getPath(), cnt, generator.includes + 1));
+            return 0;
+
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            return 1;
+        }
+    }
+
+    private static String value(String[] args, int idx)
+    {
+        if (idx >= args.length) throw new IllegalArgumentException("Missing value for " + args[idx-1]);
+        return args[idx];
+    }
+
+    private static void usage()
+    {
+        System.out.println("Usage: CMM2Profiler --generate [options] [name]");
+        System.out.println("  --output <dir>       Output directory, default is the current directory");
+        System.out.println("  --seed <n>           Seed of the random generator, default 1");
+        System.out.println("  --lines <n>          Approximate number of lines, sets the number of routines");
+        System.out.println("  --subs <n>           Number of SUBs, default 30");
+        System.out.println("  --functions <n>      Number of FUNCTIONs, default 10");
+        System.out.println("  --statements <n>     Statements per routine, default 20");
+        System.out.println("  --depth <n>          Maximum nesting of blocks, default 3");
+        System.out.println("  --comments <n>       Percentage of comment lines, default 10");
+        System.out.println("  --includes <n>       Number of include files, default 3");
+        System.out.println("  --fanout <n>         Include files per file, default 2");
+        System.out.println("  --no-profile         Don't write the profiler log");
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.cli;
+
+import CMM2Profiler.core.Function;
+import CMM2Profiler.core.Source;
+import CMM2Profiler.core.SourceFile;
+import CMM2Profiler.core.SourceLine;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Plain text report of a loaded program: the totals of each source file, the
+ * functions with the highest total time and the lines with the highest total
+ * time. Times are reported in milliseconds. A line is given by its file and its
+ * line number in that file, or in the profiler log, if there was no source.
+ *
+ * @author Matthias Grimm
+ */
+public class Report
+{
+    private final String name;
+    private final Source source;
+    private final int topCnt;
+
+    /**
+     * @param name    Name of the program, shown in the title of the report
+     * @param source  Loaded program
+     * @param topCnt  Number of entries in the lists of top functions and lines
+     */
+    public Report(String name, Source source, int topCnt)
+    {
+        this.name = name;
+        this.source = source;
+        this.topCnt = topCnt;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        float total = 0;
+        for (SourceFile srcFile : source.getStructureMap())
+            total += srcFile.getSource().getTime();
+
+        line(sb, "Program: %s (%s)", name, source.getMode());
+        line(sb, "Lines: %d   Functions: %d   Total time: %.3f ms",
+                source.getSourceLineCnt(), source.getFunctionList().size(), total/1000);
+
+        appendFiles(sb, total);
+        appendFunctions(sb, total);
+        appendLines(sb, total);
+        return sb.toString();
+    }
+
+    private void appendFiles(StringBuilder sb, float total)
+    {
+        line(sb, "");
+        line(sb, "Files");
+        line(sb, "  %-40s %8s %14s %7s", "File", "Lines", "Time [ms]", "Share");
+        for (SourceFile srcFile : source.getStructureMap()) {
+            float time = srcFile.getSource().getTime();
+            line(sb, "  %-40s %8d %14.3f %6.2f%%", srcFile.getPath(),
+                    srcFile.getLastLine() - srcFile.getFirstLine() + 1, time/1000, share(time, total));
+        }
+    }
+
+    private void appendFunctions(StringBuilder sb, float total)
+    {
+        ArrayList<Function> functions = new ArrayList<>(source.getFunctionList());
+        functions.sort(Comparator.comparingDouble((Function func) -> totalTime(func)).reversed());
+
+        line(sb, "");
+        line(sb, "Top functions");
+        line(sb, "  %4s %-32s %10s %14s %14s %7s", "#", "Name", "Calls", "Time/call [ms]", "Total [ms]", "Share");
+        for (int n=0; n < Math.min(topCnt, functions.size()); n++) {
+            Function func = functions.get(n);
+            double time = totalTime(func);
+            line(sb, "  %4d %-32s %10d %14.3f %14.3f %6.2f%%", n+1, func.getName(),
+                    func.getCalls(), func.getTime()/1000, time/1000, share(time, total));
+        }
+    }
+
+    private void appendLines(StringBuilder sb, float total)
+    {
+        int cnt = source.getSourceLineCnt();
+        String[] fileOfLine = new String[cnt];
+        for (SourceFile srcFile : source.getStructureMap())
+            Arrays.fill(fileOfLine, srcFile.getFirstLine(), srcFile.getLastLine()+1, srcFile.getPath());
+
+        // Function headers carry the folded time of the whole function, they are no lines of their own
+        ArrayList<Integer> lines = new ArrayList<>();
+        double[] times = new double[cnt];
+        for (int idx=0; idx < cnt; idx++) {
+            SourceLine srcLine = source.getSourceLine(idx);
+            times[idx] = totalTime(srcLine);
+            if (!srcLine.isFunction() && srcLine.getCalls() > 0) lines.add(idx);
+        }
+        lines.sort(Comparator.comparingDouble((Integer idx) -> times[idx]).reversed());
+
+        line(sb, "");
+        line(sb, "Top lines");
+        line(sb, "  %4s %-20s %6s %10s %14s %7s  %s", "#", "File", "Line", "Calls", "Total [ms]", "Share", "Code");
+        for (int n=0; n < Math.min(topCnt, lines.size()); n++) {
+            int idx = lines.get(n);
+            SourceLine srcLine = source.getSourceLine(idx);
+            double time = times[idx];
+            line(sb, "  %4d %-20s %6d %10d %14.3f %6.2f%%  %s", n+1, fileOfLine[idx], srcLine.getOrigin(),
+                    srcLine.getCalls(), time/1000, share(time, total), srcLine.getSource());
+        }
+    }
+
+    private static double totalTime(Function func)
+    {
+        return (double) func.getTime() * func.getCalls();
+    }
+
+    private static double totalTime(SourceLine srcLine)
+    {
+        return (double) srcLine.getTime() * srcLine.getCalls();
+    }
+
+    private static double share(double time, double total)
+    {
+        return total == 0 ? 0 : time * 100 / total;
+    }
+
+    private static void line(StringBuilder sb, String format, Object... args)
+    {
+        sb.append(String.format(Locale.US, format, args)).append(System.lineSeparator());
+    }
+}
@@ -0,0 +1,555 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import CMM2Profiler.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Call graph of a source, built from the function references. The nodes are
+ * the functions and the code outside of functions of each file. Every line,
+ * that refers to a function, is a call from the function or file it belongs to.<p>
+ *
+ * The profiler only measures lines, so the graph is an estimate in the manner
+ * of gprof. The self time of a node is the time of its own lines. The calls of
+ * a function are split onto its callers by the execution counts of the calling
+ * lines, and its inclusive time is handed to the callers in the same ratio.
+ * Recursive functions and cycles of functions are condensed into one component
+ * first. Time isn't propagated along calls inside a cycle, so the inclusive
+ * time of a member only contains the calls leaving the cycle, while
+ * {@link #getCycleTime} is the inclusive time of the whole cycle.<p>
+ *
+ * All times are totals over the run in µs. The graph is a snapshot of the
+ * profiler data at the time it was created.
+ *
+ * @author Matthias Grimm
+ */
+public final class CallGraph
+{
+    private static final int PARALLEL_THRESHOLD = 512;    // nodes
+    private static final int PARALLEL_SLICE = 64;
+
+    private final Function[] functions;
+    private final String[] names;
+    private final int[] calls;
+    private final float[] selfTime;
+    private final float[] inclusiveTime;
+
+    // edges, sorted by callee
+    private int[] edgeCaller;
+    private int[] edgeCallee;
+    private long[] edgeWeight;          // executions of the calling lines
+    private float[] edgeCalls;
+    private float[] edgeTime;
+    private final int[] inFirst;
+    private final int[] outFirst;
+    private int[] outEdge;
+
+    // strongly connected components, numbered with the callees first
+    private final int[] component;
+    private final boolean[] cycle;
+    private final int[] cycleNo;
+    private double[] componentTime;
+
+    /**
+     * Build the call graph from the profiler data of the lines.
+     *
+     * @param lines      Lines of the source
+     * @param files      Files of the source, their code outside of functions are the roots
+     * @param funcList   Functions of the source with their references
+     */
+    CallGraph(LineStore lines, Map<String,SourceFile> files, List<Function> funcList)
+    {
+        int funcCnt = funcList.size();
+        int size = funcCnt + files.size();
+
+        functions = funcList.toArray(new Function[0]);
+        names = new String[size];
+        calls = new int[size];
+        selfTime = new float[size];
+        inclusiveTime = new float[size];
+        inFirst = new int[size+1];
+        outFirst = new int[size+1];
+        component = new int[size];
+        cycle = new boolean[size];
+        cycleNo = new int[size];
+
+        int[] owner = new int[lines.size];
+        double[] self = new double[size];
+        assignLines(lines, files, owner, self);
+        for (int n=0; n < size; n++)
+            selfTime[n] = (float) self[n];
+
+        collectEdges(lines, owner);
+        findComponents();
+        propagateTimes();
+    }
+
+    /**
+     * Find the node of each line and sum up the self time of the nodes.
+     */
+    private void assignLines(LineStore lines, Map<String,SourceFile> files, int[] owner, double[] self)
+    {
+        int[] funcAt = new int[lines.size];
+        Arrays.fill(funcAt, -1);
+        for (int n=0; n < functions.length; n++) {
+            int idx = functions[n].getData().getIndex();
+            funcAt[idx] = n;
+            names[n] = functions[n].getName();
+            calls[n] = lines.calls[idx];
+        }
+
+        int node = functions.length;
+        for (Map.Entry<String,SourceFile> item : files.entrySet()) {
+            SourceFile srcFile = item.getValue();
+            int fileNode = node++;
+            int cur = fileNode;
+            names[fileNode] = item.getKey();
+
+            for (int idx=srcFile.getFirstLine(); idx <= srcFile.getLastLine(); idx++) {
+                if (funcAt[idx] >= 0) {
+                    cur = funcAt[idx];
+                    owner[idx] = cur;
+                    continue;               // time of the header is folded
+                }
+
+                owner[idx] = cur;
+                self[cur] += (double) lines.time[idx] * lines.calls[idx];
+                if ((lines.flags[idx] & MMBasic.END_FUNCTION) != 0)
+                    cur = fileNode;
+            }
+        }
+    }
+
+    /**
+     * Collect the calling lines of each function, merge them by caller and
+     * estimate the calls on each edge.
+     */
+    private void collectEdges(LineStore lines, int[] owner)
+    {
+        int funcCnt = functions.length;
+        int[][] callers = new int[funcCnt][];
+        long[][] weights = new long[funcCnt][];
+
+        forEach(funcCnt, callee -> {
+            Function func = functions[callee];
+            List<SourceLine> refs = func.getReferenceList();
+            long[] keys = new long[refs.size()];
+            int cnt=0;
+
+            for (SourceLine ref : refs) {
+                if (!ref.isPartOf(lines)) continue;
+                int idx = ref.getIndex();
+                int caller = owner[idx];
+
+                // a function returns its value by an assignment to its name
+                if (caller == callee && func.isFunction() && !isCall(lines, idx, func.getName()))
+                    continue;
+                keys[cnt++] = (long) caller << 32 | idx;
+            }
+            Arrays.sort(keys, 0, cnt);
+
+            int[] from = new int[cnt];
+            long[] weight = new long[cnt];
+            int edges=0;
+            for (int n=0; n < cnt; n++) {
+                int caller = (int) (keys[n] >>> 32);
+                int idx = (int) keys[n];
+                if (edges == 0 || from[edges-1] != caller)
+                    from[edges++] = caller;
+                weight[edges-1] += Math.max(0, lines.calls[idx]);
+            }
+            callers[callee] = Arrays.copyOf(from, edges);
+            weights[callee] = Arrays.copyOf(weight, edges);
+        });
+
+        int edgeCnt=0;
+        for (int callee=0; callee < funcCnt; callee++) {
+            inFirst[callee] = edgeCnt;
+            edgeCnt += callers[callee].length;
+        }
+        Arrays.fill(inFirst, funcCnt, inFirst.length, edgeCnt);
+
+        edgeCaller = new int[edgeCnt];
+        edgeCallee = new int[edgeCnt];
+        edgeWeight = new long[edgeCnt];
+        edgeCalls = new float[edgeCnt];
+        edgeTime = new float[edgeCnt];
+
+        for (int callee=0; callee < funcCnt; callee++) {
+            long total=0;
+            for (long weight : weights[callee])
+                total += weight;
+
+            int e = inFirst[callee];
+            for (int n=0; n < callers[callee].length; n++, e++) {
+                edgeCaller[e] = callers[callee][n];
+                edgeCallee[e] = callee;
+                edgeWeight[e] = weights[callee][n];
+                edgeCalls[e] = total == 0 ? 0 : (float) ((double) calls[callee] * edgeWeight[e] / total);
+            }
+        }
+
+        // outgoing edges of each node
+        for (int e=0; e < edgeCnt; e++)
+            outFirst[edgeCaller[e]+1]++;
+        for (int n=0; n < outFirst.length-1; n++)
+            outFirst[n+1] += outFirst[n];
+
+        outEdge = new int[edgeCnt];
+        int[] pos = Arrays.copyOf(outFirst, outFirst.length-1);
+        for (int e=0; e < edgeCnt; e++)
+            outEdge[pos[edgeCaller[e]]++] = e;
+    }
+
+    /**
+     * @return true, if the name of the function is followed by a parameter list
+     */
+    private static boolean isCall(LineStore lines, int idx, String name)
+    {
+        String code = lines.source[idx];
+        int first = lines.tokenFirst[idx];
+        for (int n=first; n < first+lines.tokenCnt[idx]; n++) {
+            int start = LineStore.tokenStart(lines.tokens[n]);
+            int end = LineStore.tokenEnd(lines.tokens[n]);
+            if (end-start != name.length() || !code.regionMatches(true, start, name, 0, name.length()))
+                continue;
+
+            while (end < code.length() && code.charAt(end) == ' ') end++;
+            if (end < code.length() && code.charAt(end) == '(') return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tarjan's algorithm without recursion, so deep call chains can't overflow
+     * the stack. The components are found with all their callees first.
+     */
+    private void findComponents()
+    {
+        int size = names.length;
+        int[] order = new int[size];
+        int[] low = new int[size];
+        int[] stack = new int[size];
+        int[] callStack = new int[size];
+        int[] nextEdge = new int[size];
+        boolean[] onStack = new boolean[size];
+        int visited=0, top=0, components=0, cycles=0;
+
+        Arrays.fill(order, -1);
+        for (int root=0; root < size; root++) {
+            if (order[root] >= 0) continue;
+
+            int depth=0;
+            callStack[depth++] = root;
+            order[root] = low[root] = visited++;
+            nextEdge[root] = outFirst[root];
+            stack[top++] = root;
+            onStack[root] = true;
+
+            while (depth > 0) {
+                int node = callStack[depth-1];
+                if (nextEdge[node] < outFirst[node+1]) {
+                    int next = edgeCallee[outEdge[nextEdge[node]++]];
+                    if (order[next] < 0) {
+                        order[next] = low[next] = visited++;
+                        nextEdge[next] = outFirst[next];
+                        stack[top++] = next;
+                        onStack[next] = true;
+                        callStack[depth++] = next;
+                    } else if (onStack[next]) {
+                        low[node] = Math.min(low[node], order[next]);
+                    }
+                    continue;
+                }
+
+                depth--;
+                if (depth > 0) {
+                    int parent = callStack[depth-1];
+                    low[parent] = Math.min(low[parent], low[node]);
+                }
+                if (low[node] != order[node]) continue;
+
+                // node is the root of a component
+                int first = top;
+                do {
+                    int member = stack[--first];
+                    onStack[member] = false;
+                    component[member] = components;
+                } while (stack[first] != node);
+
+                boolean isCycle = top-first > 1 || hasSelfCall(node);
+                if (isCycle) cycles++;
+                for (int n=first; n < top; n++) {
+                    cycle[stack[n]] = isCycle;
+                    cycleNo[stack[n]] = isCycle ? cycles : 0;
+                }
+                top = first;
+                components++;
+            }
+        }
+        componentTime = new double[components];
+    }
+
+    private boolean hasSelfCall(int node)
+    {
+        for (int n=outFirst[node]; n < outFirst[node+1]; n++)
+            if (edgeCallee[outEdge[n]] == node) return true;
+        return false;
+    }
+
+    /**
+     * Hand the inclusive time of each component to its callers. The components
+     * are processed level by level, starting with those, that don't call any
+     * other component. The components of one level are independent of each
+     * other.
+     */
+    private void propagateTimes()
+    {
+        int size = names.length;
+        int components = componentTime.length;
+
+        // members and external calling weight of each component
+        int[] memberFirst = new int[components+1];
+        for (int n=0; n < size; n++)
+            memberFirst[component[n]+1]++;
+        for (int c=0; c < components; c++)
+            memberFirst[c+1] += memberFirst[c];
+        int[] members = new int[size];
+        int[] pos = Arrays.copyOf(memberFirst, components);
+        for (int n=0; n < size; n++)
+            members[pos[component[n]]++] = n;
+
+        long[] externalWeight = new long[components];
+        for (int e=0; e < edgeCaller.length; e++)
+            if (component[edgeCaller[e]] != component[edgeCallee[e]])
+                externalWeight[component[edgeCallee[e]]] += edgeWeight[e];
+
+        // the callees of a component have always a lower number
+        int[] level = new int[components];
+        int levels=1;
+        for (int c=0; c < components; c++) {
+            for (int m=memberFirst[c]; m < memberFirst[c+1]; m++) {
+                int node = members[m];
+                for (int n=outFirst[node]; n < outFirst[node+1]; n++) {
+                    int callee = component[edgeCallee[outEdge[n]]];
+                    if (callee != c) level[c] = Math.max(level[c], level[callee]+1);
+                }
+            }
+            levels = Math.max(levels, level[c]+1);
+        }
+
+        int[] levelFirst = new int[levels+1];
+        for (int c=0; c < components; c++)
+            levelFirst[level[c]+1]++;
+        for (int l=0; l < levels; l++)
+            levelFirst[l+1] += levelFirst[l];
+        int[] byLevel = new int[components];
+        int[] next = Arrays.copyOf(levelFirst, levels);
+        for (int c=0; c < components; c++)
+            byLevel[next[level[c]]++] = c;
+
+        for (int l=0; l < levels; l++) {
+            int first = levelFirst[l];
+            forEach(levelFirst[l+1] - first, n -> {
+                int c = byLevel[first+n];
+                double total=0;
+
+                for (int m=memberFirst[c]; m < memberFirst[c+1]; m++) {
+                    int node = members[m];
+                    double inclusive = selfTime[node];
+
+                    for (int k=outFirst[node]; k < outFirst[node+1]; k++) {
+                        int e = outEdge[k];
+                        int callee = component[edgeCallee[e]];
+                        if (callee == c || externalWeight[callee] == 0) continue;
+
+                        edgeTime[e] = (float) (componentTime[callee] * edgeWeight[e] / externalWeight[callee]);
+                        inclusive += edgeTime[e];
+                    }
+                    inclusiveTime[node] = (float) inclusive;
+                    total += inclusive;
+                }
+                componentTime[c] = total;
+            });
+        }
+    }
+
+    /**
+     * Run the body for all indices, split onto the compute pool, if
+     * the graph is large enough to pay off.
+     */
+    private void forEach(int cnt, IntConsumer body)
+    {
+        if (names.length < PARALLEL_THRESHOLD || cnt <= PARALLEL_SLICE) {
+            for (int n=0; n < cnt; n++)
+                body.accept(n);
+        } else
+            Registry.get().getComputePool().invoke(new Slice(0, cnt, body));
+    }
+
+    private static final class Slice
+    extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final transient IntConsumer body;
+
+        Slice(int from, int to, IntConsumer body)
+        {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= PARALLEL_SLICE) {
+                for (int n=from; n < to; n++)
+                    body.accept(n);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Slice(from, mid, body), new Slice(mid, to, body));
+        }
+    }
+
+    // -----------------------------------------------------------------------------------
+    //                               Query the graph
+    // -----------------------------------------------------------------------------------
+    public int size()                       { return names.length; }
+    public String getName(int node)         { return names[node]; }
+    public int getCalls(int node)           { return calls[node]; }
+    public float getSelfTime(int node)      { return selfTime[node]; }
+    public float getInclusiveTime(int node) { return inclusiveTime[node]; }
+    public boolean isCycle(int node)        { return cycle[node]; }
+
+    /**
+     * @return Function of the node or null, if the node is the code outside of
+     *         functions of a file
+     */
+    public Function getFunction(int node)
+    {
+        return node < functions.length ? functions[node] : null;
+    }
+
+    /**
+     * @return Node of the function or -1, if it doesn't belong to this graph
+     */
+    public int indexOf(Function func)
+    {
+        for (int n=0; n < functions.length; n++)
+            if (functions[n] == func) return n;
+        return -1;
+    }
+
+    /**
+     * @return Number of the cycle, the node belongs to, starting with 1, or 0 if
+     *         the node isn't recursive
+     */
+    public int getCycleNo(int node)
+    {
+        return cycleNo[node];
+    }
+
+    /**
+     * @return Inclusive time of the cycle, the node belongs to, or the inclusive
+     *         time of the node, if it isn't recursive
+     */
+    public float getCycleTime(int node)
+    {
+        return (float) componentTime[component[node]];
+    }
+
+    /**
+     * @return Calls of the node from other nodes, the most expensive first
+     */
+    public List<Call> getCallers(int node)
+    {
+        ArrayList<Call> list = new ArrayList<>();
+        if (node < 0 || node >= functions.length) return list;
+
+        for (int e=inFirst[node]; e < inFirst[node+1]; e++)
+            list.add(new Call(e));
+        list.sort(CompTime);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @return Calls of the node to other nodes, the most expensive first
+     */
+    public List<Call> getCallees(int node)
+    {
+        ArrayList<Call> list = new ArrayList<>();
+        if (node < 0 || node >= names.length) return list;
+
+        for (int n=outFirst[node]; n < outFirst[node+1]; n++)
+            list.add(new Call(outEdge[n]));
+        list.sort(CompTime);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * An edge of the call graph.
+     */
+    public final class Call
+    {
+        private final int edge;
+
+        private Call(int edge)
+        {
+            this.edge = edge;
+        }
+
+        public int getCaller()              { return edgeCaller[edge]; }
+        public int getCallee()              { return edgeCallee[edge]; }
+        public String getCallerName()       { return names[edgeCaller[edge]]; }
+        public String getCalleeName()       { return names[edgeCallee[edge]]; }
+        public Function getCallerFunction() { return getFunction(edgeCaller[edge]); }
+        public Function getCalleeFunction() { return getFunction(edgeCallee[edge]); }
+
+        /**
+         * @return Estimated number of calls along this edge
+         */
+        public float getCalls()             { return edgeCalls[edge]; }
+
+        /**
+         * @return Inclusive time of the callee spent on behalf of the caller,
+         *         zero for calls inside a cycle
+         */
+        public float getTime()              { return edgeTime[edge]; }
+
+        /**
+         * @return true, if caller and callee belong to the same cycle
+         */
+        public boolean isRecursive()        { return component[edgeCaller[edge]] == component[edgeCallee[edge]]; }
+    }
+
+    private static final Comparator<Call> CompTime = (Call o1, Call o2) -> {
+        int cmp = Float.compare(o2.getTime(), o1.getTime());
+        return cmp != 0 ? cmp : Float.compare(o2.getCalls(), o1.getCalls());
+    };
+}
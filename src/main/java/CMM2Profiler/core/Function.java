@@ -18,6 +18,7 @@ package CMM2Profiler.core;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Locale;
 
 /**
@@ -32,6 +33,7 @@ public class Function
     private String name;
     private SourceLine data;
     private final ArrayList<SourceLine> references = new ArrayList<>();
+    private final HashSet<SourceLine> referenceSet = new HashSet<>();
     
     public Function()
     {
@@ -45,9 +47,7 @@ public class Function
         if (srcLine.isFunction()) {
             data = srcLine;
             name = srcLine.getFunctionName();
-            
-            String tmp = srcLine.getSource().toLowerCase(Locale.US);
-            type = tmp.startsWith("function") ? Type.FUNCTION : Type.SUB;
+            type = srcLine.isFunctionKeyword() ? Type.FUNCTION : Type.SUB;
             
         } else
             throw new IllegalArgumentException("Source line is neither a Sub nor a Function.");
@@ -66,7 +66,7 @@ public class Function
     
     public void addReference(SourceLine ref)
     {
-        if (!references.contains(ref))
+        if (referenceSet.add(ref))
             references.add(ref);
     }
     
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The hottest lines, functions and files of a source. Each list is kept in a
+ * heap bounded to the requested size, so the source is scanned once without
+ * sorting it.<p>
+ *
+ * After the profiler data of the source has been changed, e.g. by a reload,
+ * {@link #update} only offers the changed lines to the heaps. Every line, that
+ * didn't make it into a heap, is remembered by its largest value. The heaps
+ * keep twice the requested entries. As long as enough of them aren't below that
+ * value, the lists are still exact. Otherwise, or if most of the lines have
+ * changed, the source is scanned again.
+ *
+ * @author Matthias Grimm
+ */
+public final class Hotspots
+{
+    public enum Metric {TOTAL_TIME, TIME_PER_CALL, CALLS}
+
+    private static final Metric[] METRICS = Metric.values();
+
+    private final LineStore lines;
+    private final SourceFile[] files;
+    private final int size;
+    private final TopN[] lineTop = new TopN[METRICS.length];
+    private final TopN[] functionTop = new TopN[METRICS.length];
+    private final TopN fileTop;
+
+    // profiler data of the last scan, to find the changed lines
+    private int[] calls = new int[0];
+    private float[] time = new float[0];
+    private int scans;
+
+    Hotspots(LineStore lines, Collection<SourceFile> files, int size)
+    {
+        this.lines = lines;
+        this.files = files.toArray(new SourceFile[0]);
+        this.size = size;
+        for (int m=0; m < METRICS.length; m++) {
+            lineTop[m] = new TopN(size, 2*size);
+            functionTop[m] = new TopN(size, 2*size);
+        }
+        fileTop = new TopN(size, size);
+        scan();
+    }
+
+    public int getSize()  { return size; }
+
+    /**
+     * @return Number of full scans of the source, for the statistics
+     */
+    public int getScans() { return scans; }
+
+    /**
+     * @return The hottest lines, the hottest first
+     */
+    public List<SourceLine> getLines(Metric metric)
+    {
+        ArrayList<SourceLine> list = new ArrayList<>();
+        for (int idx : lineTop[metric.ordinal()].sorted())
+            list.add(new SourceLine(lines, idx));
+        return list;
+    }
+
+    /**
+     * @return Header lines of the hottest functions, the hottest first
+     */
+    public List<SourceLine> getFunctions(Metric metric)
+    {
+        ArrayList<SourceLine> list = new ArrayList<>();
+        for (int idx : functionTop[metric.ordinal()].sorted())
+            list.add(new SourceLine(lines, idx));
+        return list;
+    }
+
+    /**
+     * @return Header lines of the files with the most time, the hottest first
+     */
+    public List<SourceLine> getFiles()
+    {
+        ArrayList<SourceLine> list = new ArrayList<>();
+        for (int file : fileTop.sorted())
+            list.add(files[file].getSource());
+        return list;
+    }
+
+    /**
+     * @return Value of a line or function header for a metric
+     */
+    public static double valueOf(SourceLine srcLine, Metric metric)
+    {
+        switch (metric) {
+            case TIME_PER_CALL: return srcLine.getTime();
+            case CALLS:         return srcLine.getCalls();
+            default:            return (double) srcLine.getTime() * srcLine.getCalls();
+        }
+    }
+
+    /**
+     * Bring the lists up to date with the profiler data of the source.
+     *
+     * @return true, if any line has changed
+     */
+    public boolean update()
+    {
+        if (lines.size != calls.length) {
+            scan();
+            return true;
+        }
+
+        int[] changed = new int[16];
+        int cnt=0;
+        for (int idx=0; idx < lines.size; idx++) {
+            if (lines.calls[idx] == calls[idx] && Float.compare(lines.time[idx], time[idx]) == 0)
+                continue;
+            if (cnt == changed.length) changed = Arrays.copyOf(changed, cnt*2);
+            changed[cnt++] = idx;
+        }
+        if (cnt == 0) return false;
+
+        if (cnt > lines.size / 4) {
+            scan();
+            return true;
+        }
+
+        for (int n=0; n < cnt; n++) {
+            int idx = changed[n];
+            calls[idx] = lines.calls[idx];
+            time[idx] = lines.time[idx];
+
+            TopN[] top = (lines.flags[idx] & MMBasic.FUNCTION) != 0 ? functionTop : lineTop;
+            for (int m=0; m < METRICS.length; m++)
+                top[m].update(idx, value(idx, METRICS[m]));
+        }
+        updateFiles();
+
+        for (int m=0; m < METRICS.length; m++)
+            if (!lineTop[m].isExact() || !functionTop[m].isExact()) {
+                scan();
+                break;
+            }
+        return true;
+    }
+
+    /**
+     * Offer every line to the heaps.
+     */
+    private void scan()
+    {
+        scans++;
+        calls = Arrays.copyOf(lines.calls, lines.size);
+        time = Arrays.copyOf(lines.time, lines.size);
+
+        for (int m=0; m < METRICS.length; m++) {
+            lineTop[m].clear();
+            functionTop[m].clear();
+        }
+
+        for (int idx=0; idx < lines.size; idx++) {
+            TopN[] top = (lines.flags[idx] & MMBasic.FUNCTION) != 0 ? functionTop : lineTop;
+            for (int m=0; m < METRICS.length; m++)
+                top[m].offer(idx, value(idx, METRICS[m]));
+        }
+        updateFiles();
+    }
+
+    private void updateFiles()
+    {
+        fileTop.clear();
+        for (int file=0; file < files.length; file++)
+            fileTop.offer(file, files[file].getSource().getTime());
+    }
+
+    private double value(int idx, Metric metric)
+    {
+        switch (metric) {
+            case TIME_PER_CALL: return time[idx];
+            case CALLS:         return calls[idx];
+            default:            return (double) time[idx] * calls[idx];
+        }
+    }
+
+    /**
+     * Min heap of the largest values. Entries without a value aren't kept.
+     */
+    private static final class TopN
+    {
+        private final int size;
+        private final double[] value;
+        private final int[] id;
+        private int cnt;
+        private double rejectedValue;   // largest entry, that isn't in the heap
+        private int rejectedKey = -1;
+
+        TopN(int size, int capacity)
+        {
+            this.size = size;
+            value = new double[capacity];
+            id = new int[capacity];
+        }
+
+        void clear()
+        {
+            cnt = 0;
+            rejectedValue = 0;
+            rejectedKey = -1;
+        }
+
+        /**
+         * The list is exact, if no entry outside of the heap could be larger than
+         * one of the requested entries.
+         */
+        boolean isExact()
+        {
+            if (rejectedKey < 0) return true;
+
+            int above=0;
+            for (int n=0; n < cnt; n++)
+                if (less(rejectedValue, rejectedKey, value[n], id[n])) above++;
+            return above >= size;
+        }
+
+        void offer(int key, double val)
+        {
+            if (val <= 0 || value.length == 0) return;
+
+            if (cnt < value.length) {
+                value[cnt] = val;
+                id[cnt] = key;
+                siftUp(cnt++);
+            } else if (less(value[0], id[0], val, key)) {
+                reject(value[0], id[0]);
+                value[0] = val;
+                id[0] = key;
+                siftDown(0);
+            } else
+                reject(val, key);
+        }
+
+        private void reject(double val, int key)
+        {
+            if (rejectedKey < 0 || less(rejectedValue, rejectedKey, val, key)) {
+                rejectedValue = val;
+                rejectedKey = key;
+            }
+        }
+
+        void update(int key, double val)
+        {
+            int pos=0;
+            while (pos < cnt && id[pos] != key) pos++;
+            if (pos == cnt) {
+                offer(key, val);
+                return;
+            }
+
+            if (val <= 0) {
+                // remove the entry
+                cnt--;
+                if (pos == cnt) return;
+                value[pos] = value[cnt];
+                id[pos] = id[cnt];
+            } else
+                value[pos] = val;
+            siftUp(pos);
+            siftDown(pos);
+        }
+
+        /**
+         * @return Keys of the requested entries, the largest value first
+         */
+        int[] sorted()
+        {
+            Integer[] order = new Integer[cnt];
+            for (int n=0; n < cnt; n++) order[n] = n;
+            Arrays.sort(order, (a, b) -> less(value[a], id[a], value[b], id[b]) ? 1
+                                       : less(value[b], id[b], value[a], id[a]) ? -1 : 0);
+            int[] keys = new int[Math.min(cnt, size)];
+            for (int n=0; n < keys.length; n++) keys[n] = id[order[n]];
+            return keys;
+        }
+
+        // lower values are less, equal values are ordered by their key
+        private static boolean less(double v1, int k1, double v2, int k2)
+        {
+            return v1 < v2 || (v1 == v2 && k1 > k2);
+        }
+
+        private void siftUp(int pos)
+        {
+            while (pos > 0) {
+                int parent = (pos-1) >>> 1;
+                if (!less(value[pos], id[pos], value[parent], id[parent])) break;
+                swap(pos, parent);
+                pos = parent;
+            }
+        }
+
+        private void siftDown(int pos)
+        {
+            while (true) {
+                int child = 2*pos + 1;
+                if (child >= cnt) break;
+                if (child+1 < cnt && less(value[child+1], id[child+1], value[child], id[child])) child++;
+                if (!less(value[child], id[child], value[pos], id[pos])) break;
+                swap(pos, child);
+                pos = child;
+            }
+        }
+
+        private void swap(int a, int b)
+        {
+            double v = value[a]; value[a] = value[b]; value[b] = v;
+            int k = id[a]; id[a] = id[b]; id[b] = k;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Column store for source lines. Every attribute of a line is kept in its own
+ * array, indexed by the line number in the full source context. A SourceLine
+ * is only a light weight view on one row of this store.
+ *
+ * @author Matthias Grimm
+ */
+final class LineStore
+{
+    private static final SourceLine.Type[] TYPES = SourceLine.Type.values();
+    private static final int SHARED_TEXT_LEN = 24;
+
+    // Short texts like "NEXT i" or "END SUB" are repeated a lot. They share one String.
+    private HashMap<String,String> sharedText = new HashMap<>();
+
+    int size;
+    String[] source;
+    String[] comment;
+    byte[] type;
+    int[] lineNo;
+    int[] origin;           // line number in its file or in the profiler log
+    int[] level;
+    int[] calls;
+    float[] time;
+
+    // Results of the lexer, see MMBasic.lex()
+    byte[] flags;
+    String[] name;
+    int[] tokenFirst;
+    int[] tokenCnt;
+    int[] tokens;           // start and end of a token, packed into 16 bits each
+    int tokenSize;
+
+    LineStore()
+    {
+        this(64);
+    }
+
+    LineStore(int capacity)
+    {
+        source = new String[capacity];
+        comment = new String[capacity];
+        type = new byte[capacity];
+        lineNo = new int[capacity];
+        origin = new int[capacity];
+        level = new int[capacity];
+        calls = new int[capacity];
+        time = new float[capacity];
+        flags = new byte[capacity];
+        name = new String[capacity];
+        tokenFirst = new int[capacity];
+        tokenCnt = new int[capacity];
+        tokens = new int[capacity];
+    }
+
+    void clear()
+    {
+        Arrays.fill(source, 0, size, null);
+        Arrays.fill(comment, 0, size, null);
+        Arrays.fill(name, 0, size, null);
+        size = 0;
+        tokenSize = 0;
+        sharedText.clear();
+    }
+
+    /**
+     * Take over all columns of another store, e.g. one restored from a snapshot.
+     *
+     * @param other  Store to take the columns from
+     */
+    void assign(LineStore other)
+    {
+        size = other.size;
+        source = other.source;
+        comment = other.comment;
+        type = other.type;
+        lineNo = other.lineNo;
+        origin = other.origin;
+        level = other.level;
+        calls = other.calls;
+        time = other.time;
+        flags = other.flags;
+        name = other.name;
+        tokenFirst = other.tokenFirst;
+        tokenCnt = other.tokenCnt;
+        tokens = other.tokens;
+        tokenSize = other.tokenSize;
+        sharedText = new HashMap<>();
+    }
+
+    SourceLine.Type getType(int idx)
+    {
+        return TYPES[type[idx]];
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= source.length) return;
+
+        int len = Math.max(capacity, Math.max(16, source.length + (source.length >> 1)));
+        source = Arrays.copyOf(source, len);
+        comment = Arrays.copyOf(comment, len);
+        type = Arrays.copyOf(type, len);
+        lineNo = Arrays.copyOf(lineNo, len);
+        origin = Arrays.copyOf(origin, len);
+        level = Arrays.copyOf(level, len);
+        calls = Arrays.copyOf(calls, len);
+        time = Arrays.copyOf(time, len);
+        flags = Arrays.copyOf(flags, len);
+        name = Arrays.copyOf(name, len);
+        tokenFirst = Arrays.copyOf(tokenFirst, len);
+        tokenCnt = Arrays.copyOf(tokenCnt, len);
+    }
+
+    private void ensureTokenCapacity(int capacity)
+    {
+        if (capacity <= tokens.length) return;
+        tokens = Arrays.copyOf(tokens, Math.max(capacity, Math.max(16, tokens.length + (tokens.length >> 1))));
+    }
+
+    /**
+     * Add a token to the line. Tokens have to be added in the order of the lines.
+     */
+    void addToken(int idx, int start, int end)
+    {
+        ensureTokenCapacity(tokenSize+1);
+        tokens[tokenSize++] = start << 16 | end;
+        tokenCnt[idx]++;
+    }
+
+    static int tokenStart(int token)
+    {
+        return token >>> 16;
+    }
+
+    static int tokenEnd(int token)
+    {
+        return token & 0xFFFF;
+    }
+
+    /**
+     * Add a line of source code. The comment will be separated from the code
+     * and the line gets categorized.
+     *
+     * @param line  Line of source code as read from the file
+     * @return Index of the new line
+     */
+    int add(String line)
+    {
+        ensureCapacity(size+1);
+        int idx = size++;
+
+        String code = line.trim();
+        String remark = "";
+        SourceLine.Type lineType = SourceLine.Type.SOURCE;
+
+        if (code.isEmpty())
+            lineType = SourceLine.Type.EMPTY;
+        else {
+            int pos = line.indexOf(" '");
+            if (pos == -1) pos = line.indexOf('\'');
+            if (pos == 0) {
+                remark = code;
+                code = "";
+                lineType = SourceLine.Type.COMMENT;
+            } else if (pos > 0) {
+                remark = line.substring(pos).trim();
+                code = line.substring(0, pos-1).trim();
+            }
+
+            if (lineType == SourceLine.Type.SOURCE) {
+                String tmp = code.toUpperCase(Locale.US);
+                if (tmp.startsWith("OPTION"))
+                    lineType = SourceLine.Type.OPTION;
+                else if (tmp.startsWith("#DEFINE"))
+                    lineType = SourceLine.Type.DEFINE;
+                else if (tmp.startsWith("#INCLUDE"))
+                    lineType = SourceLine.Type.INCLUDE;
+            }
+        }
+
+        source[idx] = share(code);
+        comment[idx] = share(remark);
+        type[idx] = (byte) lineType.ordinal();
+        lineNo[idx] = 0;
+        origin[idx] = idx+1;
+        level[idx] = 0;
+        calls[idx] = 0;
+        time[idx] = 0;
+        MMBasic.lex(this, idx);
+        return idx;
+    }
+
+    private String share(String text)
+    {
+        if (text.length() > SHARED_TEXT_LEN) return text;
+
+        String shared = sharedText.putIfAbsent(text, text);
+        return shared == null ? text : shared;
+    }
+
+    /**
+     * Add a header line, which represents a file or the program itself.
+     *
+     * @param text  Text to display for this header
+     * @return Index of the new line
+     */
+    int addHeader(String text)
+    {
+        int idx = add("");
+        source[idx] = text;
+        type[idx] = (byte) SourceLine.Type.HEADER.ordinal();
+        return idx;
+    }
+
+    /**
+     * Append all lines of another store to this one.
+     *
+     * @param other  Store to copy the lines from
+     */
+    void append(LineStore other)
+    {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.source, 0, source, size, other.size);
+        System.arraycopy(other.comment, 0, comment, size, other.size);
+        System.arraycopy(other.type, 0, type, size, other.size);
+        System.arraycopy(other.lineNo, 0, lineNo, size, other.size);
+        System.arraycopy(other.origin, 0, origin, size, other.size);
+        System.arraycopy(other.level, 0, level, size, other.size);
+        System.arraycopy(other.calls, 0, calls, size, other.size);
+        System.arraycopy(other.time, 0, time, size, other.size);
+        System.arraycopy(other.flags, 0, flags, size, other.size);
+        System.arraycopy(other.name, 0, name, size, other.size);
+        System.arraycopy(other.tokenCnt, 0, tokenCnt, size, other.size);
+        for (int n=0; n < other.size; n++)
+            tokenFirst[size+n] = other.tokenFirst[n] + tokenSize;
+
+        ensureTokenCapacity(tokenSize + other.tokenSize);
+        System.arraycopy(other.tokens, 0, tokens, tokenSize, other.tokenSize);
+        tokenSize += other.tokenSize;
+        size += other.size;
+    }
+
+    /**
+     * Copy a line to a lower index. This is used to compact the store after lines
+     * have been removed.
+     *
+     * @param from  Index of the line to move
+     * @param to    New index of the line
+     */
+    void move(int from, int to)
+    {
+        if (from == to) return;
+
+        source[to] = source[from];
+        comment[to] = comment[from];
+        type[to] = type[from];
+        lineNo[to] = lineNo[from];
+        origin[to] = origin[from];
+        level[to] = level[from];
+        calls[to] = calls[from];
+        time[to] = time[from];
+        flags[to] = flags[from];
+        name[to] = name[from];
+        tokenFirst[to] = tokenFirst[from];
+        tokenCnt[to] = tokenCnt[from];
+    }
+
+    /**
+     * Cut off all lines behind the given size and release the unused capacity.
+     *
+     * @param newSize  New number of lines
+     */
+    void truncate(int newSize)
+    {
+        source = Arrays.copyOf(source, newSize);
+        comment = Arrays.copyOf(comment, newSize);
+        type = Arrays.copyOf(type, newSize);
+        lineNo = Arrays.copyOf(lineNo, newSize);
+        origin = Arrays.copyOf(origin, newSize);
+        level = Arrays.copyOf(level, newSize);
+        calls = Arrays.copyOf(calls, newSize);
+        time = Arrays.copyOf(time, newSize);
+        flags = Arrays.copyOf(flags, newSize);
+        name = Arrays.copyOf(name, newSize);
+        tokenFirst = Arrays.copyOf(tokenFirst, newSize);
+        tokenCnt = Arrays.copyOf(tokenCnt, newSize);
+        tokens = Arrays.copyOf(tokens, tokenSize);
+        size = newSize;
+        sharedText = new HashMap<>();
+    }
+}
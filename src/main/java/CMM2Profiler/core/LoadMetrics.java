@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import CMM2Profiler.Defaults;
+import CMM2Profiler.Registry;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Timing of the phases of a load: reading the files, the cleanup, the reference
+ * extraction and the build of the views. Each phase records its wall time, the
+ * lines and bytes it has processed and the bytes allocated meanwhile.<p>
+ *
+ * The allocated bytes are those of the thread, that runs the phase, and of the
+ * threads of the io and compute pools, because the files are read and the lines
+ * are analysed there. Allocations of other work on the pools at the same time are
+ * included, those of pool threads, that end during a phase, are lost. The runtime
+ * doesn't count the allocations of virtual threads, so a phase on an errand with
+ * a virtual thread has none.
+ *
+ * @author Matthias Grimm
+ */
+public final class LoadMetrics
+{
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final String program;
+    private final Instant started = Instant.now();
+    private final ArrayList<Phase> phases = new ArrayList<>();
+
+    public LoadMetrics(String program)
+    {
+        this.program = program;
+    }
+
+    public String getProgram()  { return program; }
+
+    /**
+     * Start a phase. It is recorded, when it ends.
+     */
+    public Phase begin(String name)
+    {
+        return new Phase(name);
+    }
+
+    public synchronized List<Phase> getPhases()
+    {
+        return new ArrayList<>(phases);
+    }
+
+    /**
+     * @return Sum of the wall times of all phases in ms
+     */
+    public synchronized double getTotalTime()
+    {
+        double sum=0;
+        for (Phase phase : phases) sum += phase.getTime();
+        return sum;
+    }
+
+    /**
+     * @return Short summary for the status bar
+     */
+    public synchronized String getSummary()
+    {
+        long lines=0;
+        for (Phase phase : phases) lines = Math.max(lines, phase.lines);
+
+        double time = getTotalTime();
+        return String.format(Locale.US, "Load %.0f ms, %,.0f lines/s", time, time > 0 ? lines * 1000 / time : 0);
+    }
+
+    /**
+     * Write the phases as JSON, e.g. to compare the loads of different versions.
+     */
+    public void exportJson(File fh) throws IOException
+    {
+        Files.writeString(fh.toPath(), toJson(), StandardCharsets.UTF_8);
+    }
+
+    public synchronized String toJson()
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"application\": ").append(quote(Defaults.APP_NAME)).append(",\n");
+        json.append("  \"version\": ").append(quote(Defaults.getVersionString())).append(",\n");
+        json.append("  \"java\": ").append(quote(System.getProperty("java.version"))).append(",\n");
+        json.append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        json.append("  \"program\": ").append(quote(program)).append(",\n");
+        json.append("  \"started\": ").append(quote(started.toString())).append(",\n");
+        json.append(String.format(Locale.US, "  \"totalMs\": %.3f,%n", getTotalTime()));
+        json.append("  \"phases\": [");
+        for (int n=0; n < phases.size(); n++) {
+            Phase phase = phases.get(n);
+            json.append(n == 0 ? "\n" : ",\n");
+            json.append(String.format(Locale.US,
+                    "    {\"name\": %s, \"ms\": %.3f, \"lines\": %d, \"bytes\": %d, "
+                  + "\"linesPerSecond\": %.0f, \"bytesPerSecond\": %.0f, \"allocatedBytes\": %d}",
+                    quote(phase.name), phase.getTime(), phase.lines, phase.bytes,
+                    phase.getLinesPerSecond(), phase.getBytesPerSecond(), phase.allocated));
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    private static String quote(String text)
+    {
+        StringBuilder str = new StringBuilder("\"");
+        for (int n=0; n < text.length(); n++) {
+            char c = text.charAt(n);
+            switch (c) {
+                case '"':  str.append("\\\""); break;
+                case '\\': str.append("\\\\"); break;
+                case '\n': str.append("\\n"); break;
+                case '\r': str.append("\\r"); break;
+                case '\t': str.append("\\t"); break;
+                default:
+                    if (c < 0x20) str.append(String.format("\\u%04x", (int) c));
+                    else str.append(c);
+            }
+        }
+        return str.append('"').toString();
+    }
+
+    /**
+     * @return Bytes allocated by the calling thread and the pool threads so far
+     *         or -1, if the runtime doesn't count them, e.g. on a virtual thread
+     */
+    private static long allocatedBytes()
+    {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) return -1;
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+            return -1;
+
+        long self = Thread.currentThread().getId();
+        long sum = threads.getThreadAllocatedBytes(self);
+        if (sum < 0) return -1;
+
+        long[] ids = Registry.get().getWorkerThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        for (int n=0; n < ids.length; n++)
+            if (ids[n] != self && bytes[n] > 0) sum += bytes[n];
+        return sum;
+    }
+
+    /**
+     * A phase of a load.
+     */
+    public final class Phase
+    {
+        private final String name;
+        private final long start;
+        private final long startAllocated;
+        private long time;
+        private long lines;
+        private long bytes;
+        private long allocated = -1;
+
+        private Phase(String name)
+        {
+            this.name = name;
+            startAllocated = allocatedBytes();
+            start = System.nanoTime();
+        }
+
+        /**
+         * End the phase and record it.
+         *
+         * @param lines  Lines processed by the phase
+         * @param bytes  Bytes read or written by the phase, 0 if it works in memory
+         */
+        public void end(long lines, long bytes)
+        {
+            time = System.nanoTime() - start;
+            long endAllocated = allocatedBytes();
+            if (startAllocated >= 0 && endAllocated >= 0)
+                allocated = Math.max(0, endAllocated - startAllocated);
+            this.lines = lines;
+            this.bytes = bytes;
+
+            synchronized (LoadMetrics.this) {
+                phases.add(this);
+            }
+        }
+
+        public String getName()     { return name; }
+        public long getLines()      { return lines; }
+        public long getBytes()      { return bytes; }
+
+        /**
+         * @return Allocated bytes or -1, if they aren't known
+         */
+        public long getAllocated()  { return allocated; }
+
+        /**
+         * @return Wall time in ms
+         */
+        public double getTime()     { return time / 1e6; }
+
+        public double getLinesPerSecond()
+        {
+            return time > 0 ? lines * 1e9 / time : 0;
+        }
+
+        public double getBytesPerSecond()
+        {
+            return time > 0 ? bytes * 1e9 / time : 0;
+        }
+    }
+}
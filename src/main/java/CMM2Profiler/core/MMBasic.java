@@ -25,28 +25,36 @@ import java.util.regex.Pattern;
  */
 public class MMBasic
 {
+    // Flags of a source line, set by the lexer
+    static final int FUNCTION     = 0x01;   // SUB or FUNCTION header
+    static final int FUNCTION_KW  = 0x02;   // header uses the keyword FUNCTION
+    static final int END_FUNCTION = 0x04;   // END SUB or END FUNCTION
+    static final int BLOCK_OPEN   = 0x08;
+    static final int BLOCK_MIDDLE = 0x10;   // ELSE or CASE
+    static final int BLOCK_CLOSE  = 0x20;
+
+    private static final Pattern IF_THEN_ONELINER = Pattern.compile("^IF\\b.+\\bTHEN\\b.+");
+    private static final Pattern FOR_NEXT_ONELINER = Pattern.compile("^FOR\\b.+\\bTO\\b.+\\bNEXT\\b.*");
+    private static final Pattern DO_LOOP_ONELINER = Pattern.compile("^DO\\b.*\\bLOOP\\b.*");
 
     public static boolean isIfThenOneliner(String line)
     {
         String code = stripComment(line).toUpperCase(Locale.US);
-        String pattern = "^IF\\b.+\\bTHEN\\b.+";
-        return Pattern.matches(pattern, code);
+        return IF_THEN_ONELINER.matcher(code).matches();
     }
 
     public static boolean isForNextOneliner(String line)
     {
         String code = stripComment(line).toUpperCase(Locale.US);
-        String pattern = "^FOR\\b.+\\bTO\\b.+\\bNEXT\\b.*";
-        return Pattern.matches(pattern, code);
+        return FOR_NEXT_ONELINER.matcher(code).matches();
     }
 
     public static boolean isDoLoopOneliner(String line)
     {
         String code = stripComment(line).toUpperCase(Locale.US);
-        String pattern = "^DO\\b.*\\bLOOP\\b.*";
-        return Pattern.matches(pattern, code);
+        return DO_LOOP_ONELINER.matcher(code).matches();
     }
-    
+
     private static String stripComment(String line)
     {
         int idx = line.indexOf("'");
@@ -54,4 +62,108 @@ public class MMBasic
         return line.trim();
     }
 
+    /**
+     * Tokenize one line of the store. The lexer looks at the leading keywords to
+     * classify the line (function header, block start and end) and records the
+     * function name. Every name, that may refer to a function, is added to the
+     * token list of the line. Such a name starts at the beginning of the line or
+     * after one of the characters "+-,=" or a blank and is followed by " (:" or
+     * the end of the line.
+     *
+     * @param store  Store with the line to tokenize
+     * @param idx    Index of the line
+     */
+    static void lex(LineStore store, int idx)
+    {
+        String code = store.source[idx];
+        int flags = 0;
+        String name = null;
+
+        int w1 = nameEnd(code, 0);
+        if (isWord(code, 0, w1, "SUB") || isWord(code, 0, w1, "FUNCTION")) {
+            flags = FUNCTION | BLOCK_OPEN | (w1 == 8 ? FUNCTION_KW : 0);
+            int a = skipBlanks(code, w1);
+            int b = nameEnd(code, a);
+            name = (a > w1 && b > a) ? code.substring(a, b) : "<INVALID>";
+
+        } else if (isWord(code, 0, w1, "END")) {
+            int a = skipBlanks(code, w1);
+            int b = nameEnd(code, a);
+            if (a > w1) {
+                if (isWord(code, a, b, "SUB") || isWord(code, a, b, "FUNCTION"))
+                    flags = END_FUNCTION | BLOCK_CLOSE;
+                else if (isWord(code, a, b, "SELECT") || isWord(code, a, b, "IF"))
+                    flags = BLOCK_CLOSE;
+            }
+
+        } else if (isWord(code, 0, w1, "ENDIF") || isWord(code, 0, w1, "NEXT") || isWord(code, 0, w1, "LOOP")) {
+            flags = BLOCK_CLOSE;
+
+        } else if (isWord(code, 0, w1, "ELSE") || isWord(code, 0, w1, "ELSEIF") || isWord(code, 0, w1, "CASE")) {
+            flags = BLOCK_MIDDLE;
+
+        } else if (isWord(code, 0, w1, "SELECT")) {
+            int a = skipBlanks(code, w1);
+            if (a > w1 && isWord(code, a, nameEnd(code, a), "CASE"))
+                flags = BLOCK_OPEN;
+
+        } else if ((isWord(code, 0, w1, "DO") && !isDoLoopOneliner(code))
+                || (isWord(code, 0, w1, "FOR") && !isForNextOneliner(code))
+                || (isWord(code, 0, w1, "IF") && !isIfThenOneliner(code))) {
+            flags = BLOCK_OPEN;
+        }
+
+        store.flags[idx] = (byte) flags;
+        store.name[idx] = name;
+        store.tokenFirst[idx] = store.tokenSize;
+        store.tokenCnt[idx] = 0;
+
+        int len = Math.min(code.length(), 0xFFFF);
+        int pos = 0;
+        while (pos < len) {
+            if (!isNameChar(code.charAt(pos)) || (pos > 0 && !isRefPrefix(code.charAt(pos-1)))) {
+                pos++;
+                continue;
+            }
+
+            int end = nameEnd(code, pos);
+            if (end <= len && (end == code.length() || isRefSuffix(code.charAt(end))))
+                store.addToken(idx, pos, end);
+            pos = end;
+        }
+    }
+
+    private static boolean isWord(String code, int start, int end, String keyword)
+    {
+        return end - start == keyword.length() && code.regionMatches(true, start, keyword, 0, end - start);
+    }
+
+    private static int nameEnd(String code, int pos)
+    {
+        while (pos < code.length() && isNameChar(code.charAt(pos))) pos++;
+        return pos;
+    }
+
+    private static int skipBlanks(String code, int pos)
+    {
+        while (pos < code.length() && (code.charAt(pos) == ' ' || code.charAt(pos) == '\t')) pos++;
+        return pos;
+    }
+
+    static boolean isNameChar(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+            || c == '_' || c == '$' || c == '%' || c == '&' || c == '.';
+    }
+
+    private static boolean isRefPrefix(char c)
+    {
+        return c == '+' || c == '-' || c == ',' || c == '=' || c == ' '
+            || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isRefSuffix(char c)
+    {
+        return c == ' ' || c == '(' || c == ':';
+    }
 }
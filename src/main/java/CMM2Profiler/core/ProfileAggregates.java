@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import java.util.Collection;
+
+/**
+ * The largest value in each subtree of the profiler tree, so a threshold can be
+ * checked for a line, a function or a file without looking at the lines below.
+ * The value of a line is its total time or its calls. The value of a function
+ * is the largest one of its header and its body, the value of a file is the
+ * largest one of its lines and functions.<p>
+ *
+ * The values are taken from the profiler data at the time of creation. They
+ * have to be created again, if the profiler data changes.
+ *
+ * @author Matthias Grimm
+ */
+public final class ProfileAggregates
+{
+    public enum Metric {TOTAL_TIME, CALLS}
+
+    private static final Metric[] METRICS = Metric.values();
+
+    private final float[][] lineMax = new float[METRICS.length][];
+    private final float[][] fileMax = new float[METRICS.length][];
+    private final double[] total = new double[METRICS.length];
+
+    ProfileAggregates(LineStore lines, Collection<SourceFile> files)
+    {
+        for (int m=0; m < METRICS.length; m++) {
+            lineMax[m] = new float[lines.size];
+            fileMax[m] = new float[files.size()];
+        }
+
+        int file=0;
+        for (SourceFile srcFile : files) {
+            int curFunction=-1;
+
+            for (int idx=srcFile.getFirstLine(); idx <= srcFile.getLastLine(); idx++) {
+                int flags = lines.flags[idx];
+                // the header holds the folded values of the body, they are counted there
+                if ((flags & MMBasic.FUNCTION) != 0) curFunction=idx;
+
+                for (int m=0; m < METRICS.length; m++) {
+                    float value = METRICS[m] == Metric.CALLS ? lines.calls[idx] : lines.time[idx] * lines.calls[idx];
+                    if (curFunction != idx) total[m] += value;
+
+                    lineMax[m][idx] = value;
+                    if (curFunction >= 0)
+                        lineMax[m][curFunction] = Math.max(lineMax[m][curFunction], value);
+                    fileMax[m][file] = Math.max(fileMax[m][file], value);
+                }
+
+                if ((flags & MMBasic.END_FUNCTION) != 0) curFunction=-1;
+            }
+            file++;
+        }
+    }
+
+    /**
+     * @return Sum of the values of all lines, the function headers aren't counted
+     */
+    public double getTotal(Metric metric)
+    {
+        return total[metric.ordinal()];
+    }
+
+    /**
+     * @return Largest value of a line or, for a function header, of the function
+     */
+    public float getValue(int idx, Metric metric)
+    {
+        return lineMax[metric.ordinal()][idx];
+    }
+
+    /**
+     * @param file  Position of the file in the structure map
+     * @return Largest value of the lines of a file
+     */
+    public float getFileValue(int file, Metric metric)
+    {
+        return fileMax[metric.ordinal()][file];
+    }
+
+    /**
+     * @param share  Share of the total, e.g. 0.01 for 1%
+     * @return Smallest value, that reaches the share. It is never 0, so lines,
+     *         that haven't been executed, don't reach any share.
+     */
+    public double getThreshold(Metric metric, double share)
+    {
+        return Math.max(Float.MIN_VALUE, share * total[metric.ordinal()]);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import java.util.Arrays;
+
+/**
+ * Differences between a baseline and a candidate run of the same program. All
+ * values are kept in arrays aligned with the lines of the full source context.
+ * A positive delta means, that the candidate needs more calls or more time than
+ * the baseline. The percentage is NaN, if a line has no calls or time in the
+ * baseline but in the candidate. The time deltas of the source files are kept
+ * in the order of the structure map.<p>
+ *
+ * Lines can be ranked by their time delta, so the tables can be sorted by
+ * regression without boxing the values.
+ *
+ * @author Matthias Grimm
+ */
+public final class ProfileDiff
+{
+    private final ProfileRun baseline;
+    private final ProfileRun candidate;
+
+    private final int[] calls;
+    private final float[] callsPct;
+    private final float[] time;
+    private final float[] timePct;
+    private final float[] fileTime;
+    private final float[] fileTimePct;
+
+    private int[] timeRank;
+    private int[] timePctRank;
+
+    public ProfileDiff(ProfileRun baseline, ProfileRun candidate)
+    {
+        if (baseline.size() != candidate.size() || baseline.getFileCnt() != candidate.getFileCnt())
+            throw new IllegalArgumentException("Profiler runs of different sources can't be compared.");
+
+        this.baseline = baseline;
+        this.candidate = candidate;
+
+        int size = baseline.size();
+        calls = new int[size];
+        callsPct = new float[size];
+        time = new float[size];
+        timePct = new float[size];
+
+        for (int idx=0; idx < size; idx++) {
+            int baseCalls = baseline.calls[idx];
+            float baseTime = baseline.time[idx];
+
+            calls[idx] = candidate.calls[idx] - baseCalls;
+            time[idx] = candidate.time[idx] - baseTime;
+            callsPct[idx] = percent(calls[idx], baseCalls);
+            timePct[idx] = percent(time[idx], baseTime);
+        }
+
+        fileTime = new float[baseline.getFileCnt()];
+        fileTimePct = new float[fileTime.length];
+        for (int n=0; n < fileTime.length; n++) {
+            fileTime[n] = candidate.fileTime[n] - baseline.fileTime[n];
+            fileTimePct[n] = percent(fileTime[n], baseline.fileTime[n]);
+        }
+    }
+
+    private static float percent(float delta, float base)
+    {
+        if (base != 0) return delta * 100 / base;
+        return delta == 0 ? 0 : Float.NaN;
+    }
+
+    public ProfileRun getBaseline()             { return baseline; }
+    public ProfileRun getCandidate()            { return candidate; }
+    public int        size()                    { return calls.length; }
+    public int        getCallsDelta(int idx)    { return calls[idx]; }
+    public float      getCallsPercent(int idx)  { return callsPct[idx]; }
+    public float      getTimeDelta(int idx)     { return time[idx]; }
+    public float      getTimePercent(int idx)   { return timePct[idx]; }
+    public float      getFileTimeDelta(int n)   { return fileTime[n]; }
+    public float      getFileTimePercent(int n) { return fileTimePct[n]; }
+
+    /**
+     * @return Rank of each line by its time delta. The line with the largest
+     *         regression has rank 0.
+     */
+    public int[] getTimeRank()
+    {
+        if (timeRank == null) timeRank = rank(time);
+        return timeRank;
+    }
+
+    /**
+     * @return Rank of each line by its relative time delta. New lines come
+     *         first, then the line with the largest relative regression.
+     */
+    public int[] getTimePercentRank()
+    {
+        if (timePctRank == null) timePctRank = rank(timePct);
+        return timePctRank;
+    }
+
+    /**
+     * @return Indices of all lines, sorted by their time delta, largest
+     *         regression first
+     */
+    public int[] getRegressionOrder()
+    {
+        int[] rank = getTimeRank();
+        int[] order = new int[rank.length];
+        for (int idx=0; idx < rank.length; idx++)
+            order[rank[idx]] = idx;
+        return order;
+    }
+
+    /**
+     * Rank the values in descending order. The value and the index are packed
+     * into a long, so a primitive sort is enough and equal values keep their
+     * source order. NaN is ranked above all numbers.
+     */
+    private static int[] rank(float[] values)
+    {
+        long[] keys = new long[values.length];
+        for (int idx=0; idx < values.length; idx++) {
+            int bits = Float.floatToIntBits(values[idx]);
+            bits ^= (bits >> 31) & 0x7fffffff;          // bit pattern ordered like the float
+            keys[idx] = ((long) ~bits << 32) | idx;     // descending
+        }
+        Arrays.sort(keys);
+
+        int[] rank = new int[values.length];
+        for (int pos=0; pos < keys.length; pos++)
+            rank[(int) keys[pos]] = pos;
+        return rank;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+/**
+ * Profiler data of one run of a program. The calls and times are stored in
+ * arrays aligned with the lines of the full source context, so two runs of the
+ * same program can be compared line by line. The total time of each source
+ * file is kept in the order of the structure map.
+ *
+ * @author Matthias Grimm
+ */
+public final class ProfileRun
+{
+    private final String name;
+    final int[] calls;
+    final float[] time;
+    final float[] fileTime;
+
+    ProfileRun(String name, int lines, int files)
+    {
+        this.name = name;
+        this.calls = new int[lines];
+        this.time = new float[lines];
+        this.fileTime = new float[files];
+    }
+
+    public String getName()          { return name; }
+    public int    size()             { return calls.length; }
+    public int    getCalls(int idx)  { return calls[idx]; }
+    public float  getTime(int idx)   { return time[idx]; }
+    public int    getFileCnt()       { return fileTime.length; }
+    public float  getFileTime(int n) { return fileTime[n]; }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.Charset;
+
+/**
+ * This class reads a profiler log of the CMM2. The file is read into memory at
+ * once and closed, each row is decoded directly from the bytes:
+ *
+ *     calls,time,code,file name,line number
+ *
+ * The rows are split by a RFC-4180 state machine, so quoted fields may contain
+ * commas, line breaks and escaped quotes (""). Numeric fields are converted
+ * without creating intermediate Strings and without exceptions. The time may
+ * use a decimal point or a decimal comma. An unquoted decimal comma splits the
+ * time into two fields, which is detected by the position of the code column.
+ * <p>
+ * The file name is only converted into a String, if it differs from the file
+ * name of the previous row.<p>
+ *
+ * The file isn't mapped, because a mapped file stays locked until the mapping
+ * is garbage collected. On Windows, a new log couldn't be copied over the one,
+ * that has been loaded and is watched.
+ *
+ * @author Matthias Grimm
+ */
+public class ProfilerLog
+implements Closeable
+{
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final int COLUMNS = 5;
+
+    // States of the row tokenizer
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE = 3;       // quote inside a quoted field: escape or end
+    private static final int TRAILING = 4;    // garbage after the closing quote
+
+    private final ByteBuffer buffer;
+    private final int limit;
+
+    private int rowStart;
+    private int rowEnd;
+    private int nextRow;
+
+    private int fieldCnt;
+    private int[] fieldStart = new int[8];
+    private int[] fieldEnd = new int[8];
+    private boolean[] fieldQuoted = new boolean[8];
+    private boolean[] fieldEscaped = new boolean[8];
+    private int codeIdx;
+
+    private byte[] lastName = new byte[0];
+    private String lastNameString = "";
+
+    /**
+     * Read a profiler log into memory, verifies the file format and returns
+     * the reader positioned in front of the first row.
+     *
+     * @param fh Initialized file handle
+     * @return ProfilerLog object
+     * @throws IOException for "File not found" and "Bad file format"
+     */
+    public static ProfilerLog open(File fh) throws IOException
+    {
+        ProfilerLog log = new ProfilerLog(fh);
+        log.verifyHeader();
+        return log;
+    }
+
+    private ProfilerLog(File fh) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(fh.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Profiler log too large");
+
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+            buffer.flip();
+            limit = buffer.limit();
+        }
+    }
+
+    /**
+     * The file has been closed already after reading it. This only exists, so
+     * the reader can still be used in a try-with-resources block.
+     */
+    @Override
+    public void close() throws IOException
+    {
+    }
+
+    /**
+     * Read the header and verify the file format. The header contains the path
+     * of the basic program, the profiler data belongs to.
+     */
+    private void verifyHeader() throws IOException
+    {
+        if (!readRow()) throw new IOException("Bad file format");
+
+        int start = rowStart;
+        if (start < rowEnd && buffer.get(start) == '/')
+            start++;
+
+        byte[] bytes = new byte[rowEnd - start];
+        buffer.get(start, bytes);
+        String line = new String(bytes, CHARSET);
+        String [] parts = line.split("/");
+        if (!parts[parts.length-1].endsWith(".bas")) throw new IOException("Bad file format");
+    }
+
+    /**
+     * Advance to the next row of the profiler log. Empty rows and rows with
+     * less than five columns will be skipped.
+     *
+     * @return true, if a row is available, false at the end of the file
+     */
+    public boolean next()
+    {
+        while (readRow()) {
+            if (fieldCnt >= COLUMNS) {
+                codeIdx = findCodeColumn();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Split the next row into fields. The field boundaries exclude the quotes
+     * of quoted fields and surrounding blanks of unquoted fields.
+     *
+     * @return true, if a non empty row was found, false at the end of the file
+     */
+    @SuppressWarnings("fallthrough")
+    private boolean readRow()
+    {
+        while (nextRow < limit) {
+            int pos = nextRow;
+            int state = FIELD_START;
+            int start = pos;
+            int end = pos;
+            boolean escaped = false;
+
+            rowStart = pos;
+            fieldCnt = 0;
+
+            scan:
+            for ( ; pos < limit; pos++) {
+                byte b = buffer.get(pos);
+                switch (state) {
+                    case FIELD_START:
+                        if (b == '"') {
+                            state = QUOTED;
+                            start = pos+1;
+                            escaped = false;
+                            break;
+                        }
+                        if (isBlank(b)) break;
+                        state = UNQUOTED;
+                        start = pos;
+                        // fall through
+                    case UNQUOTED:
+                        if (b == ',') {
+                            addField(start, pos, false, false);
+                            state = FIELD_START;
+                        } else if (b == '\n')
+                            break scan;
+                        break;
+
+                    case QUOTED:
+                        if (b == '"') {
+                            state = QUOTE;
+                            end = pos;
+                        }
+                        break;
+
+                    case QUOTE:
+                        if (b == '"') {
+                            state = QUOTED;
+                            escaped = true;
+                            break;
+                        }
+                        state = TRAILING;
+                        // fall through
+                    case TRAILING:
+                        if (b == ',') {
+                            addField(start, end, true, escaped);
+                            state = FIELD_START;
+                        } else if (b == '\n')
+                            break scan;
+                        break;
+                }
+            }
+            nextRow = pos+1;
+            rowEnd = pos;
+            while (rowEnd > rowStart && isBlank(buffer.get(rowEnd-1))) rowEnd--;
+
+            switch (state) {
+                case FIELD_START:
+                    if (fieldCnt > 0) addField(pos, pos, false, false);
+                    break;
+                case UNQUOTED:
+                    addField(start, pos, false, false);
+                    break;
+                case QUOTED:                            // missing closing quote
+                    addField(start, pos, true, escaped);
+                    break;
+                default:
+                    addField(start, end, true, escaped);
+                    break;
+            }
+
+            if (fieldCnt > 1 || fieldQuoted[0] || fieldEnd[0] > fieldStart[0]) return true;
+        }
+        return false;
+    }
+
+    private void addField(int start, int end, boolean quoted, boolean escaped)
+    {
+        if (fieldCnt == fieldStart.length) {
+            int size = fieldCnt*2;
+            fieldStart = copyOf(fieldStart, size);
+            fieldEnd = copyOf(fieldEnd, size);
+            fieldQuoted = copyOf(fieldQuoted, size);
+            fieldEscaped = copyOf(fieldEscaped, size);
+        }
+        if (!quoted)
+            while (end > start && isBlank(buffer.get(end-1))) end--;
+
+        fieldStart[fieldCnt] = start;
+        fieldEnd[fieldCnt] = end;
+        fieldQuoted[fieldCnt] = quoted;
+        fieldEscaped[fieldCnt] = escaped;
+        fieldCnt++;
+    }
+
+    /**
+     * The code column is the first quoted column between the time and the file name.
+     * Any additional column in front of it results from a decimal comma in the time.
+     * If the code is not quoted, it is expected at its regular position.
+     */
+    private int findCodeColumn()
+    {
+        for (int idx=2; idx <= fieldCnt-3; idx++)
+            if (fieldQuoted[idx]) return idx;
+        return 2;
+    }
+
+    public int getCalls()
+    {
+        return parseInt(fieldStart[0], fieldEnd[0]);
+    }
+
+    public float getTime()
+    {
+        return parseDecimal(fieldStart[1], fieldEnd[codeIdx-1]);
+    }
+
+    public int getLineNo()
+    {
+        return parseInt(fieldStart[fieldCnt-1], fieldEnd[fieldCnt-1]);
+    }
+
+    /**
+     * Get the name of the source file of the current row. As long as the
+     * name doesn't change, the same String object will be returned.
+     *
+     * @return Name of the source file or an empty String for the main program
+     */
+    public String getFileName()
+    {
+        int start = fieldStart[fieldCnt-2];
+        int len = fieldEnd[fieldCnt-2] - start;
+
+        boolean same = len == lastName.length;
+        for (int n=0; same && n < len; n++)
+            same = buffer.get(start+n) == lastName[n];
+
+        if (!same) {
+            lastName = new byte[len];
+            buffer.get(start, lastName);
+            lastNameString = new String(lastName, CHARSET);
+        }
+        return lastNameString;
+    }
+
+    /**
+     * Get the code of the current row. Escaped quotes inside the code will
+     * be replaced by single quotes.
+     *
+     * @return Source code line as recorded by the profiler
+     */
+    public String getCode()
+    {
+        int start = fieldStart[codeIdx];
+        int end = fieldQuoted[codeIdx] ? fieldEnd[codeIdx] : fieldEnd[fieldCnt-3];
+
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        String code = new String(bytes, CHARSET);
+        return fieldEscaped[codeIdx] ? code.replace("\"\"", "\"") : code;
+    }
+
+    /**
+     * Convert a field into an integer. Invalid numbers result in 0.
+     */
+    private int parseInt(int start, int end)
+    {
+        if (start == end) return 0;
+
+        boolean negative = buffer.get(start) == '-';
+        if (negative || buffer.get(start) == '+') start++;
+        if (start == end) return 0;
+
+        long value = 0;
+        for (int pos=start; pos < end; pos++) {
+            int digit = buffer.get(pos) - '0';
+            if (digit < 0 || digit > 9) return 0;
+            value = value*10 + digit;
+            if (value > Integer.MAX_VALUE) return 0;
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Convert a field into a float. The decimal separator might be a point or
+     * a comma, an exponent is optional. Invalid numbers result in 0.
+     */
+    private float parseDecimal(int start, int end)
+    {
+        if (start == end) return 0;
+
+        boolean negative = buffer.get(start) == '-';
+        if (negative || buffer.get(start) == '+') start++;
+
+        long mantissa = 0;
+        int scale = 0;
+        int digits = 0;
+        boolean fraction = false;
+        int pos = start;
+        for ( ; pos < end; pos++) {
+            byte b = buffer.get(pos);
+            if (b >= '0' && b <= '9') {
+                if (mantissa < 100000000000000000L) {
+                    mantissa = mantissa*10 + (b-'0');
+                    if (fraction) scale--;
+                } else if (!fraction)
+                    scale++;
+                digits++;
+            } else if ((b == '.' || b == ',') && !fraction) {
+                fraction = true;
+            } else
+                break;
+        }
+        if (digits == 0) return 0;
+
+        if (pos < end) {
+            byte b = buffer.get(pos++);
+            if (b != 'e' && b != 'E') return 0;
+
+            boolean negExp = pos < end && buffer.get(pos) == '-';
+            if (negExp || (pos < end && buffer.get(pos) == '+')) pos++;
+            if (pos == end) return 0;
+
+            int exponent = 0;
+            for ( ; pos < end; pos++) {
+                int digit = buffer.get(pos) - '0';
+                if (digit < 0 || digit > 9) return 0;
+                if (exponent < 1000) exponent = exponent*10 + digit;
+            }
+            scale += negExp ? -exponent : exponent;
+        }
+
+        double value = scale < 0 ? mantissa / Math.pow(10, -scale) : mantissa * Math.pow(10, scale);
+        return (float) (negative ? -value : value);
+    }
+
+    private static boolean isBlank(byte b)
+    {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static int[] copyOf(int[] src, int size)
+    {
+        int[] tmp = new int[size];
+        System.arraycopy(src, 0, tmp, 0, src.length);
+        return tmp;
+    }
+
+    private static boolean[] copyOf(boolean[] src, int size)
+    {
+        boolean[] tmp = new boolean[size];
+        System.arraycopy(src, 0, tmp, 0, src.length);
+        return tmp;
+    }
+}
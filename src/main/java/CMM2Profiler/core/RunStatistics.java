@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Statistics of several runs of the same program. The timing of the CMM2 is
+ * disturbed by interrupts, SD card access and the video refresh, so a single
+ * run isn't reliable. For every line and every source file the mean, median,
+ * standard deviation, minimum, maximum and 90th percentile of the calls and the
+ * time are calculated.<p>
+ *
+ * Each run is folded into the statistics, when it has been read, and can be
+ * dropped afterwards, so the memory doesn't grow with the number of runs. The
+ * mean and the variance are updated with Welford's algorithm. For the median
+ * and the 90th percentile the samples of the first 16 runs are kept, so they are
+ * exact up to 16 runs. Beyond that they are estimated with the P&sup2; algorithm
+ * of Jain and Chlamtac, which keeps five markers per value and quantile. The
+ * statistics aren't thread safe. Each statistic can be turned into a
+ * {@link ProfileRun} and applied to the source with {@link Source#setProfileRun}.
+ *
+ * @author Matthias Grimm
+ */
+public final class RunStatistics
+{
+    public enum Statistic {MEAN, MEDIAN, STDDEV, MIN, MAX, P90}
+
+    private static final int EXACT_RUNS = 16;
+
+    private final int lines;
+    private final int files;
+    private int runs;
+    private final Accumulator calls;
+    private final Accumulator time;
+    private final Accumulator fileTime;
+
+    /**
+     * Create empty statistics, the runs are added with {@link #add}.
+     *
+     * @param lines  Number of lines of the source
+     * @param files  Number of files of the source
+     */
+    public RunStatistics(int lines, int files)
+    {
+        this.lines = lines;
+        this.files = files;
+        this.calls = new Accumulator(lines);
+        this.time = new Accumulator(lines);
+        this.fileTime = new Accumulator(files);
+    }
+
+    public RunStatistics(List<ProfileRun> runs)
+    {
+        this(runs.isEmpty() ? 0 : runs.get(0).size(), runs.isEmpty() ? 0 : runs.get(0).getFileCnt());
+        if (runs.isEmpty())
+            throw new IllegalArgumentException("No profiler runs to merge.");
+
+        for (ProfileRun run : runs)
+            add(run);
+    }
+
+    /**
+     * Fold a run into the statistics. The run isn't referenced afterwards.
+     */
+    public void add(ProfileRun run)
+    {
+        if (run.size() != lines || run.getFileCnt() != files)
+            throw new IllegalArgumentException("Profiler runs of different sources can't be merged.");
+
+        runs++;
+        for (int idx=0; idx < lines; idx++) {
+            calls.add(idx, run.calls[idx], runs);
+            time.add(idx, run.time[idx], runs);
+        }
+        for (int file=0; file < files; file++)
+            fileTime.add(file, run.fileTime[file], runs);
+    }
+
+    public int   getRunCnt()                            { return runs; }
+    public int   size()                                 { return lines; }
+    public float getCalls(Statistic stat, int idx)      { return calls.get(stat, idx, runs); }
+    public float getTime(Statistic stat, int idx)       { return time.get(stat, idx, runs); }
+    public float getFileTime(Statistic stat, int file)  { return fileTime.get(stat, file, runs); }
+
+    /**
+     * @param stat  Statistic to use for the calls and times
+     * @return Profiler data with one statistic of all runs, the calls are rounded
+     */
+    public ProfileRun toProfileRun(Statistic stat)
+    {
+        ProfileRun run = new ProfileRun(stat.name().toLowerCase(Locale.US)+" of "+runs+" runs", lines, files);
+        for (int idx=0; idx < lines; idx++) {
+            run.calls[idx] = Math.round(getCalls(stat, idx));
+            run.time[idx] = getTime(stat, idx);
+        }
+        for (int file=0; file < files; file++)
+            run.fileTime[file] = getFileTime(stat, file);
+        return run;
+    }
+
+    /**
+     * Running statistics of one value of many lines or files. The samples of the
+     * first runs are kept for the exact median and percentile.
+     */
+    private static final class Accumulator
+    {
+        private final double[] mean;
+        private final double[] square;      // sum of the squared differences to the mean
+        private final float[] min;
+        private final float[] max;
+        private float[][] samples = new float[EXACT_RUNS][];    // one column per run
+        private final float[] sorted = new float[EXACT_RUNS];
+        private Quantile median;            // replace the samples after EXACT_RUNS
+        private Quantile p90;
+
+        Accumulator(int size)
+        {
+            mean = new double[size];
+            square = new double[size];
+            min = new float[size];
+            max = new float[size];
+        }
+
+        /**
+         * @param cnt  Number of samples including this one
+         */
+        void add(int idx, float value, int cnt)
+        {
+            double delta = value - mean[idx];
+            mean[idx] += delta / cnt;
+            square[idx] += delta * (value - mean[idx]);
+
+            if (cnt == 1 || value < min[idx]) min[idx] = value;
+            if (cnt == 1 || value > max[idx]) max[idx] = value;
+
+            if (cnt <= EXACT_RUNS) {
+                if (samples[cnt-1] == null) samples[cnt-1] = new float[mean.length];
+                samples[cnt-1][idx] = value;
+                return;
+            }
+            if (samples != null) {
+                median = new Quantile(0.5, mean.length);
+                p90 = new Quantile(0.9, mean.length);
+                for (int n=0; n < mean.length; n++) {
+                    sort(n, EXACT_RUNS);
+                    median.seed(n, sorted);
+                    p90.seed(n, sorted);
+                }
+                samples = null;
+            }
+            median.add(idx, value, cnt);
+            p90.add(idx, value, cnt);
+        }
+
+        float get(Statistic stat, int idx, int cnt)
+        {
+            if (cnt == 0) return 0;
+            return switch (stat) {
+                case MEAN -> (float) mean[idx];
+                case MEDIAN -> samples != null ? percentile(idx, cnt, 0.5) : median.get(idx);
+                case STDDEV -> cnt > 1 ? (float) Math.sqrt(square[idx] / (cnt-1)) : 0;
+                case MIN -> min[idx];
+                case MAX -> max[idx];
+                case P90 -> samples != null ? percentile(idx, cnt, 0.9) : p90.get(idx);
+            };
+        }
+
+        /**
+         * Percentile of the samples, linear interpolated between the closest ranks.
+         */
+        private float percentile(int idx, int cnt, double p)
+        {
+            sort(idx, cnt);
+            double pos = p * (cnt-1);
+            int lower = (int) pos;
+            if (lower+1 >= cnt) return sorted[lower];
+            return (float) (sorted[lower] + (pos-lower) * (sorted[lower+1] - sorted[lower]));
+        }
+
+        private void sort(int idx, int cnt)
+        {
+            for (int n=0; n < cnt; n++) sorted[n] = samples[n][idx];
+            Arrays.sort(sorted, 0, cnt);
+        }
+    }
+
+    /**
+     * P&sup2; estimate of a quantile. The five markers of a value are its minimum,
+     * the quantiles p/2, p and (1+p)/2 and its maximum. Their heights are stored
+     * in q and their ranks in pos. They start at the closest ranks of the exact
+     * samples.
+     */
+    private static final class Quantile
+    {
+        private final double[] fraction;
+        private final float[] q;
+        private final int[] pos;
+
+        Quantile(double p, int size)
+        {
+            this.fraction = new double[] {0, p/2, p, (1+p)/2, 1};
+            this.q = new float[5*size];
+            this.pos = new int[5*size];
+        }
+
+        /**
+         * @param sorted  First EXACT_RUNS samples of the value in ascending order
+         */
+        void seed(int idx, float[] sorted)
+        {
+            int b = 5*idx;
+            for (int i=0; i < 5; i++)
+                pos[b+i] = Math.max(i == 0 ? 0 : pos[b+i-1]+1, (int) Math.round((EXACT_RUNS-1) * fraction[i]));
+            pos[b+4] = EXACT_RUNS-1;
+            for (int i=3; i > 0; i--)
+                pos[b+i] = Math.min(pos[b+i], pos[b+i+1]-1);
+            for (int i=0; i < 5; i++)
+                q[b+i] = sorted[pos[b+i]];
+        }
+
+        /**
+         * @param cnt  Number of samples including this one
+         */
+        void add(int idx, float value, int cnt)
+        {
+            int b = 5*idx;
+
+            // cell of the value, the markers above it move up
+            int k;
+            if (value < q[b]) {
+                q[b] = value;
+                k = 0;
+            } else if (value >= q[b+4]) {
+                q[b+4] = value;
+                k = 3;
+            } else {
+                k = 0;
+                while (value >= q[b+k+1]) k++;
+            }
+            for (int i=k+1; i < 5; i++) pos[b+i]++;
+
+            // move the inner markers towards their desired rank
+            for (int i=1; i < 4; i++) {
+                double d = (cnt-1) * fraction[i] - pos[b+i];
+                int below = pos[b+i-1] - pos[b+i];
+                int above = pos[b+i+1] - pos[b+i];
+                if ((d >= 1 && above > 1) || (d <= -1 && below < -1)) {
+                    int s = d > 0 ? 1 : -1;
+                    double h = parabolic(b+i, s);
+                    if (h <= q[b+i-1] || h >= q[b+i+1])
+                        h = q[b+i] + s * (q[b+i+s] - q[b+i]) / (double) (pos[b+i+s] - pos[b+i]);
+                    q[b+i] = (float) h;
+                    pos[b+i] += s;
+                }
+            }
+        }
+
+        private double parabolic(int i, int s)
+        {
+            double n0 = pos[i-1], n1 = pos[i], n2 = pos[i+1];
+            return q[i] + s / (n2 - n0) * ((n1 - n0 + s) * (q[i+1] - q[i]) / (n2 - n1)
+                                         + (n2 - n1 - s) * (q[i] - q[i-1]) / (n1 - n0));
+        }
+
+        float get(int idx)
+        {
+            return q[5*idx+2];
+        }
+    }
+}
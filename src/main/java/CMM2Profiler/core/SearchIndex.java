@@ -0,0 +1,474 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Trigram index over the code and the comments of a source. Every sequence of
+ * three characters of a line maps to the sorted list of the lines containing it.
+ * A query is narrowed to the lines containing all trigrams of its text, only
+ * those are matched against the query. Searches ignore the case like MMBasic.
+ * The case is folded character by character like a regular expression with
+ * Unicode case does, so the default locale doesn't matter.<p>
+ *
+ * Regular expressions are narrowed by the literal texts, that every match must
+ * contain. Expressions with alternatives or short literals are matched against
+ * every line.<p>
+ *
+ * The index holds at most {@link #MAX_POSTINGS} line entries. If a source has
+ * more, the most frequent trigrams are left out. They would narrow a query the
+ * least.
+ *
+ * @author Matthias Grimm
+ */
+public final class SearchIndex
+{
+    public static final int MAX_POSTINGS = 4 << 20;     // 16 MB of line entries
+
+    private static final int EMPTY = 0;
+    private static final int DROPPED = -1;
+
+    private final LineStore lines;
+    // open addressing hash table: trigram+1 of a slot, its first entry and count
+    private final int[] keys;
+    private final int[] first;
+    private final int[] count;
+    private final int mask;
+    private final int[] postings;
+    private final int trigrams;
+
+    SearchIndex(LineStore lines)
+    {
+        this.lines = lines;
+
+        // 1st pass: count the lines of each trigram
+        int capacity=1024;
+        int[] k = new int[capacity], c = new int[capacity], last = new int[capacity];
+        int used=0;
+        for (int idx=0; idx < lines.size; idx++) {
+            for (String text : texts(idx)) {
+                for (int pos=0; pos+3 <= text.length(); pos++) {
+                    int key = trigram(text, pos) + 1;
+                    int slot = slot(k, capacity-1, key);
+                    if (k[slot] == EMPTY) {
+                        k[slot] = key;
+                        last[slot] = -1;
+                        if (++used * 2 > capacity) {
+                            int[][] grown = rehash(k, c, last, capacity*2);
+                            k = grown[0]; c = grown[1]; last = grown[2];
+                            capacity *= 2;
+                            slot = slot(k, capacity-1, key);
+                        }
+                    }
+                    if (last[slot] != idx) {
+                        last[slot] = idx;
+                        c[slot]++;
+                    }
+                }
+            }
+        }
+        keys = k;
+        count = c;
+        mask = capacity-1;
+        trigrams = used;
+        limitPostings();
+
+        // 2nd pass: fill the line lists
+        first = new int[capacity];
+        int total=0;
+        for (int slot=0; slot < capacity; slot++) {
+            first[slot] = total;
+            if (count[slot] > 0) total += count[slot];
+        }
+        postings = new int[total];
+        int[] fill = Arrays.copyOf(first, capacity);
+        Arrays.fill(last, -1);
+        for (int idx=0; idx < lines.size; idx++) {
+            for (String text : texts(idx)) {
+                for (int pos=0; pos+3 <= text.length(); pos++) {
+                    int slot = slot(keys, mask, trigram(text, pos) + 1);
+                    if (count[slot] > 0 && last[slot] != idx) {
+                        last[slot] = idx;
+                        postings[fill[slot]++] = idx;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Leave out the most frequent trigrams, until the line entries fit.
+     */
+    private void limitPostings()
+    {
+        long total=0;
+        for (int cnt : count) total += cnt;
+        if (total <= MAX_POSTINGS) return;
+
+        int[] sorted = count.clone();
+        Arrays.sort(sorted);
+        int limit = sorted[sorted.length-1];
+        for (int n=sorted.length-1; n >= 0 && total > MAX_POSTINGS; n--) {
+            total -= sorted[n];
+            limit = sorted[n];
+        }
+        // trigrams with the limit or more lines are dropped
+        for (int slot=0; slot < count.length; slot++)
+            if (count[slot] >= limit) count[slot] = DROPPED;
+    }
+
+    private static int[][] rehash(int[] k, int[] c, int[] last, int capacity)
+    {
+        int[] nk = new int[capacity], nc = new int[capacity], nl = new int[capacity];
+        for (int slot=0; slot < k.length; slot++) {
+            if (k[slot] == EMPTY) continue;
+            int ns = slot(nk, capacity-1, k[slot]);
+            nk[ns] = k[slot];
+            nc[ns] = c[slot];
+            nl[ns] = last[slot];
+        }
+        return new int[][] {nk, nc, nl};
+    }
+
+    private static int slot(int[] k, int mask, int key)
+    {
+        int slot = (key * 0x9E3779B9) >>> 8 & mask;
+        while (k[slot] != EMPTY && k[slot] != key) slot = (slot+1) & mask;
+        return slot;
+    }
+
+    /**
+     * Three case folded characters packed into 30 bits. Characters beyond 0x3FF
+     * share their codes, which only makes the narrowing less precise.
+     */
+    private static int trigram(CharSequence text, int pos)
+    {
+        return (fold(text.charAt(pos)) & 0x3FF) << 20
+             | (fold(text.charAt(pos+1)) & 0x3FF) << 10
+             | (fold(text.charAt(pos+2)) & 0x3FF);
+    }
+
+    /**
+     * Case fold of a character, the same as Pattern.CASE_INSENSITIVE with
+     * Pattern.UNICODE_CASE uses, e.g. the Turkish dotted and dotless I are 'i'.
+     */
+    static char fold(char c)
+    {
+        if (c < 0x80) return c >= 'A' && c <= 'Z' ? (char) (c + ('a'-'A')) : c;
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static String fold(String text)
+    {
+        char[] chars = text.toCharArray();
+        for (int n=0; n < chars.length; n++) chars[n] = fold(chars[n]);
+        return new String(chars);
+    }
+
+    private String[] texts(int idx)
+    {
+        String source = lines.source[idx], comment = lines.comment[idx];
+        if (comment == null || comment.isEmpty()) return source == null ? new String[0] : new String[] {source};
+        return source == null ? new String[] {comment} : new String[] {source, comment};
+    }
+
+    /**
+     * @return Number of different trigrams of the source
+     */
+    public int getTrigramCount()    { return trigrams; }
+
+    /**
+     * @return Memory of the index in bytes
+     */
+    public long getMemorySize()
+    {
+        return 4L * (keys.length + first.length + count.length + postings.length);
+    }
+
+    /**
+     * @return true, if frequent trigrams had to be left out to stay in the bounds
+     */
+    public boolean isLimited()
+    {
+        for (int cnt : count)
+            if (cnt == DROPPED) return true;
+        return false;
+    }
+
+    /**
+     * Find the lines, that contain a text. The case is ignored.
+     */
+    public Result find(String text)
+    {
+        long start = System.nanoTime();
+        String query = fold(text);
+        int[] candidates = candidates(List.of(query));
+        int[] hits = new int[candidates.length];
+        int cnt=0;
+        for (int idx : candidates) {
+            for (String line : texts(idx)) {
+                if (contains(line, query)) {
+                    hits[cnt++] = idx;
+                    break;
+                }
+            }
+        }
+        return new Result(Arrays.copyOf(hits, cnt), candidates.length, System.nanoTime() - start);
+    }
+
+    /**
+     * Find the lines, that match a regular expression. The case is ignored.
+     *
+     * @throws java.util.regex.PatternSyntaxException if the expression is invalid
+     */
+    public Result findRegex(String regex)
+    {
+        long start = System.nanoTime();
+        Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        int[] candidates = candidates(literals(regex));
+        int[] hits = new int[candidates.length];
+        int cnt=0;
+        Matcher matcher = pattern.matcher("");
+        for (int idx : candidates) {
+            for (String line : texts(idx)) {
+                if (matcher.reset(line).find()) {
+                    hits[cnt++] = idx;
+                    break;
+                }
+            }
+        }
+        return new Result(Arrays.copyOf(hits, cnt), candidates.length, System.nanoTime() - start);
+    }
+
+    private static boolean contains(String line, String query)
+    {
+        int len = query.length();
+        for (int pos=0; pos+len <= line.length(); pos++) {
+            int n=0;
+            while (n < len && fold(line.charAt(pos+n)) == query.charAt(n)) n++;
+            if (n == len) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Intersect the lines of all trigrams of the texts. Texts shorter than a
+     * trigram and dropped trigrams don't narrow the lines.
+     *
+     * @return Lines, that may contain all texts, in ascending order
+     */
+    private int[] candidates(List<String> texts)
+    {
+        ArrayList<Integer> slots = new ArrayList<>();
+        for (String text : texts) {
+            for (int pos=0; pos+3 <= text.length(); pos++) {
+                int slot = slot(keys, mask, trigram(text, pos) + 1);
+                if (keys[slot] == EMPTY) return new int[0];     // no line contains it
+                if (count[slot] != DROPPED && !slots.contains(slot)) slots.add(slot);
+            }
+        }
+        if (slots.isEmpty()) {
+            int[] all = new int[lines.size];
+            for (int idx=0; idx < all.length; idx++) all[idx] = idx;
+            return all;
+        }
+
+        // start with the shortest list and look up its lines in the others
+        slots.sort((a, b) -> Integer.compare(count[a], count[b]));
+        int shortest = slots.get(0);
+        int[] result = Arrays.copyOfRange(postings, first[shortest], first[shortest] + count[shortest]);
+        int cnt = result.length;
+        for (int n=1; n < slots.size() && cnt > 0; n++) {
+            int slot = slots.get(n);
+            int from = first[slot], to = from + count[slot];
+            int kept=0;
+            for (int i=0; i < cnt; i++) {
+                int pos = Arrays.binarySearch(postings, from, to, result[i]);
+                if (pos >= 0) {
+                    result[kept++] = result[i];
+                    from = pos+1;
+                } else
+                    from = -pos-1;
+            }
+            cnt = kept;
+        }
+        return Arrays.copyOf(result, cnt);
+    }
+
+    /**
+     * Literal texts, that every match of a regular expression contains. Groups,
+     * classes and escapes end a literal, a quantified character is left out.
+     * Escaped meta characters like \. are part of a literal.
+     * Alternatives might not contain any of the literals, so there are none.
+     */
+    static List<String> literals(String regex)
+    {
+        ArrayList<String> result = new ArrayList<>();
+        if (regex.indexOf('|') >= 0) return result;
+
+        StringBuilder literal = new StringBuilder();
+        for (int pos=0; pos < regex.length(); pos++) {
+            char c = regex.charAt(pos);
+            char next = pos+1 < regex.length() ? regex.charAt(pos+1) : 0;
+
+            if (c == '\\' && next != 0 && !Character.isLetterOrDigit(next)) {
+                // escaped meta character
+                char after = pos+2 < regex.length() ? regex.charAt(pos+2) : 0;
+                pos++;
+                if (isQuantifier(after)) addLiteral(result, literal);
+                else literal.append(fold(next));
+                continue;
+            }
+            if (c == '(' || c == '[') {
+                addLiteral(result, literal);
+                pos = skipGroup(regex, pos);
+                continue;
+            }
+            if (c == '\\' || ".^$)]{}".indexOf(c) >= 0 || isQuantifier(c)) {
+                addLiteral(result, literal);
+                if (c == '\\') pos = skipEscape(regex, pos);
+                if (c == '{') pos = Math.max(pos, regex.indexOf('}', pos));
+                if (pos < 0) break;
+                continue;
+            }
+            if (isQuantifier(next) || next == '{') {
+                // the character might not be there
+                addLiteral(result, literal);
+                continue;
+            }
+            literal.append(fold(c));
+        }
+        addLiteral(result, literal);
+        return result;
+    }
+
+    private static boolean isQuantifier(char c)
+    {
+        return c == '*' || c == '+' || c == '?';
+    }
+
+    private static void addLiteral(List<String> result, StringBuilder literal)
+    {
+        if (literal.length() >= 3) result.add(literal.toString());
+        literal.setLength(0);
+    }
+
+    /**
+     * @return Position of the end of a group or class, that starts at pos
+     */
+    /**
+     * @return Position of the last character of the escape sequence at pos, e.g.
+     *         \d, \x41, \x{41}, \0101, \cA, \p{Lu}, \k&lt;name&gt;, \Q...\E
+     *         or a Unicode escape
+     */
+    private static int skipEscape(String regex, int pos)
+    {
+        int last = regex.length()-1;
+        if (pos >= last) return last;
+
+        char c = regex.charAt(++pos);
+        char next = pos < last ? regex.charAt(pos+1) : 0;
+        switch (c) {
+            case 'x':
+                return next == '{' ? skipTo(regex, pos, '}') : Math.min(pos+2, last);
+            case 'u':
+                return Math.min(pos+4, last);
+            case '0':
+                for (int n=0; n < 3 && pos < last && regex.charAt(pos+1) >= '0' && regex.charAt(pos+1) <= '7'; n++)
+                    pos++;
+                return pos;
+            case 'c':
+                return Math.min(pos+1, last);
+            case 'p': case 'P':
+                return next == '{' ? skipTo(regex, pos, '}') : Math.min(pos+1, last);
+            case 'N':
+                return skipTo(regex, pos, '}');
+            case 'k':
+                return skipTo(regex, pos, '>');
+            case 'Q':
+                int end = regex.indexOf("\\E", pos);
+                return end < 0 ? last : end+1;
+            default:
+                // back reference, its number might have more digits
+                if (c >= '1' && c <= '9')
+                    while (pos < last && Character.isDigit(regex.charAt(pos+1))) pos++;
+                return pos;
+        }
+    }
+
+    private static int skipTo(String regex, int pos, char close)
+    {
+        int end = regex.indexOf(close, pos);
+        return end < 0 ? regex.length()-1 : end;
+    }
+
+    private static int skipGroup(String regex, int pos)
+    {
+        char open = regex.charAt(pos), close = open == '(' ? ')' : ']';
+        int depth=0;
+        for (; pos < regex.length(); pos++) {
+            char c = regex.charAt(pos);
+            if (c == '\\') pos++;
+            else if (c == open) depth++;
+            else if (c == close && --depth == 0) break;
+        }
+        // a quantifier of the group belongs to it
+        while (pos+1 < regex.length() && (isQuantifier(regex.charAt(pos+1)) || regex.charAt(pos+1) == '{')) {
+            pos++;
+            if (regex.charAt(pos) == '{') pos = Math.max(pos, regex.indexOf('}', pos));
+        }
+        return pos;
+    }
+
+    /**
+     * Lines found by a search.
+     */
+    public static final class Result
+    {
+        private final int[] lines;
+        private final int candidates;
+        private final long time;
+
+        Result(int[] lines, int candidates, long time)
+        {
+            this.lines = lines;
+            this.candidates = candidates;
+            this.time = time;
+        }
+
+        /**
+         * @return Index of each found line in the source, in ascending order
+         */
+        public int[] getLines()     { return lines; }
+        public int size()           { return lines.length; }
+
+        /**
+         * @return Number of lines, that had to be matched after the narrowing
+         */
+        public int getCandidates()  { return candidates; }
+
+        /**
+         * @return Time of the search in ms
+         */
+        public double getTime()     { return time / 1e6; }
+    }
+}
@@ -16,23 +16,31 @@
  */
 package CMM2Profiler.core;
 
+import CMM2Profiler.Registry;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
-import static java.lang.Float.parseFloat;
-import static java.lang.Integer.parseInt;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * This class handles the source code of a MMBasic program.
@@ -63,13 +71,20 @@ public class Source
      * </ul>
      */
     public enum Mode {NODATA, SOURCEONLY, PROFILERONLY, SOURCEANDPROFILER}
+
+    private static final int CANCEL_CHECK = 4096;       // lines between two checks for a cancellation
+    private static final int RUNS_IN_FLIGHT = 4;        // profiler runs read ahead by loadProfileRuns()
+    private static final int PARALLEL_LINES = 16384;    // lines of one task of the reference extraction
     
-    private final ArrayList<SourceLine> SourceLines = new ArrayList<>();
+    private final LineStore SourceLines = new LineStore();
     private final LinkedHashMap<String,SourceFile> StructureMap = new LinkedHashMap<>();
     private final ArrayList<Function> FunctionList = new ArrayList<>();
     
     private int codeLineNo;
     private Mode codeMode;
+    private String basePath;
+    private String programPath;
+    private LoadMetrics metrics = new LoadMetrics("");
     
     public Source()
     {
@@ -80,279 +95,806 @@ public class Source
     public Set<String>            getSourceFileNames()       { return StructureMap.keySet(); }
     public ArrayList<Function>    getFunctionList()          { return FunctionList; }
     public Collection<SourceFile> getStructureMap()          { return StructureMap.values(); }
-    public SourceLine             getSourceLine(int idx)     { return SourceLines.get(idx); }
-    public int                    getSourceLineCnt()         { return SourceLines.size();  }
+    public int                    getSourceLineCnt()         { return SourceLines.size;  }
     public Mode                   getMode()                  { return codeMode; }
+
+    /**
+     * @return File name of the loaded program
+     */
+    public String getProgramName()
+    {
+        return programPath == null ? "" : new File(programPath).getName()+".bas";
+    }
+
+    /**
+     * @return Timing of the phases of the last load. The views may add their own
+     *         phases.
+     */
+    public LoadMetrics            getLoadMetrics()           { return metrics; }
+
+    public SourceLine getSourceLine(int idx)
+    {
+        Objects.checkIndex(idx, SourceLines.size);
+        return new SourceLine(SourceLines, idx);
+    }
     
-    public Mode load(String base, String path) throws IOException
+    /**
+     * Get the position of a line in the full source context.
+     *
+     * @param srcLine  Line of this source
+     * @return Index of the line or -1, if it doesn't belong to this source, e.g. a header
+     */
+    public int indexOf(SourceLine srcLine)
     {
-        File fh;
+        return srcLine.isPartOf(SourceLines) ? srcLine.getIndex() : -1;
+    }
+
+    /**
+     * Load a program and its profiler log. A load can be cancelled by interrupting
+     * its thread, e.g. by cancelling its errand. Every stage checks for it regularly.
+     * Loads of the same source are serialized, so a load, that supersedes a cancelled
+     * one, waits until the cancelled one has given up.
+     *
+     * @throws InterruptedIOException if the load has been cancelled. The source is
+     *                                empty then.
+     */
+    public synchronized Mode load(String base, String path) throws IOException
+    {
+        clear();
+        basePath = base;
+        programPath = path;
+        metrics = new LoadMetrics(new File(base, path).getPath());
+
+        try {
+            SourceSnapshot snapshot = new SourceSnapshot(base, path);
+            if (snapshot.isEnabled()) {
+                LoadMetrics.Phase phase = metrics.begin("Read snapshot");
+                Mode mode = snapshot.read(SourceLines, StructureMap, FunctionList);
+                phase.end(SourceLines.size, mode != null ? snapshot.length() : 0);
+                if (mode != null) {
+                    codeMode = mode;
+                    return codeMode;
+                }
+            }
+
+            loadFiles(base, path);
+
+            LoadMetrics.Phase phase = metrics.begin("Cleanup");
+            int lines = SourceLines.size;
+            cleanupSourceLines();
+            phase.end(lines, 0);
 
+            phase = metrics.begin("Function references");
+            extractFunctionReferences();
+            phase.end(SourceLines.size, 0);
+
+            checkCancelled();
+            if (codeMode != Mode.NODATA && snapshot.isEnabled()) {
+                phase = metrics.begin("Write snapshot");
+                snapshot.write(codeMode, SourceLines, StructureMap, FunctionList);
+                phase.end(SourceLines.size, snapshot.length());
+            }
+            return codeMode;
+
+        } catch (IOException ex) {
+            // don't keep the partial data of a cancelled or failed load
+            clear();
+            SourceLines.assign(new LineStore());
+            throw ex;
+        }
+    }
+
+    private void clear()
+    {
         FunctionList.clear();
         StructureMap.clear();
         SourceLines.clear();
         codeLineNo=0;
+        codeMode = Mode.NODATA;
+    }
+
+    /**
+     * @throws InterruptedIOException if the thread of the load has been interrupted
+     */
+    static void checkCancelled() throws InterruptedIOException
+    {
+        if (Thread.currentThread().isInterrupted())
+            throw new InterruptedIOException("Loading cancelled");
+    }
+
+    /**
+     * Read the program and its profiler log into the empty source, without any
+     * cleanup or analysis. This is the first stage of {@link #load}.
+     */
+    void loadFiles(String base, String path) throws IOException
+    {
+        File fh;
 
         fh=new File(base, path+".bas");
         if (fh.isFile()) {
+            LoadMetrics.Phase phase = metrics.begin("Read source");
             loadSource(base, path+".bas");
+            long bytes=0;
+            for (SourceFile srcFile : StructureMap.values())
+                bytes += new File(base, srcFile.getPath()).length();
+            phase.end(SourceLines.size, bytes);
             codeMode = Mode.SOURCEONLY;
+
             fh=new File(base, path+".csv");
             if (fh.isFile()) {
-                loadProfilerLogOnSource(fh);
+                phase = metrics.begin("Read profiler log");
+                int rows = loadProfilerLogOnSource(fh);
+                phase.end(rows, fh.length());
                 codeMode = Mode.SOURCEANDPROFILER;
             }
         } else {
             fh=new File(base, path+".csv");
             if (fh.isFile()) {
+                LoadMetrics.Phase phase = metrics.begin("Read profiler log");
                 loadProfilerLog(fh);
+                phase.end(SourceLines.size, fh.length());
                 codeMode = Mode.PROFILERONLY;
             }
         }
-        
-        cleanupSourceLines();
-        extractFunctionReferences();
-        return codeMode;
+    }
+
+    /**
+     * @return Profiler log of the loaded program
+     */
+    public File getProfilerLogFile()
+    {
+        return new File(basePath, programPath+".csv");
+    }
+
+    /**
+     * @return Program and include files of the loaded source or an empty list,
+     *         if only the profiler log has been loaded
+     */
+    public List<File> getSourceFiles()
+    {
+        ArrayList<File> files = new ArrayList<>();
+        if (codeMode == Mode.SOURCEONLY || codeMode == Mode.SOURCEANDPROFILER) {
+            files.add(new File(basePath, programPath+".bas"));
+            for (SourceFile srcFile : StructureMap.values())
+                if (!srcFile.getPath().equals(programPath+".bas"))
+                    files.add(new File(basePath, srcFile.getPath()));
+        }
+        return files;
+    }
+
+    /**
+     * Load another profiler log of the same program, e.g. to compare it with
+     * the profiler data of this source.
+     *
+     * @param fh  Profiler log
+     * @return Profiler data of the log, aligned with the lines of this source
+     * @throws IOException if the file can't be read or doesn't match this source
+     */
+    public ProfileRun loadProfileRun(File fh) throws IOException
+    {
+        return loadProfileRuns(List.of(fh)).get(0);
+    }
+
+    /**
+     * Load several profiler logs of the same program, e.g. repeated runs to
+     * average out the noise of the measurements. The rows of a log are mapped
+     * to the lines by their line number in the file, so the program doesn't
+     * have to be read again. The function and file times are folded like on
+     * a normal load. The logs are read concurrently and this source isn't
+     * changed, but a running load of it is waited for.
+     *
+     * @param logs  Profiler logs
+     * @return Profiler data of each log, aligned with the lines of this source
+     * @throws IOException if a file can't be read or doesn't match this source
+     */
+    public List<ProfileRun> loadProfileRuns(List<File> logs) throws IOException
+    {
+        ArrayList<ProfileRun> runs = new ArrayList<>();
+        loadProfileRuns(logs, runs::add);
+        return runs;
+    }
+
+    /**
+     * Load several profiler logs of the same program like {@link #loadProfileRuns(List)},
+     * but pass each run to a consumer in the order of the logs, instead of keeping
+     * all of them. Only a few runs are read ahead, so the memory doesn't grow
+     * with the number of logs.
+     *
+     * @param logs      Profiler logs
+     * @param consumer  Called on this thread with the profiler data of each log
+     * @throws IOException if a file can't be read or doesn't match this source
+     */
+    public synchronized void loadProfileRuns(List<File> logs, Consumer<ProfileRun> consumer) throws IOException
+    {
+        if (codeMode == Mode.NODATA)
+            throw new IOException("Profiler runs can only be loaded on a loaded program.");
+
+        // index of each line by its line number in the file
+        HashMap<String,Integer> files = new HashMap<>();
+        int[][] lines = new int[StructureMap.size()][];
+        int file=0;
+        for (Entry<String,SourceFile> item : StructureMap.entrySet()) {
+            SourceFile srcFile = item.getValue();
+            int max=0;
+            for (int idx=srcFile.getFirstLine(); idx <= srcFile.getLastLine(); idx++)
+                max = Math.max(max, SourceLines.origin[idx]);
+
+            lines[file] = new int[max+1];
+            Arrays.fill(lines[file], -1);
+            for (int idx=srcFile.getFirstLine(); idx <= srcFile.getLastLine(); idx++)
+                lines[file][SourceLines.origin[idx]] = idx;
+            files.put(item.getKey(), file++);
+        }
+
+        ExecutorService executor = Registry.get().getIOExecutor();
+        ArrayDeque<Future<ProfileRun>> pending = new ArrayDeque<>();
+        try {
+            int n=0;
+            while (n < logs.size() || !pending.isEmpty()) {
+                if (n < logs.size() && pending.size() < RUNS_IN_FLIGHT) {
+                    File log = logs.get(n++);
+                    pending.add(executor.submit(() -> readProfileRun(log, files, lines)));
+                } else
+                    consumer.accept(await(pending.remove()));
+            }
+        } finally {
+            for (Future<ProfileRun> task : pending) task.cancel(true);
+        }
+    }
+
+    /**
+     * Read a profiler log into a new run and fold the function and file times.
+     * This source is only read.
+     */
+    private ProfileRun readProfileRun(File fh, Map<String,Integer> files, int[][] lines) throws IOException
+    {
+        ProfileRun run = new ProfileRun(fh.getName(), SourceLines.size, StructureMap.size());
+        String lastName = null;
+        int[] index = null;
+        int rows=0;
+
+        try (ProfilerLog log = ProfilerLog.open(fh)) {
+            while (log.next()) {
+                if (++rows % CANCEL_CHECK == 0) checkCancelled();
+                String name = log.getFileName();
+                if (name != lastName) {     // same object as long as the file doesn't change
+                    lastName = name;
+                    Integer file = files.get(name.isEmpty() ? "Main Program" : name);
+                    if (file == null) throw new IOException("unknown source file \""+name+"\"");
+                    index = lines[file];
+                }
+
+                // rows of removed lines, e.g. comments, are ignored like on a normal load
+                int lineno = log.getLineNo();
+                if (lineno <= 0 || lineno >= index.length || index[lineno] < 0) continue;
+
+                run.calls[index[lineno]] = log.getCalls();
+                run.time[index[lineno]] = log.getTime();
+            }
+        }
+        foldFunctionTimes(run.calls, run.time, run.fileTime);
+        return run;
+    }
+
+    /**
+     * Replace the profiler data of this source, e.g. by the statistics of
+     * several runs. All views on this source will show the new data.
+     *
+     * @param run  Profiler data aligned with the lines of this source
+     */
+    public void setProfileRun(ProfileRun run)
+    {
+        if (run.size() != SourceLines.size || run.getFileCnt() != StructureMap.size())
+            throw new IllegalArgumentException("The profiler data doesn't belong to this source.");
+
+        System.arraycopy(run.calls, 0, SourceLines.calls, 0, SourceLines.size);
+        System.arraycopy(run.time, 0, SourceLines.time, 0, SourceLines.size);
+
+        int n=0;
+        for (SourceFile srcFile : StructureMap.values())
+            srcFile.getSource().setTime(run.fileTime[n++]);
+        codeMode = Mode.SOURCEANDPROFILER;
+    }
+
+    /**
+     * @param name  Name of the run
+     * @return Copy of the current profiler data of this source
+     */
+    public ProfileRun getProfileRun(String name)
+    {
+        ProfileRun run = new ProfileRun(name, SourceLines.size, StructureMap.size());
+        System.arraycopy(SourceLines.calls, 0, run.calls, 0, SourceLines.size);
+        System.arraycopy(SourceLines.time, 0, run.time, 0, SourceLines.size);
+
+        int n=0;
+        for (SourceFile srcFile : StructureMap.values())
+            run.fileTime[n++] = srcFile.getSource().getTime();
+        return run;
     }
     
+    /**
+     * Load the main program and all include files. The include files are resolved
+     * level by level: first all files included by the main program in the order of
+     * their #INCLUDE statements, then the files included by those and so on. Every
+     * file is only loaded once, which also breaks include cycles. The files of one
+     * level are read concurrently.
+     */
     private void loadSource(String base, String path) throws IOException
     {
-        int mainLines = loadSourceFile(base, path);  // load main source file
-        SourceFile src=new SourceFile(path,0,mainLines-1);
-        StructureMap.put("Main Program", src);
-        
-        int lineno=mainLines;
-        for (int n=0 ; n < mainLines ; n++) {
-            String codeLine = SourceLines.get(n).getSource();
-            if (codeLine.length() < 12) continue;
-            String temp = codeLine.substring(0, 8).toUpperCase(Locale.US);
-            if (temp.equals("#INCLUDE")) {
-                int a = codeLine.indexOf('"')+1;
-                int b = codeLine.indexOf('"', a);
-                String name = codeLine.substring(a,b);
-                int cnt=loadSourceFile(base,name);    // load include file
-                src=new SourceFile(name,lineno,lineno+cnt-1);
-                StructureMap.put(name, src);
-                lineno += cnt;
+        ArrayList<String> level = new ArrayList<>();
+        HashSet<String> known = new HashSet<>();
+
+        level.add(path);
+        known.add(path.toUpperCase(Locale.US));
+
+        int lineno=0;
+        while (!level.isEmpty()) {
+            checkCancelled();
+            List<LineStore> files = readSourceFiles(base, level);
+            ArrayList<String> nextLevel = new ArrayList<>();
+
+            for (int n=0; n < level.size(); n++) {
+                String name = level.get(n);
+                LineStore lines = files.get(n);
+
+                SourceFile src=new SourceFile(name,lineno,lineno+lines.size-1);
+                StructureMap.put(StructureMap.isEmpty() ? "Main Program" : name, src);
+                lineno += lines.size;
+
+                SourceLines.append(lines);
+                for (int idx=src.getFirstLine(); idx < lineno; idx++) {
+                    SourceLine srcLine = new SourceLine(SourceLines, idx);
+                    codeLineNo = srcLine.setLineNo(codeLineNo);
+
+                    String include = getIncludeName(srcLine);
+                    if (include != null && known.add(include.toUpperCase(Locale.US)))
+                        nextLevel.add(include);
+                }
             }
+            level = nextLevel;
         }
     }
-    
-    public int loadSourceFile(String base, String path) throws IOException
+
+    private List<LineStore> readSourceFiles(String base, List<String> paths) throws IOException
     {
-        BufferedReader reader;
-        String line;
-        int level=0;
-        int cnt=0;
+        if (paths.size() == 1)
+            return List.of(readSourceFile(base, paths.get(0)));
 
-        File fh=new File(base, path);
-        InputStream iStream = new FileInputStream(fh);    
-        reader = new BufferedReader(new InputStreamReader(iStream));
-          
-        line = reader.readLine();
-        while (line != null) {
-            SourceLine srcLine = new SourceLine(line);
-            level = srcLine.setLevel(level);
-            codeLineNo = srcLine.setLineNo(codeLineNo);
-            SourceLines.add(srcLine);
-            cnt++;
-            
-            line = reader.readLine();
+        ArrayList<Callable<LineStore>> tasks = new ArrayList<>();
+        for (String path : paths)
+            tasks.add(() -> readSourceFile(base, path));
+
+        return invokeAll(Registry.get().getIOExecutor(), tasks);
+    }
+
+    /**
+     * Run the tasks on an executor of the application and wait for them.
+     *
+     * @return Results in the order of the tasks
+     * @throws IOException the first exception of a task
+     */
+    private static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) throws IOException
+    {
+        ArrayList<T> result = new ArrayList<>();
+        try {
+            for (Future<T> task : executor.invokeAll(tasks))
+                result.add(await(task));
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading cancelled");
+        }
+        return result;
+    }
+
+    private static <T> T await(Future<T> task) throws IOException
+    {
+        try {
+            return task.get();
+
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            throw new IOException(ex.getCause());
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading cancelled");
         }
-        reader.close();
-        return cnt;
     }
- 
-    private void loadProfilerLogOnSource(File fh) throws IOException
+
+    private static LineStore readSourceFile(String base, String path) throws IOException
     {
-        int lineno;
-        
-        try (BufferedReader reader = openProfileReader(fh)) {
+        LineStore lines = new LineStore();
+        int level=0;
+
+        File fh=new File(base, path);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fh)))) {
             String line = reader.readLine();
             while (line != null) {
-                String[] parts = line.split(",");
-                String name = parts[parts.length-2];
-                if (name.isEmpty()) name="Main Program";
-                SourceFile obj=StructureMap.get(name);
-                if (obj == null) throw new IOException("unknown source file \""+name+"\"");
-                
-                lineno = convertInt(parts[parts.length-1])-1;
-                lineno += obj.getFirstLine();
-                
-                SourceLine source = getSourceLine(lineno);
-                source.setCalls(convertInt(parts[0]));
-                source.setTime(convertFloat(parts[1]));
-                
+                int idx = lines.add(line);
+                if (idx % CANCEL_CHECK == 0) checkCancelled();
+                SourceLine srcLine = new SourceLine(lines, idx);
+                level = srcLine.setLevel(level);
+
                 line = reader.readLine();
             }
         }
+        return lines;
+    }
+
+    /**
+     * Extract the file name of an #INCLUDE statement.
+     *
+     * @param srcLine Source line to check
+     * @return Name of the included file or null, if this is no #INCLUDE statement
+     */
+    private static String getIncludeName(SourceLine srcLine)
+    {
+        if (srcLine.getType() != SourceLine.Type.INCLUDE) return null;
+
+        String codeLine = srcLine.getSource();
+        int a = codeLine.indexOf('"')+1;
+        int b = codeLine.indexOf('"', a);
+        return (a == 0 || b == -1) ? null : codeLine.substring(a,b);
+    }
+
+    /**
+     * @return Number of rows of the log
+     */
+    private int loadProfilerLogOnSource(File fh) throws IOException
+    {
+        int lineno, rows=0;
+        String lastName = null;
+        SourceFile obj = null;
+
+        try (ProfilerLog log = ProfilerLog.open(fh)) {
+            while (log.next()) {
+                if (++rows % CANCEL_CHECK == 0) checkCancelled();
+                String name = log.getFileName();
+                if (name != lastName) {     // same object as long as the file doesn't change
+                    lastName = name;
+                    obj = StructureMap.get(name.isEmpty() ? "Main Program" : name);
+                    if (obj == null) throw new IOException("unknown source file \""+name+"\"");
+                }
+
+                lineno = log.getLineNo()-1;
+                lineno += obj.getFirstLine();
+
+                Objects.checkIndex(lineno, SourceLines.size);
+                SourceLines.calls[lineno] = log.getCalls();
+                SourceLines.time[lineno] = log.getTime();
+            }
+        }
+        return rows;
     }
 
     private void loadProfilerLog(File fh) throws IOException
     {
-        LinkedHashMap<String,ArrayList<SourceLine>> SMap = new LinkedHashMap<>();
-        
-        try (BufferedReader reader = openProfileReader(fh)) {
-            String line = reader.readLine();
-            while (line != null) {
-                String[] parts = line.split(",");
-                String name = parts[parts.length-2];
+        LinkedHashMap<String,LineStore> SMap = new LinkedHashMap<>();
+
+        try (ProfilerLog log = ProfilerLog.open(fh)) {
+            while (log.next()) {
+                String name = log.getFileName();
                 if (name.isEmpty()) name="Main Program";
-                
-                ArrayList<SourceLine> SFile = SMap.get(name);
+
+                LineStore SFile = SMap.get(name);
                 if (SFile == null) {
-                    SFile = new ArrayList<SourceLine>();
+                    SFile = new LineStore();
                     SMap.put(name, SFile);
                 }
-               
-                String codeLine = parts[2].trim().replaceAll("^\\\"|\\\"$", "");
-                SourceLine srcLine = new SourceLine(codeLine);
-                srcLine.setCalls(convertInt(parts[0]));
-                srcLine.setTime(convertFloat(parts[1]));
+
+                SourceLine srcLine = new SourceLine(SFile, SFile.add(log.getCode()));
+                if (srcLine.getIndex() % CANCEL_CHECK == 0) checkCancelled();
+                SFile.origin[srcLine.getIndex()] = log.getLineNo();
+                srcLine.setCalls(log.getCalls());
+                srcLine.setTime(log.getTime());
                 codeLineNo = srcLine.setLineNo(codeLineNo);
-                SFile.add(srcLine);
-                
-                line = reader.readLine();
             }
         }
-        
+
         int lineno=0;
-        for (Entry<String,ArrayList<SourceLine>> item : SMap.entrySet()) {
+        for (Entry<String,LineStore> item : SMap.entrySet()) {
             String name = item.getKey();
-            ArrayList<SourceLine> srcList = item.getValue();
-            
-            SourceFile sFile = new SourceFile(name,lineno,lineno+srcList.size()-1);
+            LineStore srcList = item.getValue();
+
+            SourceFile sFile = new SourceFile(name,lineno,lineno+srcList.size-1);
             StructureMap.put(name, sFile);
-            SourceLines.addAll(srcList);
-            lineno += srcList.size();
+            SourceLines.append(srcList);
+            lineno += srcList.size;
         }
     }
 
     /**
-     * Open a buffered reader for the profiler data, verifies the file format
-     * and returns the reader, if everything is in order.
-     * 
-     * @param fh Initialized file handle
-     * @return BufferdReader object
-     * @throws IOException for "File not found" and "Bad file formet"
-     */    
-    private BufferedReader openProfileReader(File fh) throws IOException
-    {
-        InputStream iStream = new FileInputStream(fh);
-        BufferedReader reader = new BufferedReader(new InputStreamReader(iStream));
-            
-        // Read header and verify file format
-        String line = reader.readLine();
-        if (line.charAt(0)=='/')
-            line=line.substring(1);
-        String [] parts = line.split("/");
-        if (!parts[parts.length-1].endsWith(".bas")) throw new IOException("Bad file format");
-
-        return reader;
+     * Find all lines, that refer to a function. The lexer has already collected
+     * every name of a line, which might be a function reference. Each of them is
+     * looked up in a table of all function names. Names are not case sensitive.<p>
+     *
+     * Large sources are searched in slices on the compute pool. The references
+     * are added afterwards in the order of the lines, so they are the same as
+     * with a single slice.
+     */
+    void extractFunctionReferences() throws IOException
+    {
+        checkCancelled();
+        NameTable names = new NameTable(FunctionList);
+        if (names.isEmpty()) return;
+
+        List<References> slices;
+        if (SourceLines.size <= PARALLEL_LINES) {
+            slices = List.of(findReferences(names, 0, SourceLines.size));
+        } else {
+            ArrayList<Callable<References>> tasks = new ArrayList<>();
+            for (int first=0; first < SourceLines.size; first += PARALLEL_LINES) {
+                int from = first, to = Math.min(first + PARALLEL_LINES, SourceLines.size);
+                tasks.add(() -> findReferences(names, from, to));
+            }
+            slices = invokeAll(Registry.get().getComputeExecutor(), tasks);
+        }
+
+        for (References refs : slices) {
+            checkCancelled();
+            for (int n=0; n < refs.cnt; n++) {
+                SourceLine srcLine = new SourceLine(SourceLines, refs.lines[n]);
+                for (Function func : refs.functions[n])
+                    if (!srcLine.equals(func.getData()))
+                        func.addReference(srcLine);
+            }
+        }
     }
-    
-    private void extractFunctionReferences()
-    {
-        for (Function func : FunctionList) {
-            Pattern regex = Pattern.compile("(?:^|[\\+\\-,=\\s])"+Pattern.quote(func.getName())+"(?=(?:[ (:]|$))", Pattern.CASE_INSENSITIVE);
-            for (SourceLine srcLine : SourceLines) {
-                if (srcLine == func.getData()) continue;
-                
-                Matcher m = regex.matcher(srcLine.getSource());
-                if (m.find())
-                   func.addReference(srcLine);
+
+    /**
+     * Look up the names of some lines. This source is only read.
+     */
+    private References findReferences(NameTable names, int from, int to) throws InterruptedIOException
+    {
+        References refs = new References();
+        for (int idx=from; idx < to; idx++) {
+            if (idx % CANCEL_CHECK == 0) checkCancelled();
+            int cnt = SourceLines.tokenCnt[idx];
+            if (cnt == 0) continue;
+
+            String code = SourceLines.source[idx];
+            int first = SourceLines.tokenFirst[idx];
+            for (int n=first; n < first+cnt; n++) {
+                int token = SourceLines.tokens[n];
+                Function[] funcs = names.get(code, LineStore.tokenStart(token), LineStore.tokenEnd(token));
+                if (funcs != null) refs.add(idx, funcs);
             }
         }
+        return refs;
     }
-    
-    private void cleanupSourceLines()
+
+    /**
+     * Names of lines, that were found in the name table, in the order of the lines.
+     */
+    private static final class References
+    {
+        int[] lines = new int[64];
+        Function[][] functions = new Function[64][];
+        int cnt;
+
+        void add(int idx, Function[] funcs)
+        {
+            if (cnt == lines.length) {
+                lines = Arrays.copyOf(lines, cnt*2);
+                functions = Arrays.copyOf(functions, cnt*2);
+            }
+            lines[cnt] = idx;
+            functions[cnt++] = funcs;
+        }
+    }
+
+    /**
+     * Hash table of function names, that can be queried with a part of a source
+     * line without creating a String first. Names are compared case insensitive.
+     */
+    private static final class NameTable
+    {
+        private final String[] keys;
+        private final Function[][] values;
+        private final int mask;
+        private final int size;
+
+        NameTable(Collection<Function> functions)
+        {
+            LinkedHashMap<String,ArrayList<Function>> names = new LinkedHashMap<>();
+            for (Function func : functions) {
+                String name = func.getName().toLowerCase(Locale.US);
+                if (!name.isEmpty())
+                    names.computeIfAbsent(name, key -> new ArrayList<>()).add(func);
+            }
+
+            int capacity = Integer.highestOneBit(Math.max(names.size(), 1) * 2) * 2;
+            keys = new String[capacity];
+            values = new Function[capacity][];
+            mask = capacity-1;
+            size = names.size();
+
+            for (Entry<String,ArrayList<Function>> entry : names.entrySet()) {
+                String key = entry.getKey();
+                int slot = hash(key, 0, key.length()) & mask;
+                while (keys[slot] != null) slot = (slot+1) & mask;
+                keys[slot] = key;
+                values[slot] = entry.getValue().toArray(new Function[0]);
+            }
+        }
+
+        boolean isEmpty()
+        {
+            return size == 0;
+        }
+
+        Function[] get(String text, int start, int end)
+        {
+            int len = end - start;
+            int slot = hash(text, start, end) & mask;
+            for (String key=keys[slot]; key != null; key=keys[slot]) {
+                if (key.length() == len && text.regionMatches(true, start, key, 0, len))
+                    return values[slot];
+                slot = (slot+1) & mask;
+            }
+            return null;
+        }
+
+        private static int hash(String text, int start, int end)
+        {
+            int hash = 0;
+            for (int pos=start; pos < end; pos++) {
+                char c = text.charAt(pos);
+                hash = 31*hash + (c >= 'A' && c <= 'Z' ? c + ('a'-'A') : c);
+            }
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * Build the call graph of the functions from their references and the
+     * current profiler data.
+     *
+     * @return New call graph, it isn't updated if the profiler data changes
+     */
+    public CallGraph createCallGraph()
+    {
+        return new CallGraph(SourceLines, StructureMap, FunctionList);
+    }
+
+    /**
+     * @param size  Number of entries of each list
+     * @return The hottest lines, functions and files of the current profiler data
+     */
+    public Hotspots createHotspots(int size)
+    {
+        return new Hotspots(SourceLines, StructureMap.values(), size);
+    }
+
+    /**
+     * @return Largest values in the subtrees of the profiler tree, for the
+     *         current profiler data
+     */
+    public ProfileAggregates createAggregates()
+    {
+        return new ProfileAggregates(SourceLines, StructureMap.values());
+    }
+
+    /**
+     * Build the search index of the code and the comments. It is recorded as a
+     * phase of the load.
+     */
+    public SearchIndex createSearchIndex()
+    {
+        LoadMetrics.Phase phase = metrics.begin("Search index");
+        SearchIndex index = new SearchIndex(SourceLines);
+        phase.end(SourceLines.size, 0);
+        return index;
+    }
+
+    /**
+     * Remove comments, #INCLUDE statements and repeated empty lines from the source,
+     * then collect the functions and fold the execution times of each function into
+     * its header line.
+     */
+    void cleanupSourceLines() throws InterruptedIOException
+    {
+        checkCancelled();
+        removeSourceLines();
+        checkCancelled();
+        collectFunctions();
+        checkCancelled();
+
+        float[] fileTime = new float[StructureMap.size()];
+        foldFunctionTimes(SourceLines.calls, SourceLines.time, fileTime);
+
+        int file=0;
+        for (SourceFile srcFile : StructureMap.values())
+            srcFile.getSource().setTime(fileTime[file++]);
+    }
+
+    private void removeSourceLines()
     {
-        int lineno=-1;
-        boolean catchNext=false;
         boolean lastWasEmpty=true;
-        SourceLine includeFile=null;
-        SourceLine curFunction=null;
-        Iterator<SourceLine> iter=SourceLines.iterator();
+        int dest=0;
 
-        int first=0, last=0;
         for (SourceFile srcFile : StructureMap.values()) {
-            last=first+srcFile.getLastLine()-srcFile.getFirstLine();
-            includeFile = srcFile.getSource();
-            curFunction = srcFile.getSource();
-            
-            while(iter.hasNext()) {
-                SourceLine srcLine = iter.next();
-                if (srcLine.getType()==SourceLine.Type.COMMENT
-                  || srcLine.getSource().toLowerCase(Locale.US).startsWith("#include")
-                  || (lastWasEmpty && srcLine.getType()==SourceLine.Type.EMPTY)) {
-                    iter.remove();
-                    --last;
-                } else {
-                    lineno++;
-                    lastWasEmpty = (srcLine.getType() == SourceLine.Type.EMPTY
-                                 || srcLine.getType() == SourceLine.Type.COMMENT);
-
-                    if (srcLine.isFunction()) {
-                        FunctionList.add(new Function(srcLine));
-                        // The function call has always an execution counter of one. So we look
-                        // for the first command in the function to get the real execution counter
-                        curFunction=srcLine;
-                        catchNext=true;
-                                                
-                    } else {
-                        int calls = srcLine.getCalls();
-                        float time = srcLine.getTime();
-                        
-                        if (catchNext) {
-                            if (calls > 0 || srcLine.isEndFunction()) {
-                                // Here we copy the execution counter from the first
-                                // command in the function to the function itself.
-                                curFunction.setCalls(calls);
-                                catchNext=false;
-                            }
-                        }
-                        
-                        if (curFunction != null) {
-                            curFunction.addTime(time*calls);
-                        
-                            if (srcLine.isEndFunction()) {
-                                calls = curFunction.getCalls();
-                                time  = curFunction.getTime();
-                                curFunction.setTime(calls==0 ? 0 : time/calls);
-                                curFunction=includeFile;
-                                curFunction.addTime(time);
-                            }
-                        }
-                    }
-                }
-                if (lineno >= last) break;
+            int first=dest;
+
+            for (int idx=srcFile.getFirstLine(); idx <= srcFile.getLastLine(); idx++) {
+                SourceLine.Type type = SourceLines.getType(idx);
+                if (type == SourceLine.Type.COMMENT
+                  || type == SourceLine.Type.INCLUDE
+                  || (lastWasEmpty && type == SourceLine.Type.EMPTY))
+                    continue;
+
+                SourceLines.move(idx, dest++);
+                lastWasEmpty = (type == SourceLine.Type.EMPTY);
             }
 
             srcFile.setFirstLine(first);
-            srcFile.setLastLine(last);
-            first=last+1;
+            srcFile.setLastLine(dest-1);
         }
+        SourceLines.truncate(dest);
     }
-    
-    private int convertInt(String number)
-    {
-        try {
-            return parseInt(number.trim());
-        } catch (NumberFormatException ex) { /* EMPTY */ }
 
-        return 0;
+    private void collectFunctions()
+    {
+        for (int idx=0; idx < SourceLines.size; idx++)
+            if ((SourceLines.flags[idx] & MMBasic.FUNCTION) != 0)
+                FunctionList.add(new Function(new SourceLine(SourceLines, idx)));
     }
 
-    private float convertFloat(String number)
+    /**
+     * Fold the execution times of each function into its header line and the
+     * times outside of functions into their file. The arrays are aligned with
+     * the lines of this source, so this works on the source itself and on
+     * other runs of the program.
+     */
+    private void foldFunctionTimes(int[] calls, float[] time, float[] fileTime)
     {
-        try {
-            return parseFloat(number.trim());
-        } catch (NumberFormatException ex) { /* EMPTY */ }
-        
-        try {  /* try european format */
-            return parseFloat(number.replace('.', ','));
-        } catch (NumberFormatException ex) { /* EMPTY */ }
-
-        return 0;
+        boolean catchNext=false;
+        int file=0;
+
+        for (SourceFile srcFile : StructureMap.values()) {
+            int curFunction=-1;         // -1 is the file itself
+
+            for (int idx=srcFile.getFirstLine(); idx <= srcFile.getLastLine(); idx++) {
+                int flags = SourceLines.flags[idx];
+
+                if ((flags & MMBasic.FUNCTION) != 0) {
+                    // The function call has always an execution counter of one. So we look
+                    // for the first command in the function to get the real execution counter
+                    curFunction=idx;
+                    catchNext=true;
+
+                } else {
+                    boolean endFunction = (flags & MMBasic.END_FUNCTION) != 0;
+                    int lineCalls = calls[idx];
+                    float lineTime = time[idx];
+
+                    if (catchNext) {
+                        if (lineCalls > 0 || endFunction) {
+                            // Here we copy the execution counter from the first
+                            // command in the function to the function itself.
+                            if (curFunction >= 0) calls[curFunction] = lineCalls;
+                            catchNext=false;
+                        }
+                    }
+
+                    if (curFunction < 0) {
+                        fileTime[file] += lineTime*lineCalls;
+                        continue;
+                    }
+                    time[curFunction] += lineTime*lineCalls;
+
+                    if (endFunction) {
+                        lineCalls = calls[curFunction];
+                        lineTime  = time[curFunction];
+                        time[curFunction] = lineCalls==0 ? 0 : lineTime/lineCalls;
+                        curFunction=-1;
+                        fileTime[file] += lineTime;
+                    }
+                }
+            }
+            file++;
+        }
     }
 }
@@ -17,118 +17,82 @@
 package CMM2Profiler.core;
 
 import static CMM2Profiler.core.MMBasic.*;
-import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * This class stores one line of source code, stripped. The comment has been
  * seperated to another field. A type categorized the contents.
+ * <p>
+ * The data itself is kept in a {@link LineStore}. A SourceLine is only a
+ * view on one row of that store, so two SourceLine objects are equal, if
+ * they refer to the same row.
+ *
  * @author Matthias Grimm
  */
 public class SourceLine
 {
     public enum Type {EMPTY,SOURCE,COMMENT,OPTION,DEFINE,INCLUDE,HEADER};
-    
-    private Type lineType;
-    private int lineNo;
-    private int lineLevel;
-    private int lineCalls;
-    private float lineTime;
-    private String Source;
-    private String Comment;
+
+    private final LineStore store;
+    private final int index;
 
     public static SourceLine createSourceHeader(String text)
     {
-        SourceLine header = new SourceLine();
-        header.lineType = Type.HEADER;
-        header.Source = text;
-        return header;
+        LineStore store = new LineStore(1);
+        return new SourceLine(store, store.addHeader(text));
     }
     
-    private SourceLine()
+    SourceLine(LineStore store, int index)
     {
-        lineNo=0;
-        lineLevel=0;
-        lineCalls=0;
-        lineTime=0;
-        lineType=SourceLine.Type.SOURCE;
-        Source="";
-        Comment="";
+        this.store = store;
+        this.index = index;
     }
-    
-    public SourceLine(String line)
+
+    @Override
+    public boolean equals(Object obj)
     {
-        this();
-        
-        String tmp;
-        int pos;
-        
-        Source=line.trim();
-        if (Source.isEmpty()) 
-            lineType=SourceLine.Type.EMPTY;
-        else {
-            pos=line.indexOf(" '");
-            if (pos==-1) pos=line.indexOf('\'');
-            if (pos==0) {
-                Comment=Source;
-                Source="";
-                lineType=SourceLine.Type.COMMENT;
-            } else if (pos>0) {
-                Comment=line.substring(pos).trim();
-                Source=line.substring(0, pos-1).trim();
-            }
-
-            if (lineType==SourceLine.Type.SOURCE) {
-                tmp=Source.toUpperCase(Locale.US);
-                if (tmp.startsWith("OPTION"))
-                    lineType=SourceLine.Type.OPTION;
-                else if (tmp.startsWith("#DEFINE"))
-                    lineType=SourceLine.Type.DEFINE;
-                else if (tmp.startsWith("#INCLUDE"))
-                    lineType=SourceLine.Type.INCLUDE;
-            }
-        }
+        if (this == obj) return true;
+        if (!(obj instanceof SourceLine)) return false;
+
+        SourceLine other = (SourceLine) obj;
+        return store == other.store && index == other.index;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return System.identityHashCode(store) * 31 + index;
     }
 
     public int setLineNo(int no)
     {
-        lineNo=no;
+        store.lineNo[index]=no;
         return isCodeLine() ? no+1 : no;
     }
     
+    /**
+     * Set the indentation level of this line and return the level of the next
+     * line. The block structure has been classified by the lexer already.
+     *
+     * @param level  Current indentation level
+     * @return Indentation level of the next line
+     */
     public int setLevel(int level)
     {
-        String codeLine = Source.toLowerCase(Locale.US);
-        lineLevel=level;
-        
-        if (codeLine.startsWith("function")
-             || codeLine.startsWith("sub")
-             || codeLine.startsWith("select case")
-             || (codeLine.startsWith("do") && !isDoLoopOneliner(codeLine))
-             || (codeLine.startsWith("for") && !isForNextOneliner(codeLine))
-             || (codeLine.startsWith("if") && !isIfThenOneliner(codeLine))) {
+        int flags = store.flags[index];
+        store.level[index]=level;
+
+        if ((flags & BLOCK_OPEN) != 0)
             return level+1;
-            
-        } else if (codeLine.startsWith("else")
-             || codeLine.startsWith("case ")) {
-            lineLevel=level-1;
-            
-        } else if (codeLine.startsWith("end function")
-             || codeLine.startsWith("end sub")
-             || codeLine.startsWith("end select")
-             || codeLine.startsWith("endif")
-             || codeLine.startsWith("next")
-             || codeLine.startsWith("loop")) {
-            lineLevel=level-1;
-            return level-1;
-        }
-        
-        return level;
+
+        if ((flags & (BLOCK_MIDDLE | BLOCK_CLOSE)) != 0)
+            store.level[index]=level-1;
+
+        return (flags & BLOCK_CLOSE) != 0 ? level-1 : level;
     }
     
     public boolean isCodeLine()
     {
+        Type lineType = getType();
         return (lineType==SourceLine.Type.SOURCE
              || lineType==SourceLine.Type.INCLUDE
              || lineType==SourceLine.Type.DEFINE);
@@ -136,43 +100,47 @@ public class SourceLine
 
     public boolean isEmpty()
     {
-        return lineType==SourceLine.Type.EMPTY;
+        return getType()==SourceLine.Type.EMPTY;
     }
 
     public boolean isHeader()
     {
-        return lineType==SourceLine.Type.HEADER;
+        return getType()==SourceLine.Type.HEADER;
     }
 
     public boolean isFunction()
     {
-        String tmp = Source.toLowerCase(Locale.US);
-        return tmp.startsWith("function") || tmp.startsWith("sub");
+        return (store.flags[index] & FUNCTION) != 0;
     }
     
     public boolean isEndFunction()
     {
-        String tmp = Source.toLowerCase(Locale.US);
-        return tmp.startsWith("end function") || tmp.startsWith("end sub");
+        return (store.flags[index] & END_FUNCTION) != 0;
+    }
+
+    boolean isFunctionKeyword()
+    {
+        return (store.flags[index] & FUNCTION_KW) != 0;
     }
 
     public String getFunctionName()
     {
-        Pattern regex = Pattern.compile("(function|sub) ([_a-zA-Z0-9$%&\\.]*)(?=[ \\(]?)(?!=)", Pattern.CASE_INSENSITIVE);
-        Matcher m = regex.matcher(Source);
-        
-        return m.find() ? m.group(2) : "<INVALID>";
+        String name = store.name[index];
+        return name != null ? name : "<INVALID>";
     }
     
-    public SourceLine.Type getType() { return lineType; }
-    public int getLineNo() { return lineNo; }
-    public int getLevel() { return lineLevel; }
-    public int getCalls() { return lineCalls; }
-    public void setCalls(int calls) { lineCalls=calls; }
-    public float getTime() { return lineTime; }
-    public void setTime(float time) { lineTime=time; }
-    public void addTime(float time) { lineTime+=time; }
-    public String getSource() { return Source; }
-    public String getComment() { return Comment; }
+    int getIndex() { return index; }
+    boolean isPartOf(LineStore lines) { return store == lines; }
+    public SourceLine.Type getType() { return store.getType(index); }
+    public int getLineNo() { return store.lineNo[index]; }
+    public int getOrigin() { return store.origin[index]; }  // line number in its file or in the profiler log
+    public int getLevel() { return store.level[index]; }
+    public int getCalls() { return store.calls[index]; }
+    public void setCalls(int calls) { store.calls[index]=calls; }
+    public float getTime() { return store.time[index]; }
+    public void setTime(float time) { store.time[index]=time; }
+    public void addTime(float time) { store.time[index]+=time; }
+    public String getSource() { return store.source[index]; }
+    public String getComment() { return store.comment[index]; }
     
 }
@@ -0,0 +1,527 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import CMM2Profiler.Defaults;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary snapshot of a fully analysed program. After a program has been loaded,
+ * the line store, the structure map, the functions and their references are
+ * written into the cache directory. The next load of the same program reads the
+ * snapshot and copies the columns back in bulk, as long as none of the input
+ * files has changed. An input file is unchanged, if its size, its modification
+ * time and the CRC32C of its contents are the same.
+ * <p>
+ * No file is mapped into memory. A mapped file stays locked until the mapping is
+ * garbage collected, so on Windows neither the snapshot nor an input file could
+ * be replaced meanwhile.
+ * <p>
+ * The cache is limited to {@link Defaults#CACHE_SIZE}. A snapshot is touched,
+ * when it has been used, and after each write the snapshots used least recently
+ * are deleted, until the cache fits.
+ * <p>
+ * Layout of a snapshot, all numbers are big endian:
+ * <pre>
+ *   header     magic, version, absolute path of the program
+ *   inputs     count, {name, size, mtime, crc}     size is -1 for missing files
+ *   strings    count, {length}, UTF-8 bytes
+ *   lines      mode, size, source, comment, name   (index into strings, -1 = null)
+ *              type, flags, lineNo, origin, level, calls, time,
+ *              tokenFirst, tokenCnt, token count, tokens
+ *   files      count, {key, path, first, last, calls, time}
+ *   functions  count, {line, reference count, {line}}
+ * </pre>
+ * Strings are written with an int length followed by the UTF-8 bytes.
+ *
+ * @author Matthias Grimm
+ */
+final class SourceSnapshot
+{
+    private static final int MAGIC = 0x434D3253;       // "CM2S"
+    private static final int VERSION = 2;              // increment with every change of the layout or the lexer
+
+    private final String base;
+    private final String path;
+    private final File file;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private ByteBuffer out;
+    private ByteBuffer chunk;       // reused by checksum()
+
+    /**
+     * @param base  Directory of the program
+     * @param path  Name of the program without extension
+     */
+    SourceSnapshot(String base, String path)
+    {
+        this.base = base;
+        this.path = path;
+        file = getSnapshotFile(base, path);
+    }
+
+    /**
+     * @return false, if the cache is disabled
+     */
+    boolean isEnabled()
+    {
+        return file != null;
+    }
+
+    /**
+     * @return Size of the snapshot file in bytes, 0 if there is none
+     */
+    long length()
+    {
+        return file == null ? 0 : file.length();
+    }
+
+    private static File getSnapshotFile(String base, String path)
+    {
+        if (Defaults.CACHE_DIR.isEmpty()) return null;
+
+        String key = new File(base, path).getAbsolutePath();
+        long hash = 0xcbf29ce484222325L;                // FNV-1a
+        for (int n=0; n < key.length(); n++) {
+            hash ^= key.charAt(n);
+            hash *= 0x100000001b3L;
+        }
+        return new File(Defaults.CACHE_DIR, String.format("%s-%016x.snap", new File(path).getName(), hash));
+    }
+
+    /**
+     * Restore an analysed program from its snapshot. Nothing will be changed, if
+     * there is no valid snapshot or if any input file has changed.
+     *
+     * @param lines      Line store to fill
+     * @param structure  Structure map to fill
+     * @param functions  Function list to fill
+     * @return Mode of the restored program or null, if no snapshot could be used
+     */
+    Source.Mode read(LineStore lines, Map<String,SourceFile> structure, List<Function> functions)
+    {
+        if (file == null || !file.isFile()) return null;
+
+        try {
+            ByteBuffer in = readFile(file);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+            if (!getString(in).equals(new File(base, path).getAbsolutePath())) return null;
+
+            int inputCnt = in.getInt();
+            for (int n=0; n < inputCnt; n++) {
+                String name = getString(in);
+                long size = in.getLong();
+                long mtime = in.getLong();
+                int crc = in.getInt();
+                if (!isUnchanged(new File(base, name), size, mtime, crc)) return null;
+            }
+
+            String[] strings = getStrings(in);
+            Source.Mode mode = Source.Mode.values()[in.getInt()];
+            int size = in.getInt();
+            String[] source = resolve(strings, getInts(in, size));
+            String[] comment = resolve(strings, getInts(in, size));
+            String[] name = resolve(strings, getInts(in, size));
+            byte[] type = getBytes(in, size);
+            byte[] flags = getBytes(in, size);
+            int[] lineNo = getInts(in, size);
+            int[] origin = getInts(in, size);
+            int[] level = getInts(in, size);
+            int[] calls = getInts(in, size);
+            float[] time = getFloats(in, size);
+            int[] tokenFirst = getInts(in, size);
+            int[] tokenCnt = getInts(in, size);
+            int tokenSize = in.getInt();
+            int[] tokens = getInts(in, tokenSize);
+
+            LineStore store = new LineStore(0);
+            store.size = size;
+            store.source = source;
+            store.comment = comment;
+            store.name = name;
+            store.type = type;
+            store.flags = flags;
+            store.lineNo = lineNo;
+            store.origin = origin;
+            store.level = level;
+            store.calls = calls;
+            store.time = time;
+            store.tokenFirst = tokenFirst;
+            store.tokenCnt = tokenCnt;
+            store.tokenSize = tokenSize;
+            store.tokens = tokens;
+
+            int fileCnt = in.getInt();
+            String[] keys = new String[fileCnt];
+            SourceFile[] files = new SourceFile[fileCnt];
+            for (int n=0; n < fileCnt; n++) {
+                keys[n] = getString(in);
+                files[n] = new SourceFile(getString(in), in.getInt(), in.getInt());
+                files[n].getSource().setCalls(in.getInt());
+                files[n].getSource().setTime(in.getFloat());
+            }
+
+            int funcCnt = in.getInt();
+            int[][] funcLines = new int[funcCnt][];
+            for (int n=0; n < funcCnt; n++) {
+                int line = in.getInt();
+                int refCnt = in.getInt();
+                funcLines[n] = getInts(in, refCnt+1, line);
+                for (int ref : funcLines[n]) Objects.checkIndex(ref, size);
+                if ((flags[line] & MMBasic.FUNCTION) == 0) return null;
+            }
+            file.setLastModified(System.currentTimeMillis());       // recently used
+
+            // The snapshot is complete, now fill the source
+            lines.assign(store);
+            for (int n=0; n < fileCnt; n++)
+                structure.put(keys[n], files[n]);
+
+            for (int[] funcLine : funcLines) {
+                Function func = new Function(new SourceLine(lines, funcLine[0]));
+                for (int n=1; n < funcLine.length; n++)
+                    func.addReference(new SourceLine(lines, funcLine[n]));
+                functions.add(func);
+            }
+            return mode;
+
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException
+                | IllegalArgumentException | NegativeArraySizeException ex) {
+            // A damaged snapshot is ignored, it will be overwritten by the next write()
+            return null;
+        }
+    }
+
+    /**
+     * Write the snapshot of an analysed program. Errors are ignored, the snapshot
+     * is only an optimization.
+     *
+     * @param mode       Mode of the loaded program
+     * @param lines      Line store of the program
+     * @param structure  Structure map of the program
+     * @param functions  Functions of the program
+     */
+    void write(Source.Mode mode, LineStore lines, Map<String,SourceFile> structure, Collection<Function> functions)
+    {
+        if (file == null) return;
+
+        LinkedHashSet<String> inputs = new LinkedHashSet<>();
+        inputs.add(path+".bas");
+        inputs.add(path+".csv");
+        if (mode == Source.Mode.SOURCEONLY || mode == Source.Mode.SOURCEANDPROFILER)
+            for (SourceFile srcFile : structure.values())
+                inputs.add(srcFile.getPath());
+
+        File tmp = null;
+        try {
+            out = ByteBuffer.allocate(lines.size * 64 + 4096);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            putString(new File(base, path).getAbsolutePath());
+
+            out.putInt(inputs.size());
+            for (String name : inputs) {
+                File fh = new File(base, name);
+                boolean exists = fh.isFile();
+                putString(name);
+                out.putLong(exists ? fh.length() : -1);
+                out.putLong(exists ? fh.lastModified() : 0);
+                out.putInt(exists ? checksum(fh) : 0);
+            }
+
+            HashMap<String,Integer> strings = new HashMap<>();
+            int[] source = index(strings, lines.source, lines.size);
+            int[] comment = index(strings, lines.comment, lines.size);
+            int[] name = index(strings, lines.name, lines.size);
+            putStrings(strings);
+
+            out.putInt(mode.ordinal());
+            out.putInt(lines.size);
+            putInts(source, lines.size);
+            putInts(comment, lines.size);
+            putInts(name, lines.size);
+            putBytes(lines.type, lines.size);
+            putBytes(lines.flags, lines.size);
+            putInts(lines.lineNo, lines.size);
+            putInts(lines.origin, lines.size);
+            putInts(lines.level, lines.size);
+            putInts(lines.calls, lines.size);
+            putFloats(lines.time, lines.size);
+            putInts(lines.tokenFirst, lines.size);
+            putInts(lines.tokenCnt, lines.size);
+            out.putInt(lines.tokenSize);
+            putInts(lines.tokens, lines.tokenSize);
+
+            ensure(4);
+            out.putInt(structure.size());
+            for (Map.Entry<String,SourceFile> entry : structure.entrySet()) {
+                SourceFile srcFile = entry.getValue();
+                putString(entry.getKey());
+                putString(srcFile.getPath());
+                ensure(16);
+                out.putInt(srcFile.getFirstLine());
+                out.putInt(srcFile.getLastLine());
+                out.putInt(srcFile.getSource().getCalls());
+                out.putFloat(srcFile.getSource().getTime());
+            }
+
+            ensure(4);
+            out.putInt(functions.size());
+            for (Function func : functions) {
+                ensure(8);
+                out.putInt(func.getData().getIndex());
+                out.putInt(func.getRefs());
+                for (SourceLine ref : func.getReferenceList()) {
+                    ensure(4);
+                    out.putInt(ref.getIndex());
+                }
+            }
+
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) return;
+
+            tmp = File.createTempFile("snapshot", ".tmp", dir);
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+                out.flip();
+                while (out.hasRemaining()) channel.write(out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            evict(dir, Defaults.CACHE_SIZE * 1024 * 1024);
+
+        } catch (IOException ex) {
+            // no snapshot this time
+        } finally {
+            out = null;
+            if (tmp != null) tmp.delete();
+        }
+    }
+
+    /**
+     * Delete the snapshots used least recently, until all snapshots of the cache
+     * fit into a size. The snapshot, that has just been written, is always kept.
+     */
+    void evict(File dir, long maxSize)
+    {
+        File[] snapshots = dir.listFiles((d, name) -> name.endsWith(".snap"));
+        if (snapshots == null) return;
+
+        ArrayList<File> list = new ArrayList<>(List.of(snapshots));
+        list.sort(Comparator.comparingLong(File::lastModified).reversed());
+        long total=0;
+        for (File snapshot : list) {
+            total += snapshot.length();
+            if (total > maxSize && !snapshot.equals(file)) snapshot.delete();
+        }
+    }
+
+    private boolean isUnchanged(File fh, long size, long mtime, int crc) throws IOException
+    {
+        if (size < 0) return !fh.isFile();
+
+        return fh.isFile() && fh.length() == size && fh.lastModified() == mtime && checksum(fh) == crc;
+    }
+
+    private int checksum(File fh) throws IOException
+    {
+        if (chunk == null) chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+
+        try (FileChannel channel = FileChannel.open(fh.toPath(), StandardOpenOption.READ)) {
+            CRC32C crc = new CRC32C();
+            chunk.clear();
+            while (channel.read(chunk) >= 0) {
+                chunk.flip();
+                crc.update(chunk);
+                chunk.clear();
+            }
+            return (int) crc.getValue();
+        }
+    }
+
+    private static ByteBuffer readFile(File fh) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(fh.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Snapshot too large");
+
+            ByteBuffer in = ByteBuffer.allocate((int) channel.size());
+            while (in.hasRemaining() && channel.read(in) >= 0) {}
+            return in.flip();
+        }
+    }
+
+    // -----------------------------------------------------------------------------------
+    //                                  Reading
+    // -----------------------------------------------------------------------------------
+
+    private static String getString(ByteBuffer in)
+    {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String[] getStrings(ByteBuffer in)
+    {
+        int cnt = in.getInt();
+        int[] length = getInts(in, cnt);
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+
+        String[] strings = new String[cnt];
+        int pos = 0;
+        for (int n=0; n < cnt; n++) {
+            strings[n] = new String(bytes, pos, length[n], StandardCharsets.UTF_8);
+            pos += length[n];
+        }
+        return strings;
+    }
+
+    private static String[] resolve(String[] strings, int[] index)
+    {
+        String[] result = new String[index.length];
+        for (int n=0; n < index.length; n++)
+            result[n] = index[n] < 0 ? null : strings[index[n]];
+        return result;
+    }
+
+    private static byte[] getBytes(ByteBuffer in, int cnt)
+    {
+        byte[] result = new byte[cnt];
+        in.get(result);
+        return result;
+    }
+
+    private static int[] getInts(ByteBuffer in, int cnt)
+    {
+        int[] result = new int[cnt];
+        in.asIntBuffer().get(result);
+        in.position(in.position() + cnt*4);
+        return result;
+    }
+
+    /**
+     * Read an int array, the first element is already known.
+     */
+    private static int[] getInts(ByteBuffer in, int cnt, int first)
+    {
+        int[] result = new int[cnt];
+        result[0] = first;
+        in.asIntBuffer().get(result, 1, cnt-1);
+        in.position(in.position() + (cnt-1)*4);
+        return result;
+    }
+
+    private static float[] getFloats(ByteBuffer in, int cnt)
+    {
+        float[] result = new float[cnt];
+        in.asFloatBuffer().get(result);
+        in.position(in.position() + cnt*4);
+        return result;
+    }
+
+    // -----------------------------------------------------------------------------------
+    //                                  Writing
+    // -----------------------------------------------------------------------------------
+
+    private void ensure(int cnt)
+    {
+        if (out.remaining() >= cnt) return;
+
+        ByteBuffer tmp = ByteBuffer.allocate(Math.max(out.capacity()*2, out.position() + cnt));
+        out.flip();
+        tmp.put(out);
+        out = tmp;
+    }
+
+    private void putString(String text)
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ensure(4 + bytes.length);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    private static int[] index(HashMap<String,Integer> strings, String[] texts, int cnt)
+    {
+        int[] result = new int[cnt];
+        for (int n=0; n < cnt; n++) {
+            String text = texts[n];
+            if (text == null)
+                result[n] = -1;
+            else {
+                Integer idx = strings.putIfAbsent(text, strings.size());
+                result[n] = idx == null ? strings.size()-1 : idx;
+            }
+        }
+        return result;
+    }
+
+    private void putStrings(HashMap<String,Integer> strings)
+    {
+        byte[][] bytes = new byte[strings.size()][];
+        int total = 0;
+        for (Map.Entry<String,Integer> entry : strings.entrySet()) {
+            byte[] text = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            bytes[entry.getValue()] = text;
+            total += text.length;
+        }
+
+        ensure(8 + bytes.length*4 + total);
+        out.putInt(bytes.length);
+        for (byte[] text : bytes) out.putInt(text.length);
+        out.putInt(total);
+        for (byte[] text : bytes) out.put(text);
+    }
+
+    private void putBytes(byte[] values, int cnt)
+    {
+        ensure(cnt);
+        out.put(values, 0, cnt);
+    }
+
+    private void putInts(int[] values, int cnt)
+    {
+        ensure(cnt*4);
+        out.asIntBuffer().put(values, 0, cnt);
+        out.position(out.position() + cnt*4);
+    }
+
+    private void putFloats(float[] values, int cnt)
+    {
+        ensure(cnt*4);
+        out.asFloatBuffer().put(values, 0, cnt);
+        out.position(out.position() + cnt*4);
+    }
+}
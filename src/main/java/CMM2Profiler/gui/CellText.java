@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.gui;
+
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+/**
+ * Display strings of the table cells. The cells are updated on every scroll step,
+ * so the strings are created only once per line and time scaler and are kept
+ * until the scaler changes or another program is loaded. Lines are identified by
+ * their index in the source context.<p>
+ *
+ * The caches are not synchronized. They must only be used from the JavaFX
+ * application thread.
+ *
+ * @author Matthias Grimm
+ */
+final class CellText
+{
+    private static final int NUMBER_CACHE = 65536;
+    private static final String[] numbers = new String[NUMBER_CACHE];
+    private static String[] indents = new String[] {""};
+
+    private final DecimalFormat[] formats;
+    private final float[] divisors;
+    private int scaler;
+    private String[] values = new String[0];
+    private String[] codes = new String[0];
+
+    /**
+     * The time scaler selects the format and the divisor of the values. A scaler
+     * without a format shows no value at all.
+     *
+     * @param patterns  DecimalFormat pattern of each scaler
+     * @param divisors  Divisor of each scaler, e.g. for times given in µs
+     */
+    CellText(String[] patterns, float[] divisors)
+    {
+        this.formats = new DecimalFormat[patterns.length];
+        this.divisors = divisors;
+        for (int n = 0; n < patterns.length; n++) {
+            if (patterns[n] == null) continue;
+            formats[n] = new DecimalFormat(patterns[n]);
+            formats[n].setRoundingMode(RoundingMode.HALF_UP);   // same as String.format()
+        }
+    }
+
+    /**
+     * Drop all strings and prepare the caches for a new source.
+     *
+     * @param lines  Number of lines in the source context
+     */
+    void reset(int lines)
+    {
+        values = new String[lines];
+        codes = new String[lines];
+    }
+
+    int  getScaler() { return scaler; }
+    void setScaler(int scaler)
+    {
+        if (this.scaler == scaler) return;
+        this.scaler = scaler;
+        Arrays.fill(values, null);
+    }
+
+    /**
+     * @param idx    Index of the line or -1 if the value shouldn't be cached
+     * @param value  Value of the line, e.g. a time in µs
+     * @return Value in the unit of the current scaler
+     */
+    String value(int idx, float value)
+    {
+        if (idx < 0 || idx >= values.length) return format(value);
+
+        String text = values[idx];
+        if (text == null) values[idx] = text = format(value);
+        return text;
+    }
+
+    private String format(float value)
+    {
+        if (scaler < 0 || scaler >= formats.length || formats[scaler] == null) return null;
+        return formats[scaler].format(value/divisors[scaler]);
+    }
+
+    /**
+     * @param idx    Index of the line or -1 if the value shouldn't be cached
+     * @param level  Nesting level of the line
+     * @param code   Source code of the line
+     * @return Source code indented by four blanks per level
+     */
+    String code(int idx, int level, String code)
+    {
+        if (level <= 0) return code;
+        if (idx < 0 || idx >= codes.length) return indent(level).concat(code);
+
+        String text = codes[idx];
+        if (text == null) codes[idx] = text = indent(level).concat(code);
+        return text;
+    }
+
+    /**
+     * @return Decimal string of value, shared for small values
+     */
+    static String number(int value)
+    {
+        if (value < 0 || value >= NUMBER_CACHE) return Integer.toString(value);
+
+        String text = numbers[value];
+        if (text == null) numbers[value] = text = Integer.toString(value);
+        return text;
+    }
+
+    /**
+     * @return String of four blanks per level
+     */
+    static String indent(int level)
+    {
+        if (level >= indents.length) {
+            String[] table = Arrays.copyOf(indents, Math.max(level+1, indents.length*2));
+            for (int n = indents.length; n < table.length; n++)
+                table[n] = " ".repeat(n*4);
+            indents = table;
+        }
+        return indents[level];
+    }
+}
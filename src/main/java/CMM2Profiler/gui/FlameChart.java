@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.gui;
+
+import CMM2Profiler.core.Source;
+import CMM2Profiler.core.SourceLine;
+import java.util.Locale;
+import java.util.function.Consumer;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+/**
+ * Icicle chart of the program time, drawn on a single canvas. The program is on
+ * top, followed by its files, their functions and the lines.<p>
+ *
+ * Only the visible frames are drawn. Frames narrower than a pixel are drawn as
+ * one sliver per pixel and the frames behind it are skipped by a binary search,
+ * so a redraw costs about the same for any program size. The chart is only
+ * redrawn, if the view or the frame under the mouse changes.<p>
+ *
+ * Mouse wheel zooms, dragging pans, a click shows the frame in the profiler tree,
+ * a double click zooms into the frame and the right button shows everything.
+ *
+ * @author Matthias Grimm
+ */
+final class FlameChart
+extends Region
+{
+    private static final double ROW_HEIGHT = 22;
+    private static final double MIN_LABEL = 24;         // px
+    private static final double ZOOM = 1.25;
+    private static final Color SLIVER = Color.gray(0.6);
+    private static final Color[] COLORS = new Color[16];
+
+    static {
+        for (int n=0; n < COLORS.length; n++)
+            COLORS[n] = Color.hsb(n * 50.0 / COLORS.length, 0.55 + 0.02 * (n % 5), 0.95);
+    }
+
+    private final Canvas canvas = new Canvas();
+    private final Tooltip tooltip = new Tooltip();
+    private final Font font = Font.font(11);
+    private final double charWidth;
+    private Consumer<SourceLine> onSelect = line -> {};
+
+    private FlameFrames frames;
+    private double viewStart, viewWidth;    // visible part of the time axis in µs
+    private int hoverLevel=-1, hoverFrame=-1;
+    private double dragX;
+    private boolean dragged;
+
+    FlameChart()
+    {
+        getChildren().add(canvas);
+        setMinHeight(FlameFrames.LEVELS * ROW_HEIGHT);
+        setPrefHeight(FlameFrames.LEVELS * ROW_HEIGHT);
+
+        Text text = new Text("abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        text.setFont(font);
+        charWidth = text.getLayoutBounds().getWidth() / text.getText().length();
+
+        canvas.addEventHandler(MouseEvent.MOUSE_MOVED, this::mouseMoved);
+        canvas.addEventHandler(MouseEvent.MOUSE_EXITED, ev -> setHover(-1, -1));
+        canvas.addEventHandler(MouseEvent.MOUSE_PRESSED, ev -> { dragX = ev.getX(); dragged = false; });
+        canvas.addEventHandler(MouseEvent.MOUSE_DRAGGED, this::mouseDragged);
+        canvas.addEventHandler(MouseEvent.MOUSE_CLICKED, this::mouseClicked);
+        canvas.addEventHandler(ScrollEvent.SCROLL, this::scrolled);
+    }
+
+    /**
+     * @param listener  Called with the line of a clicked frame
+     */
+    void setOnSelect(Consumer<SourceLine> listener)
+    {
+        onSelect = listener;
+    }
+
+    /**
+     * Show the profiler data of a source. The chart isn't updated, if the data
+     * of the source changes.
+     */
+    void setSource(Source src)
+    {
+        frames = new FlameFrames(src);
+        viewStart = 0;
+        viewWidth = frames.total();
+        hoverLevel = hoverFrame = -1;
+        tooltip.hide();
+        draw();
+    }
+
+    @Override
+    protected void layoutChildren()
+    {
+        double width = snapSizeX(getWidth());
+        double height = snapSizeY(getHeight());
+        if (canvas.getWidth() != width || canvas.getHeight() != height) {
+            canvas.setWidth(width);
+            canvas.setHeight(height);
+            draw();
+        }
+    }
+
+    private void draw()
+    {
+        long begin = System.nanoTime();
+        paint();
+        FrameStats.chartDrawn(System.nanoTime() - begin);
+    }
+
+    private void paint()
+    {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double w = canvas.getWidth();
+        gc.clearRect(0, 0, w, canvas.getHeight());
+        gc.setFont(font);
+        gc.setTextBaseline(VPos.CENTER);
+
+        if (frames == null || frames.total() <= 0) {
+            gc.setFill(Color.BLACK);
+            gc.fillText("No profiler data", 5, ROW_HEIGHT/2);
+            return;
+        }
+
+        double scale = w / viewWidth;
+        double viewEnd = viewStart + viewWidth;
+        for (int level=0; level < FlameFrames.LEVELS; level++) {
+            double y = level * ROW_HEIGHT;
+            int cnt = frames.count(level);
+
+            for (int n=frames.first(level, viewStart); n < cnt && frames.start(level, n) < viewEnd; ) {
+                double x0 = (frames.start(level, n) - viewStart) * scale;
+                double x1 = (frames.end(level, n) - viewStart) * scale;
+
+                if (x1 - x0 < 1) {
+                    // all frames up to the next pixel share one sliver
+                    double px = Math.floor(x0);
+                    gc.setFill(SLIVER);
+                    gc.fillRect(px, y, 1, ROW_HEIGHT-1);
+                    n = Math.max(n+1, frames.first(level, viewStart + (px+1) / scale));
+                    continue;
+                }
+
+                x0 = Math.max(x0, 0);
+                x1 = Math.min(x1, w);
+                gc.setFill(COLORS[Math.floorMod(frames.hashOf(level, n), COLORS.length)]);
+                gc.fillRect(x0, y, x1-x0-1, ROW_HEIGHT-1);
+                if (level == hoverLevel && n == hoverFrame) {
+                    gc.setStroke(Color.BLACK);
+                    gc.strokeRect(x0+0.5, y+0.5, x1-x0-2, ROW_HEIGHT-2);
+                }
+                if (x1-x0 > MIN_LABEL) {
+                    gc.setFill(Color.BLACK);
+                    gc.fillText(shorten(frames.labelOf(level, n), (int) ((x1-x0-6) / charWidth)),
+                                x0+3, y + ROW_HEIGHT/2, x1-x0-6);
+                }
+                n++;
+            }
+        }
+    }
+
+    private static String shorten(String text, int chars)
+    {
+        if (text.length() <= chars) return text;
+        return chars <= 1 ? "" : text.substring(0, chars-1).concat("…");
+    }
+
+    private int levelAt(double y)
+    {
+        int level = (int) (y / ROW_HEIGHT);
+        return level < FlameFrames.LEVELS ? level : -1;
+    }
+
+    private double timeAt(double x)
+    {
+        return viewStart + x * viewWidth / canvas.getWidth();
+    }
+
+    private void setHover(int level, int frame)
+    {
+        if (level == hoverLevel && frame == hoverFrame) return;
+        hoverLevel = level;
+        hoverFrame = frame;
+        if (frame < 0) tooltip.hide();
+        draw();
+    }
+
+    private void mouseMoved(MouseEvent ev)
+    {
+        if (frames == null) return;
+
+        int level = levelAt(ev.getY());
+        int frame = frames.frameAt(level, timeAt(ev.getX()));
+        if (frame < 0) {
+            setHover(-1, -1);
+            return;
+        }
+
+        if (level != hoverLevel || frame != hoverFrame) {
+            double time = frames.width(level, frame);
+            int calls = frames.callsOf(level, frame);
+            String text = String.format(Locale.US, "%s\n%.3f ms, %.1f %%", frames.labelOf(level, frame),
+                                        time / 1000, time * 100 / frames.total());
+            if (calls >= 0) text += ", "+calls+" calls";
+            tooltip.setText(text);
+            setHover(level, frame);
+        }
+        tooltip.show(canvas, ev.getScreenX() + 12, ev.getScreenY() + 12);
+    }
+
+    private void mouseDragged(MouseEvent ev)
+    {
+        if (frames == null) return;
+
+        double dx = ev.getX() - dragX;
+        if (!dragged && Math.abs(dx) < 3) return;
+        dragged = true;
+        dragX = ev.getX();
+        tooltip.hide();
+        setView(viewStart - dx * viewWidth / canvas.getWidth(), viewWidth);
+    }
+
+    private void mouseClicked(MouseEvent ev)
+    {
+        if (frames == null || dragged) return;
+
+        if (ev.getButton() == MouseButton.SECONDARY) {
+            setView(0, frames.total());
+            return;
+        }
+
+        int level = levelAt(ev.getY());
+        int frame = frames.frameAt(level, timeAt(ev.getX()));
+        if (frame < 0 || ev.getButton() != MouseButton.PRIMARY) return;
+
+        if (ev.getClickCount() == 2) {
+            setView(frames.start(level, frame), frames.width(level, frame));
+        } else {
+            SourceLine srcLine = frames.lineOf(level, frame);
+            if (srcLine != null) onSelect.accept(srcLine);
+        }
+    }
+
+    private void scrolled(ScrollEvent ev)
+    {
+        if (frames == null || ev.getDeltaY() == 0) return;
+
+        double time = timeAt(ev.getX());
+        double width = ev.getDeltaY() > 0 ? viewWidth / ZOOM : viewWidth * ZOOM;
+        width = Math.max(width, frames.total() * 1e-7);
+        setView(time - ev.getX() / canvas.getWidth() * width, width);
+        ev.consume();
+    }
+
+    private void setView(double begin, double width)
+    {
+        double total = frames.total();
+        viewWidth = Math.min(Math.max(width, total * 1e-7), total);
+        viewStart = Math.min(Math.max(begin, 0), total - viewWidth);
+        draw();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.gui;
+
+import CMM2Profiler.core.Source;
+import CMM2Profiler.core.SourceLine;
+import java.io.IOException;
+import java.util.function.Consumer;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.layout.StackPane;
+
+/**
+ * Window with the flame chart of the program time.
+ *
+ * @author Matthias Grimm
+ */
+public class FlameChartController
+extends WindowFX
+{
+    @FXML  private StackPane chartPane;
+    @FXML  private Button btnClose;
+
+    private final FlameChart chart = new FlameChart();
+
+    /**
+     * @param onSelect  Called with the line of a clicked frame
+     * @throws IOException
+     */
+    @SuppressWarnings("LeakingThisInConstructor")
+    public FlameChartController(Consumer<SourceLine> onSelect) throws IOException
+    {
+        super("FlameChart.fxml", "cmm2profiler.css");
+        stage.setTitle("Flame Chart");
+        stage.setResizable(true);
+
+        chart.setOnSelect(onSelect);
+        chartPane.getChildren().add(chart);
+    }
+
+    /**
+     * Show the profiler data of a source. Must be called again, if the data
+     * has been changed.
+     */
+    public void setSource(Source src)
+    {
+        chart.setSource(src);
+    }
+
+    public boolean isShowing()
+    {
+        return stage.isShowing();
+    }
+
+    @FXML
+    protected void handleAction(ActionEvent ev)
+    {
+        if (ev.getSource() == btnClose) close();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.gui;
+
+import CMM2Profiler.core.Source;
+import CMM2Profiler.core.SourceFile;
+import CMM2Profiler.core.SourceLine;
+import java.util.Arrays;
+
+/**
+ * Frames of the flame chart. The program is split into its files, the files into
+ * their functions and the code outside of functions, and those into their lines.
+ * The width of a frame is the total time spent in it, lines and functions without
+ * any time are left out.<p>
+ *
+ * The frames of each level are kept in flat arrays sorted by their start, so the
+ * visible frames and the frame under the mouse are found by a binary search.
+ *
+ * @author Matthias Grimm
+ */
+final class FlameFrames
+{
+    static final int PROGRAM  = 0;
+    static final int FILE     = 1;
+    static final int FUNCTION = 2;
+    static final int LINE     = 3;
+    static final int LEVELS   = 4;
+
+    private final Source source;
+    private final SourceFile[] files;
+    private final double[][] start = new double[LEVELS][16];
+    private final double[][] width = new double[LEVELS][16];
+    // file number, line index of the function header or -(file+1) for the code
+    // outside of functions, line index
+    private final int[][] ref = new int[LEVELS][16];
+    private final int[] count = new int[LEVELS];
+    private double total;
+
+    FlameFrames(Source src)
+    {
+        source = src;
+        files = src.getStructureMap().toArray(new SourceFile[0]);
+
+        for (int file=0; file < files.length; file++) {
+            SourceFile srcFile = files[file];
+            double fileStart = total;
+
+            // code outside of functions first, then the functions in their order
+            double frameStart = total;
+            boolean inFunction = false;
+            for (int idx=srcFile.getFirstLine(); idx <= srcFile.getLastLine(); idx++) {
+                SourceLine srcLine = src.getSourceLine(idx);
+                if (srcLine.isFunction()) inFunction = true;
+                else if (!inFunction) addLine(srcLine, idx);
+                else if (srcLine.isEndFunction()) inFunction = false;
+            }
+            if (total > frameStart) add(FUNCTION, frameStart, -(file+1));
+
+            for (int idx=srcFile.getFirstLine(); idx <= srcFile.getLastLine(); idx++) {
+                if (!src.getSourceLine(idx).isFunction()) continue;
+
+                int header = idx;
+                frameStart = total;
+                for (idx++; idx <= srcFile.getLastLine(); idx++) {
+                    SourceLine srcLine = src.getSourceLine(idx);
+                    addLine(srcLine, idx);
+                    if (srcLine.isEndFunction()) break;
+                }
+                if (total > frameStart) add(FUNCTION, frameStart, header);
+            }
+            if (total > fileStart) add(FILE, fileStart, file);
+        }
+        if (total > 0) add(PROGRAM, 0, -1);
+
+        // functions and files have been added after their lines
+        sort(FUNCTION);
+        sort(FILE);
+    }
+
+    private void addLine(SourceLine srcLine, int idx)
+    {
+        double time = (double) srcLine.getTime() * srcLine.getCalls();
+        if (time <= 0) return;
+
+        int n = add(LINE, total, idx);
+        width[LINE][n] = time;
+        total += time;
+    }
+
+    private int add(int level, double begin, int key)
+    {
+        int n = count[level]++;
+        if (n == start[level].length) {
+            start[level] = Arrays.copyOf(start[level], n*2);
+            width[level] = Arrays.copyOf(width[level], n*2);
+            ref[level] = Arrays.copyOf(ref[level], n*2);
+        }
+        start[level][n] = begin;
+        width[level][n] = total - begin;
+        ref[level][n] = key;
+        return n;
+    }
+
+    /**
+     * Sort the frames of a level by their start. Frames of a level never overlap.
+     * The start as a float and the index are packed into one long, the bits of a
+     * positive float sort like its value. Starts, that are the same as a float,
+     * keep the order they have been added in.
+     */
+    private void sort(int level)
+    {
+        int cnt = count[level];
+        long[] order = new long[cnt];
+        for (int n=0; n < cnt; n++)
+            order[n] = (long) Float.floatToIntBits((float) start[level][n]) << 32 | n;
+        Arrays.sort(order);
+
+        double[] s = new double[cnt], w = new double[cnt];
+        int[] r = new int[cnt];
+        for (int n=0; n < cnt; n++) {
+            int idx = (int) order[n];
+            s[n] = start[level][idx];
+            w[n] = width[level][idx];
+            r[n] = ref[level][idx];
+        }
+        start[level] = s;
+        width[level] = w;
+        ref[level] = r;
+    }
+
+    double total()                     { return total; }
+    int    count(int level)            { return count[level]; }
+    double start(int level, int n)     { return start[level][n]; }
+    double width(int level, int n)     { return width[level][n]; }
+    double end(int level, int n)       { return start[level][n] + width[level][n]; }
+
+    /**
+     * @return Index of the first frame, that ends behind the given time
+     */
+    int first(int level, double time)
+    {
+        int lo=0, hi=count[level];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (end(level, mid) <= time) lo = mid+1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return Index of the frame at the given time or -1
+     */
+    int frameAt(int level, double time)
+    {
+        if (level < 0 || level >= LEVELS) return -1;
+        int n = first(level, time);
+        return n < count[level] && start[level][n] <= time ? n : -1;
+    }
+
+    /**
+     * @return Line to show in the profiler tree for a frame or null for the program
+     */
+    SourceLine lineOf(int level, int n)
+    {
+        int key = ref[level][n];
+        switch (level) {
+            case FILE:     return files[key].getSource();
+            case FUNCTION: return key < 0 ? files[-key-1].getSource() : source.getSourceLine(key);
+            case LINE:     return source.getSourceLine(key);
+            default:       return null;
+        }
+    }
+
+    String labelOf(int level, int n)
+    {
+        int key = ref[level][n];
+        switch (level) {
+            case FILE:     return files[key].getPath();
+            case FUNCTION: return key < 0 ? "(outside of functions)" : source.getSourceLine(key).getFunctionName();
+            case LINE:     return source.getSourceLine(key).getSource();
+            default:       return "Program";
+        }
+    }
+
+    /**
+     * @return Calls of a function or line, -1 for files and the program
+     */
+    int callsOf(int level, int n)
+    {
+        int key = ref[level][n];
+        if (level == LINE || (level == FUNCTION && key >= 0))
+            return source.getSourceLine(key).getCalls();
+        return -1;
+    }
+
+    /**
+     * @return A number, that is stable for the same function or line, to pick a color
+     */
+    int hashOf(int level, int n)
+    {
+        return ref[level][n] * 31 + level;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.gui;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import javafx.animation.AnimationTimer;
+
+/**
+ * Frame statistics of the JavaFX application thread. It is enabled with the
+ * system property "cmm2profiler.framestats" and prints once per second the number
+ * of frames, the mean and the longest time between two frames, the number of
+ * cell updates, the redraws of the flame chart with their longest time and the
+ * garbage collections in that second to stdout.<p>
+ *
+ * Scrolling through a large program with and without a change shows the cost
+ * of the cell rendering per frame. Zooming the flame chart shows, if it keeps
+ * 60 frames per second: the redraw only records the canvas commands, they are
+ * rendered in the next frame, so the frame time contains both.
+ *
+ * @author Matthias Grimm
+ */
+final class FrameStats
+extends AnimationTimer
+{
+    static final boolean ENABLED = Boolean.getBoolean("cmm2profiler.framestats");
+
+    private static long cellUpdates;
+    private static int draws;
+    private static long maxDraw;
+
+    private long lastFrame;
+    private long periodStart;
+    private long maxFrame;
+    private int frames;
+    private long gcCount;
+    private long gcTime;
+
+    /**
+     * Start the statistics, if they are enabled.
+     */
+    static void install()
+    {
+        if (ENABLED) new FrameStats().start();
+    }
+
+    /**
+     * Count an update of a table cell. Called from the cell factories.
+     */
+    static void cellUpdated()
+    {
+        if (ENABLED) cellUpdates++;
+    }
+
+    /**
+     * Count a redraw of the flame chart. Called from the chart.
+     *
+     * @param nanos  Time of the redraw
+     */
+    static void chartDrawn(long nanos)
+    {
+        if (ENABLED) {
+            draws++;
+            maxDraw = Math.max(maxDraw, nanos);
+        }
+    }
+
+    @Override
+    public void handle(long now)
+    {
+        if (lastFrame == 0) {
+            lastFrame = periodStart = now;
+            readGC();
+            cellUpdates = 0;
+            draws = 0;
+            return;
+        }
+        maxFrame = Math.max(maxFrame, now - lastFrame);
+        lastFrame = now;
+        frames++;
+
+        if (now - periodStart >= 1_000_000_000L) {
+            long count = gcCount, time = gcTime;
+            readGC();
+            System.out.printf("frames %3d  mean %6.2f ms  max %6.2f ms  cells %6d  chart %3d (max %5.2f ms)  gc %d (%d ms)%n",
+                    frames, (now - periodStart) / 1e6 / frames, maxFrame / 1e6,
+                    cellUpdates, draws, maxDraw / 1e6, gcCount - count, gcTime - time);
+
+            periodStart = now;
+            maxFrame = 0;
+            frames = 0;
+            cellUpdates = 0;
+            draws = 0;
+            maxDraw = 0;
+        }
+    }
+
+    private void readGC()
+    {
+        gcCount = 0;
+        gcTime = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime += Math.max(0, gc.getCollectionTime());
+        }
+    }
+}
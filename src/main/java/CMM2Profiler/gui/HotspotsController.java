@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.gui;
+
+import CMM2Profiler.core.Hotspots;
+import CMM2Profiler.core.Source;
+import CMM2Profiler.core.SourceLine;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.RadioButton;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.ToggleGroup;
+
+/**
+ * Window with the hottest lines, functions and files of the program. A click on
+ * an entry shows it in the profiler tree.
+ *
+ * @author Matthias Grimm
+ */
+public class HotspotsController
+extends WindowFX
+{
+    private static final int SIZE = 25;
+
+    @FXML  private ToggleGroup groupMetric;
+    @FXML  private RadioButton radioTotal;
+    @FXML  private RadioButton radioPerCall;
+    @FXML  private RadioButton radioCalls;
+    @FXML  private TableView<SourceLine> tableLines;
+    @FXML  private TableColumn<SourceLine, String> colLineName;
+    @FXML  private TableColumn<SourceLine, String> colLineValue;
+    @FXML  private TableView<SourceLine> tableFunctions;
+    @FXML  private TableColumn<SourceLine, String> colFuncName;
+    @FXML  private TableColumn<SourceLine, String> colFuncValue;
+    @FXML  private TableView<SourceLine> tableFiles;
+    @FXML  private TableColumn<SourceLine, String> colFileName;
+    @FXML  private TableColumn<SourceLine, String> colFileValue;
+    @FXML  private Button btnClose;
+
+    private Hotspots hotspots;
+
+    /**
+     * @param onSelect  Called with the line of a clicked entry
+     * @throws IOException
+     */
+    @SuppressWarnings("LeakingThisInConstructor")
+    public HotspotsController(Consumer<SourceLine> onSelect) throws IOException
+    {
+        super("Hotspots.fxml", "cmm2profiler.css");
+        stage.setTitle("Hotspots");
+        stage.setResizable(true);
+
+        colLineName.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(
+                param.getValue().getLineNo()+": "+param.getValue().getSource()));
+        colLineValue.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(valueText(param.getValue(), getMetric())));
+        colFuncName.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getFunctionName()));
+        colFuncValue.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(valueText(param.getValue(), getMetric())));
+        colFileName.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getSource()));
+        colFileValue.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(valueText(param.getValue(), Hotspots.Metric.TOTAL_TIME)));
+
+        colLineName.getStyleClass().add("column-align-left");
+        colFuncName.getStyleClass().add("column-align-left");
+        colFileName.getStyleClass().add("column-align-left");
+        colLineValue.getStyleClass().add("column-align-right");
+        colFuncValue.getStyleClass().add("column-align-right");
+        colFileValue.getStyleClass().add("column-align-right");
+
+        for (TableView<SourceLine> table : List.of(tableLines, tableFunctions, tableFiles)) {
+            table.setOnMouseClicked(ev -> {
+                SourceLine srcLine = table.getSelectionModel().getSelectedItem();
+                if (srcLine != null) onSelect.accept(srcLine);
+            });
+        }
+
+        groupMetric.selectedToggleProperty().addListener((obs, oldBtn, newBtn) -> showHotspots());
+    }
+
+    /**
+     * Show the hotspots of another source.
+     */
+    public void setSource(Source src)
+    {
+        hotspots = src.createHotspots(SIZE);
+        showHotspots();
+    }
+
+    /**
+     * Show the hotspots after the profiler data of the source has been changed.
+     */
+    public void update()
+    {
+        if (hotspots != null && hotspots.update())
+            showHotspots();
+    }
+
+    public boolean isShowing()
+    {
+        return stage.isShowing();
+    }
+
+    private Hotspots.Metric getMetric()
+    {
+        if (groupMetric.getSelectedToggle() == radioPerCall) return Hotspots.Metric.TIME_PER_CALL;
+        if (groupMetric.getSelectedToggle() == radioCalls)   return Hotspots.Metric.CALLS;
+        return Hotspots.Metric.TOTAL_TIME;
+    }
+
+    private void showHotspots()
+    {
+        Hotspots.Metric metric = getMetric();
+        String title = metric == Hotspots.Metric.CALLS ? "Calls"
+                     : metric == Hotspots.Metric.TIME_PER_CALL ? "Time/Call [ms]" : "Time [ms]";
+        colLineValue.setText(title);
+        colFuncValue.setText(title);
+
+        if (hotspots == null) return;
+        tableLines.getItems().setAll(hotspots.getLines(metric));
+        tableFunctions.getItems().setAll(hotspots.getFunctions(metric));
+        tableFiles.getItems().setAll(hotspots.getFiles());
+    }
+
+    private static String valueText(SourceLine srcLine, Hotspots.Metric metric)
+    {
+        if (metric == Hotspots.Metric.CALLS)
+            return CellText.number(srcLine.getCalls());
+        return String.format(Locale.US, "%.3f", Hotspots.valueOf(srcLine, metric) / 1000);
+    }
+
+    @FXML
+    protected void handleAction(ActionEvent ev)
+    {
+        if (ev.getSource() == btnClose) close();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.gui;
+
+import CMM2Profiler.core.SourceLine;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+
+/**
+ * Tree item for a range of source lines, e.g. an include file or the body of a
+ * function. The children are created on the first call of getChildren(), which
+ * happens when the item is expanded for the first time. Until then, the item
+ * only knows the range of its lines.<p>
+ *
+ * A filter hides children without dropping them. Changing it only updates the
+ * children of the items, that are shown. Hidden items and items, that haven't
+ * been created yet, are filtered when they are needed.
+ *
+ * @author Matthias Grimm
+ */
+class LazyTreeItem extends TreeItem<SourceLine>
+{
+    private final int first;        // index of the first line in the full source context
+    private final int last;         // index of the last line, inclusive
+    private Function<LazyTreeItem,List<TreeItem<SourceLine>>> factory;
+    private Comparator<TreeItem<SourceLine>> order = null;
+    private Predicate<TreeItem<SourceLine>> filter = null;
+    private boolean filtered = true;    // the children match the filter
+    private List<TreeItem<SourceLine>> all;     // created children, shown or not
+
+    /**
+     * @param value    Header line of the range
+     * @param first    Index of the first child line
+     * @param last     Index of the last child line
+     * @param factory  Creates the children of an item
+     */
+    LazyTreeItem(SourceLine value, int first, int last, Function<LazyTreeItem,List<TreeItem<SourceLine>>> factory)
+    {
+        super(value);
+        this.first = first;
+        this.last = last;
+        this.factory = factory;
+    }
+
+    int getFirst()  { return first; }
+    int getLast()   { return last; }
+
+    boolean contains(int idx)
+    {
+        return idx >= first && idx <= last;
+    }
+
+    boolean isLoaded()
+    {
+        return factory == null;
+    }
+
+    /**
+     * Sort the children and the children of all created items below. Items,
+     * that will be created later, are sorted on creation.
+     *
+     * @param order  Order of the children or null for the order of creation
+     */
+    void sort(Comparator<TreeItem<SourceLine>> order)
+    {
+        this.order = order;
+        if (factory != null) return;
+
+        if (order != null) {
+            all.sort(order);
+            showChildren();
+        }
+        for (TreeItem<SourceLine> child : all)
+            if (child instanceof LazyTreeItem) ((LazyTreeItem) child).sort(order);
+    }
+
+    /**
+     * Show only the children, that pass a filter. The filter is passed on to
+     * the items below. The children of a collapsed item are filtered, when it
+     * is expanded.
+     *
+     * @param filter  Children to show or null for all of them
+     */
+    void filter(Predicate<TreeItem<SourceLine>> filter)
+    {
+        this.filter = filter;
+        filtered = false;
+        if (factory != null || !isExpanded()) return;
+
+        showChildren();
+        for (TreeItem<SourceLine> child : all) {
+            if (!(child instanceof LazyTreeItem)) continue;
+
+            LazyTreeItem item = (LazyTreeItem) child;
+            if (item.getParent() == this) {
+                item.filter(filter);
+            } else {
+                item.filter = filter;
+                item.filtered = false;
+            }
+        }
+    }
+
+    /**
+     * Update the shown children, if they have changed.
+     */
+    private void showChildren()
+    {
+        filtered = true;
+        ArrayList<TreeItem<SourceLine>> shown = new ArrayList<>(all.size());
+        for (TreeItem<SourceLine> child : all)
+            if (filter == null || filter.test(child)) shown.add(child);
+
+        if (!shown.equals(super.getChildren()))
+            super.getChildren().setAll(shown);
+    }
+
+    @Override
+    public ObservableList<TreeItem<SourceLine>> getChildren()
+    {
+        if (factory != null) {
+            Function<LazyTreeItem,List<TreeItem<SourceLine>>> create = factory;
+            factory = null;
+
+            all = create.apply(this);
+            for (TreeItem<SourceLine> child : all) {
+                if (!(child instanceof LazyTreeItem)) continue;
+                ((LazyTreeItem) child).filter = filter;
+                if (order != null) ((LazyTreeItem) child).sort(order);
+            }
+            if (order != null) all.sort(order);
+            showChildren();
+        } else if (!filtered) {
+            showChildren();
+            for (TreeItem<SourceLine> child : all) {
+                if (!(child instanceof LazyTreeItem)) continue;
+                ((LazyTreeItem) child).filter = filter;
+                ((LazyTreeItem) child).filtered = false;
+            }
+        }
+        return super.getChildren();
+    }
+
+    @Override
+    public boolean isLeaf()
+    {
+        return first > last;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.gui;
+
+import CMM2Profiler.core.LoadMetrics;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.function.Function;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.stage.FileChooser;
+
+/**
+ * Window with the timing of the phases of the last load.
+ *
+ * @author Matthias Grimm
+ */
+public class LoadMetricsController
+extends WindowFX
+{
+    @FXML  private TableView<LoadMetrics.Phase> tablePhases;
+    @FXML  private TableColumn<LoadMetrics.Phase, String> colPhase;
+    @FXML  private TableColumn<LoadMetrics.Phase, String> colTime;
+    @FXML  private TableColumn<LoadMetrics.Phase, String> colLines;
+    @FXML  private TableColumn<LoadMetrics.Phase, String> colLinesPerSecond;
+    @FXML  private TableColumn<LoadMetrics.Phase, String> colBytesPerSecond;
+    @FXML  private TableColumn<LoadMetrics.Phase, String> colAllocated;
+    @FXML  private Label lbTotal;
+    @FXML  private Button btnExport;
+    @FXML  private Button btnClose;
+
+    private LoadMetrics metrics;
+
+    @SuppressWarnings("LeakingThisInConstructor")
+    public LoadMetricsController() throws IOException
+    {
+        super("LoadMetrics.fxml", "cmm2profiler.css");
+        stage.setTitle("Load Metrics");
+        stage.setResizable(true);
+        setMsgLabel(lbTotal);
+
+        colPhase.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getName()));
+        colPhase.getStyleClass().add("column-align-left");
+        setColumn(colTime, phase -> String.format(Locale.US, "%.1f", phase.getTime()));
+        setColumn(colLines, phase -> String.format(Locale.US, "%,d", phase.getLines()));
+        setColumn(colLinesPerSecond, phase -> String.format(Locale.US, "%,.0f", phase.getLinesPerSecond()));
+        setColumn(colBytesPerSecond, phase -> phase.getBytes() == 0 ? ""
+                : String.format(Locale.US, "%.1f", phase.getBytesPerSecond() / 1e6));
+        setColumn(colAllocated, phase -> phase.getAllocated() < 0 ? "n/a"
+                : String.format(Locale.US, "%.1f", phase.getAllocated() / 1e6));
+    }
+
+    private static void setColumn(TableColumn<LoadMetrics.Phase, String> column, Function<LoadMetrics.Phase, String> text)
+    {
+        column.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(text.apply(param.getValue())));
+        column.getStyleClass().add("column-align-right");
+    }
+
+    /**
+     * Show the phases of a load.
+     */
+    public void setMetrics(LoadMetrics loadMetrics)
+    {
+        metrics = loadMetrics;
+        tablePhases.getItems().setAll(metrics.getPhases());
+        showMessage(String.format(Locale.US, "%s: %.1f ms", metrics.getProgram(), metrics.getTotalTime()));
+    }
+
+    public boolean isShowing()
+    {
+        return stage.isShowing();
+    }
+
+    private void export()
+    {
+        if (metrics == null) return;
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Load Metrics...");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("JSON Files", "*.json"));
+        fileChooser.setInitialFileName("loadmetrics.json");
+        File fh = fileChooser.showSaveDialog(stage);
+        if (fh == null) return;
+
+        try {
+            metrics.exportJson(fh);
+            showSuccess("Exported to "+fh.getName());
+        } catch (IOException ex) {
+            showError("Export failed: "+ex.getLocalizedMessage());
+        }
+    }
+
+    @FXML
+    protected void handleAction(ActionEvent ev)
+    {
+        if (ev.getSource() == btnExport) export();
+        else if (ev.getSource() == btnClose) close();
+    }
+}
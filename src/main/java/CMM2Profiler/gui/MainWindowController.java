@@ -18,16 +18,34 @@
 package CMM2Profiler.gui;
 
 import CMM2Profiler.Defaults;
+import CMM2Profiler.core.CallGraph;
 import CMM2Profiler.core.Function;
+import CMM2Profiler.core.LoadMetrics;
+import CMM2Profiler.core.ProfileAggregates;
+import CMM2Profiler.core.ProfileDiff;
+import CMM2Profiler.core.ProfileRun;
+import CMM2Profiler.core.RunStatistics;
+import CMM2Profiler.core.SearchIndex;
 import CMM2Profiler.core.Source;
+import CMM2Profiler.utils.FileWatcher;
 import CMM2Profiler.utils.ObjectConverter;
 import CMM2Profiler.core.SourceLine;
+import static CMM2Profiler.utils.ErrandFactory.execErrandBuildSearchIndex;
+import static CMM2Profiler.utils.ErrandFactory.execErrandLoadProfileDiff;
+import static CMM2Profiler.utils.ErrandFactory.execErrandLoadProfileRun;
+import static CMM2Profiler.utils.ErrandFactory.execErrandLoadRunStatistics;
 import static CMM2Profiler.utils.ErrandFactory.execErrandLoadSource;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
 import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.beans.binding.NumberBinding;
 import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.ListChangeListener;
@@ -35,16 +53,24 @@ import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.Label;
+import javafx.scene.control.Menu;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.RadioButton;
+import javafx.scene.control.RadioMenuItem;
 import javafx.scene.control.ScrollBar;
 import javafx.scene.control.SelectionMode;
+import javafx.scene.control.Slider;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableColumnBase;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
 import javafx.scene.control.Toggle;
 import javafx.scene.control.ToggleGroup;
+import javafx.scene.control.Tooltip;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeTableCell;
 import javafx.scene.control.TreeTableColumn;
@@ -54,6 +80,7 @@ import javafx.scene.control.cell.TreeItemPropertyValueFactory;
 import javafx.scene.image.Image;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
@@ -69,16 +96,40 @@ extends WindowFX
 {
     @FXML  private Label lbPrgName;
     @FXML  private Label lbDataMode;
+    @FXML  private Label lbMetrics;
     @FXML  private Button  btnClose;
     @FXML  private Label  errorMsg;
     @FXML  private MenuItem miOpen;
+    @FXML  private MenuItem miCompare;
+    @FXML  private MenuItem miMerge;
+    @FXML  private Menu menuStatistic;
+    @FXML  private RadioMenuItem miStatLoaded;
+    @FXML  private RadioMenuItem miStatMean;
+    @FXML  private RadioMenuItem miStatMedian;
+    @FXML  private RadioMenuItem miStatStdDev;
+    @FXML  private RadioMenuItem miStatMin;
+    @FXML  private RadioMenuItem miStatMax;
+    @FXML  private RadioMenuItem miStatP90;
+    @FXML  private ToggleGroup groupStatistic;
+    @FXML  private CheckMenuItem miWatch;
     @FXML  private MenuItem miExit;
+    @FXML  private MenuItem miFlameChart;
+    @FXML  private MenuItem miHotspots;
+    @FXML  private MenuItem miLoadMetrics;
     @FXML  private MenuItem miAbout;
     
+    @FXML  private TextField searchField;
+    @FXML  private CheckBox chkRegex;
+    @FXML  private Button btnSearchPrev;
+    @FXML  private Button btnSearchNext;
+    @FXML  private Label lbSearch;
     @FXML  private TreeTableView<SourceLine> SourceTree;
     @FXML  private TreeTableColumn<SourceLine, Integer> colLine;
     @FXML  private TreeTableColumn<SourceLine, Integer> colCalls;
     @FXML  private TreeTableColumn<SourceLine, Float> colTime;
+    @FXML  private TreeTableColumn<SourceLine, SourceLine> colDiffCalls;
+    @FXML  private TreeTableColumn<SourceLine, SourceLine> colDiffTime;
+    @FXML  private TreeTableColumn<SourceLine, SourceLine> colDiffPercent;
     @FXML  private TreeTableColumn<SourceLine, String> colCode;
     @FXML  private TreeTableColumn<SourceLine, String> colComment;
 
@@ -86,13 +137,31 @@ extends WindowFX
     @FXML  private TableColumn<Function, String> colFuncName;
     @FXML  private TableColumn<Function, Integer> colFuncCalls;
     @FXML  private TableColumn<Function, Float> colFuncTime;
+    @FXML  private TableColumn<Function, Integer> colFuncDiffCalls;
+    @FXML  private TableColumn<Function, Float> colFuncDiffTime;
+    @FXML  private TableColumn<Function, Float> colFuncDiffPercent;
     @FXML  private TableColumn<Function, Integer> colFuncRefs;
+
+    @FXML  private Label labelCallTimes;
+    @FXML  private TableView<CallGraph.Call> tableCallers;
+    @FXML  private TableColumn<CallGraph.Call, String> colCallerName;
+    @FXML  private TableColumn<CallGraph.Call, Float> colCallerCalls;
+    @FXML  private TableColumn<CallGraph.Call, Float> colCallerTime;
+    @FXML  private TableView<CallGraph.Call> tableCallees;
+    @FXML  private TableColumn<CallGraph.Call, String> colCalleeName;
+    @FXML  private TableColumn<CallGraph.Call, Float> colCalleeCalls;
+    @FXML  private TableColumn<CallGraph.Call, Float> colCalleeTime;
     
     @FXML  private ToggleGroup groupSourceTime;
     @FXML  private RadioButton radioST_S;
     @FXML  private RadioButton radioST_M;
     @FXML  private RadioButton radioST_U;
 
+    @FXML  private Slider sliderThreshold;
+    @FXML  private Label lbThreshold;
+    @FXML  private ToggleGroup groupThreshold;
+    @FXML  private RadioButton radioTH_C;
+
     @FXML  private ToggleGroup groupFunctionTime;
     @FXML  private RadioButton radioFT_M;
     @FXML  private RadioButton radioFT_U;
@@ -104,6 +173,13 @@ extends WindowFX
     private final MainWindowData dataModel;
     private final DoubleProperty treeTableBarWidthProperty = new SimpleDoubleProperty();
     private final DoubleProperty functionTableBarWidthProperty = new SimpleDoubleProperty();
+    private FileWatcher fileWatcher;
+    private FlameChartController flameChart;
+    private HotspotsController hotspots;
+    private LoadMetricsController loadMetrics;
+    private SearchIndex searchIndex;
+    private SearchIndex.Result searchResult;
+    private int searchHit;
 
     public MainWindowController(Stage stage) throws IOException
     {
@@ -127,6 +203,11 @@ extends WindowFX
         // Main Program Page
         lbPrgName.textProperty().bind(dataModel.nameProperty());
         lbDataMode.textProperty().bind(dataModel.modeProperty());
+        lbMetrics.setOnMouseClicked(ev -> showLoadMetrics());
+
+        // Search in code and comments
+        searchField.textProperty().addListener((ov, oldVal, newVal) -> search());
+        lbSearch.setTooltip(new Tooltip());
         
         // TreeTableView with Profiler Data
         colLine.setCellValueFactory(new TreeItemPropertyValueFactory<>("lineNo"));
@@ -144,6 +225,23 @@ extends WindowFX
         colTime.getStyleClass().add("column-align-right");
         colTime.setReorderable(false);
 
+        colDiffCalls.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getValue()));
+        colDiffCalls.setCellFactory(formatTreeDiff(dataModel::getCallsDiffText));
+        colDiffCalls.getStyleClass().add("column-align-right");
+        colDiffCalls.setReorderable(false);
+
+        colDiffTime.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getValue()));
+        colDiffTime.setCellFactory(formatTreeDiff(dataModel::getTimeDiffText));
+        colDiffTime.getStyleClass().add("column-align-right");
+        colDiffTime.setReorderable(false);
+
+        colDiffPercent.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getValue()));
+        colDiffPercent.setCellFactory(formatTreeDiff(dataModel::getPercentDiffText));
+        colDiffPercent.getStyleClass().add("column-align-right");
+        colDiffPercent.setReorderable(false);
+
+        SourceTree.setSortPolicy(this::sortSourceTree);
+
         colCode.setCellValueFactory(new TreeItemPropertyValueFactory<>("Source"));
         colCode.setCellFactory(formatTreeLevel);
         colCode.getStyleClass().add("column-align-left");
@@ -156,6 +254,9 @@ extends WindowFX
                                        .subtract(colLine.widthProperty())
                                        .subtract(colCalls.widthProperty())
                                        .subtract(colTime.widthProperty())
+                                       .subtract(visibleWidth(colDiffCalls))
+                                       .subtract(visibleWidth(colDiffTime))
+                                       .subtract(visibleWidth(colDiffPercent))
                                        .subtract(colCode.widthProperty())
                                        .subtract(treeTableBarWidthProperty)
                                        .subtract(2));
@@ -173,6 +274,18 @@ extends WindowFX
         colFuncTime.setCellFactory(formatCellFloat);
         colFuncTime.getStyleClass().add("column-align-right");
 
+        colFuncDiffCalls.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(dataModel.getCallsDelta(param.getValue())));
+        colFuncDiffCalls.setCellFactory(formatCellDiff(func -> dataModel.getCallsDiffText(func.getData())));
+        colFuncDiffCalls.getStyleClass().add("column-align-right");
+
+        colFuncDiffTime.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(dataModel.getTimeDelta(param.getValue())));
+        colFuncDiffTime.setCellFactory(formatCellDiff(dataModel::getTimeDiffText));
+        colFuncDiffTime.getStyleClass().add("column-align-right");
+
+        colFuncDiffPercent.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(dataModel.getTimePercent(param.getValue())));
+        colFuncDiffPercent.setCellFactory(formatCellDiff(func -> dataModel.getPercentDiffText(func.getData())));
+        colFuncDiffPercent.getStyleClass().add("column-align-right");
+
         colFuncRefs.setCellValueFactory(new PropertyValueFactory<>("Refs"));
         colFuncRefs.setCellFactory(formatCellInt);
         colFuncRefs.getStyleClass().add("column-align-right");
@@ -182,6 +295,9 @@ extends WindowFX
                                        .subtract(colFuncCalls.widthProperty())
                                        .subtract(colFuncRefs.widthProperty())
                                        .subtract(colFuncTime.widthProperty())
+                                       .subtract(visibleWidth(colFuncDiffCalls))
+                                       .subtract(visibleWidth(colFuncDiffTime))
+                                       .subtract(visibleWidth(colFuncDiffPercent))
                                        .subtract(functionTableBarWidthProperty)
                                        .subtract(2));
 
@@ -194,7 +310,7 @@ extends WindowFX
                     while (change.next()) {
                         for (Function func : change.getRemoved()) {
                             final SourceLine srcLine = func.getData();
-                            final TreeItem<SourceLine> item = dataModel.findTreeItem(dataModel.getProfilerTree(), srcLine);
+                            final TreeItem<SourceLine> item = dataModel.getTreeItem(srcLine);
                             
                             if (item != null)
                                 dataModel.expandBranch(item, false);
@@ -202,9 +318,10 @@ extends WindowFX
                         
                         for (Function func : change.getAddedSubList()) {
                             final SourceLine srcLine = func.getData();
-                            final TreeItem<SourceLine> item = dataModel.findTreeItem(dataModel.getProfilerTree(), srcLine);
+                            final TreeItem<SourceLine> item = dataModel.getTreeItem(srcLine);
                             labelRefFunctionName.setText(func.getName()+"()");
                             createRefButtons(func.getReferenceList());        
+                            showCalls(func);
                             
                             if (item != null) {
                                 dataModel.expandBranch(item, true);
@@ -220,6 +337,39 @@ extends WindowFX
                     }
                 }});
         
+        // Callers and callees of the selected function
+        colCallerName.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(callName(param.getValue(), param.getValue().getCallerName())));
+        colCallerName.getStyleClass().add("column-align-left");
+        colCallerCalls.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getCalls()));
+        colCallerCalls.setCellFactory(formatCall(calls -> CellText.number(Math.round(calls))));
+        colCallerCalls.getStyleClass().add("column-align-right");
+        colCallerTime.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getTime()));
+        colCallerTime.setCellFactory(formatCall(dataModel::getCallTimeText));
+        colCallerTime.getStyleClass().add("column-align-right");
+        colCallerName.prefWidthProperty().bind(tableCallers.widthProperty()
+                                       .subtract(colCallerCalls.widthProperty())
+                                       .subtract(colCallerTime.widthProperty())
+                                       .subtract(functionTableBarWidthProperty)
+                                       .subtract(2));
+        tableCallers.setItems(dataModel.getCallerList());
+        tableCallers.setOnMouseClicked(ev -> selectCall(ev, tableCallers, CallGraph.Call::getCallerFunction));
+
+        colCalleeName.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(callName(param.getValue(), param.getValue().getCalleeName())));
+        colCalleeName.getStyleClass().add("column-align-left");
+        colCalleeCalls.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getCalls()));
+        colCalleeCalls.setCellFactory(formatCall(calls -> CellText.number(Math.round(calls))));
+        colCalleeCalls.getStyleClass().add("column-align-right");
+        colCalleeTime.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getTime()));
+        colCalleeTime.setCellFactory(formatCall(dataModel::getCallTimeText));
+        colCalleeTime.getStyleClass().add("column-align-right");
+        colCalleeName.prefWidthProperty().bind(tableCallees.widthProperty()
+                                       .subtract(colCalleeCalls.widthProperty())
+                                       .subtract(colCalleeTime.widthProperty())
+                                       .subtract(functionTableBarWidthProperty)
+                                       .subtract(2));
+        tableCallees.setItems(dataModel.getCalleeList());
+        tableCallees.setOnMouseClicked(ev -> selectCall(ev, tableCallees, CallGraph.Call::getCalleeFunction));
+
         stage.setOnShown(ev -> {
             adjustTableWidth(getVerticalScrollbar(SourceTree), treeTableBarWidthProperty);
             adjustTableWidth(getVerticalScrollbar(tableFunctions), functionTableBarWidthProperty);
@@ -227,6 +377,85 @@ extends WindowFX
         
         groupSourceTime.selectedToggleProperty().addListener(this::handleSourceTime);
         groupFunctionTime.selectedToggleProperty().addListener(this::handleFunctionTime);
+        groupThreshold.selectedToggleProperty().addListener((ov, oldBtn, newBtn) -> updateThreshold());
+        sliderThreshold.valueProperty().addListener((ov, oldVal, newVal) -> updateThreshold());
+
+        FrameStats.install();       // -Dcmm2profiler.framestats=true
+    }
+
+    @Override
+    protected void close()
+    {
+        if (fileWatcher != null) fileWatcher.close();
+        if (flameChart != null) flameChart.close();
+        if (hotspots != null) hotspots.close();
+        if (loadMetrics != null) loadMetrics.close();
+        super.close();
+    }
+
+    private static NumberBinding visibleWidth(TableColumnBase<?,?> column)
+    {
+        return Bindings.when(column.visibleProperty()).then(column.widthProperty()).otherwise(0.0);
+    }
+
+    /**
+     * Sort policy of the profiler tree. Only the differences to a baseline run
+     * can be sorted. The lines are sorted within their file or function by the
+     * rank of their delta, so the items don't have to be created for sorting.
+     */
+    private boolean sortSourceTree(TreeTableView<SourceLine> tree)
+    {
+        ProfileDiff diff = dataModel.getProfileDiff();
+        if (diff == null || tree.getSortOrder().isEmpty()) {
+            dataModel.sortProfilerTree(null, false);
+            return true;
+        }
+
+        TreeTableColumn<SourceLine, ?> column = tree.getSortOrder().get(0);
+        int[] rank = column == colDiffPercent ? diff.getTimePercentRank() : diff.getTimeRank();
+        dataModel.sortProfilerTree(rank, column.getSortType() == TreeTableColumn.SortType.DESCENDING);
+        return true;
+    }
+
+    /**
+     * Show the callers and the callees of a function with its self and inclusive time.
+     */
+    private void showCalls(Function func)
+    {
+        dataModel.updateCallLists(func);
+        if (func == null) {
+            labelCallTimes.setText(" ");
+            return;
+        }
+
+        CallGraph graph = dataModel.getCallGraph();
+        int node = graph.indexOf(func);
+        String unit = dataModel.getFunctionTimeScaler() == 3 ? " µs" : " ms";
+        String text = "Self "+dataModel.getCallTimeText(graph.getSelfTime(node))+unit
+                    +", inclusive "+dataModel.getCallTimeText(graph.getInclusiveTime(node))+unit;
+        if (graph.isCycle(node))
+            text += ", cycle "+graph.getCycleNo(node)+" "+dataModel.getCallTimeText(graph.getCycleTime(node))+unit;
+        labelCallTimes.setText(text);
+    }
+
+    private static String callName(CallGraph.Call call, String name)
+    {
+        return call.isRecursive() ? name+" (recursive)" : name;
+    }
+
+    /**
+     * A double click on a call selects the function on the other side of the call.
+     */
+    private void selectCall(MouseEvent ev, TableView<CallGraph.Call> table, Callback<CallGraph.Call, Function> target)
+    {
+        CallGraph.Call call = table.getSelectionModel().getSelectedItem();
+        if (ev.getClickCount() != 2 || call == null) return;
+
+        Function func = target.call(call);
+        if (func != null) {
+            tableFunctions.getSelectionModel().select(func);
+            tableFunctions.scrollTo(func);
+        }
     }
 
     private void adjustTableWidth(ScrollBar bar, DoubleProperty width)
@@ -256,20 +485,7 @@ extends WindowFX
             btn.setUserData(references.get(n));
             btn.setOnAction(value -> {
                     Button btt = (Button) value.getSource();
-                    SourceLine srcLine = (SourceLine) btt.getUserData();
-                    TreeItem<SourceLine> item = dataModel.findTreeItem(dataModel.getProfilerTree(), srcLine);
-                    
-                    if (item != null) {
-                        dataModel.expandBranch(item, true);
-                            
-                        Platform.runLater(() -> {
-                            int row = SourceTree.getRow(item);
-                            if (row >= 0) {
-                                SourceTree.scrollTo(row);
-                                SourceTree.getSelectionModel().select(item);
-                            }
-                        });
-                    }
+                    showTreeLine((SourceLine) btt.getUserData());
                 });
             if (n < jumpIdx)
                 hboxRefRow1.getChildren().add(btn);
@@ -278,6 +494,136 @@ extends WindowFX
         }
     }
     
+    /**
+     * Expand the profiler tree up to a line and select it. A line below the
+     * threshold is shown anyway.
+     */
+    private void showTreeLine(SourceLine srcLine)
+    {
+        TreeItem<SourceLine> item = dataModel.getTreeItem(srcLine);
+        if (item == null) return;
+
+        dataModel.keepTreeLine(srcLine);
+        dataModel.expandBranch(item, true);
+        Platform.runLater(() -> {
+            int row = SourceTree.getRow(item);
+            if (row >= 0) {
+                SourceTree.scrollTo(row);
+                SourceTree.getSelectionModel().select(item);
+            }
+        });
+    }
+
+    /**
+     * Show the current profiler data in the flame chart, if it is open.
+     */
+    private void updateFlameChart()
+    {
+        if (flameChart != null && flameChart.isShowing())
+            flameChart.setSource(dataModel.getSource());
+    }
+
+    /**
+     * Open the window with the timing of the last load.
+     */
+    private void showLoadMetrics()
+    {
+        try {
+            if (loadMetrics == null)
+                loadMetrics = new LoadMetricsController();
+            loadMetrics.setMetrics(dataModel.getSource().getLoadMetrics());
+            loadMetrics.show();
+
+        } catch (IOException ex) {
+            showError(ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Bring the hotspot window up to date, if it is open.
+     *
+     * @param newSource  true, if another source has been loaded
+     */
+    private void updateHotspots(boolean newSource)
+    {
+        if (hotspots == null || !hotspots.isShowing()) return;
+        if (newSource) hotspots.setSource(dataModel.getSource());
+        else hotspots.update();
+    }
+
+    /**
+     * Build the search index of the loaded source in the background. The search
+     * field is usable, as soon as it is ready.
+     */
+    private void buildSearchIndex()
+    {
+        Source src = dataModel.getSource();
+        searchIndex = null;
+        searchResult = null;
+        lbSearch.setText(src.getSourceLineCnt() > 0 ? "Indexing..." : "");
+        lbSearch.getTooltip().setText(null);
+
+        execErrandBuildSearchIndex(src, ev -> {
+                if (dataModel.getSource() != src) return;     // another source has been loaded meanwhile
+                searchIndex = (SearchIndex) ev.getSource().getValue();
+                lbSearch.setText("");
+                search();
+            }, ev -> {
+                if (dataModel.getSource() == src) taskFailed(ev);
+            });
+    }
+
+    /**
+     * Search the text of the search field and show the first line found.
+     */
+    private void search()
+    {
+        searchResult = null;
+        searchHit = -1;
+        if (searchIndex == null) return;
+
+        String text = searchField.getText();
+        if (text.isEmpty()) {
+            lbSearch.setText("");
+            lbSearch.getTooltip().setText(indexText());
+            return;
+        }
+
+        try {
+            searchResult = chkRegex.isSelected() ? searchIndex.findRegex(text) : searchIndex.find(text);
+        } catch (PatternSyntaxException ex) {
+            lbSearch.setText("Invalid regex");
+            lbSearch.getTooltip().setText(ex.getDescription());
+            return;
+        }
+
+        lbSearch.getTooltip().setText(String.format("%,d lines checked in %.2f ms%n%s",
+                searchResult.getCandidates(), searchResult.getTime(), indexText()));
+        showSearchHit(0);
+    }
+
+    private String indexText()
+    {
+        return String.format("Index: %,d trigrams, %.1f MB%s", searchIndex.getTrigramCount(),
+                searchIndex.getMemorySize() / 1e6, searchIndex.isLimited() ? " (limited)" : "");
+    }
+
+    /**
+     * Show a line found by the last search. The lines wrap around at both ends.
+     */
+    private void showSearchHit(int hit)
+    {
+        if (searchResult == null) return;
+        if (searchResult.size() == 0) {
+            lbSearch.setText("No matches");
+            return;
+        }
+
+        searchHit = Math.floorMod(hit, searchResult.size());
+        lbSearch.setText(String.format("%,d of %,d", searchHit+1, searchResult.size()));
+        showTreeLine(dataModel.getSource().getSourceLine(searchResult.getLines()[searchHit]));
+    }
+
     // ---------------------------------------------------------------------------------------- 
     //                                      FXML GUI handler
     // ---------------------------------------------------------------------------------------- 
@@ -285,6 +631,9 @@ extends WindowFX
     protected void handleAction(ActionEvent ev)
     {
         if (ev.getSource() == btnClose) close();
+        else if (ev.getSource() == searchField || ev.getSource() == btnSearchNext) showSearchHit(searchHit+1);
+        else if (ev.getSource() == btnSearchPrev) showSearchHit(searchHit-1);
+        else if (ev.getSource() == chkRegex) search();
     }
 
     @FXML
@@ -317,15 +666,75 @@ extends WindowFX
              
                 int pos=fileName.lastIndexOf('.');
                 if (pos != -1) fileName=fileName.substring(0,pos);
-                dataModel.setProgramName(fileName+".bas");
             
-                execErrandLoadSource(dataModel.mainSource, filePath, fileName,
-                        this::loadSourceSucceeded, this::taskFailed);
+                execErrandLoadSource(filePath, fileName, this::loadSourceSucceeded, this::taskFailed);
             }
             
+        } else if (event.getSource() == miCompare) {
+            if (dataModel.getSource().getMode() != Source.Mode.SOURCEANDPROFILER) {
+                showError("A source with profiler data must be loaded first!");
+                return;
+            }
+
+            File fh=loadDialog("Open Baseline Profiler File...");
+            if (fh != null) {
+                String name = dataModel.getProgramName();
+                int pos=name.lastIndexOf('.');
+                if (pos != -1) name=name.substring(0,pos);
+
+                Source src = dataModel.getSource();
+                execErrandLoadProfileDiff(src, fh, src.getProfileRun(name+".csv"), ev -> {
+                        if (dataModel.getSource() == src) loadProfileDiffSucceeded(ev);  // no other source meanwhile
+                    }, ev -> {
+                        if (dataModel.getSource() == src) taskFailed(ev);
+                    });
+            }
+
+        } else if (event.getSource() == miMerge) {
+            Source.Mode mode = dataModel.getSource().getMode();
+            if (mode != Source.Mode.SOURCEONLY && mode != Source.Mode.SOURCEANDPROFILER) {
+                showError("A source must be loaded first!");
+                return;
+            }
+
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Open Profiler Files of several Runs...");
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Profiler Files", "*.csv"));
+            List<File> logs = fileChooser.showOpenMultipleDialog(new Stage());
+            if (logs != null && !logs.isEmpty()) {
+                Source src = dataModel.getSource();
+                execErrandLoadRunStatistics(src, logs, ev -> {
+                        if (dataModel.getSource() == src) loadRunStatisticsSucceeded(ev);
+                    }, ev -> {
+                        if (dataModel.getSource() == src) taskFailed(ev);
+                    });
+            }
+
+        } else if (event.getSource() instanceof RadioMenuItem) {
+            showRunStatistic();
+
+        } else if (event.getSource() == miWatch) {
+            watchFiles();
+
         } else if (event.getSource() == miExit) {
             close();
 
+        // View Menu
+        } else if (event.getSource() == miFlameChart) {
+            if (flameChart == null)
+                flameChart = new FlameChartController(this::showTreeLine);
+            flameChart.setSource(dataModel.getSource());
+            flameChart.show();
+
+        } else if (event.getSource() == miHotspots) {
+            if (hotspots == null)
+                hotspots = new HotspotsController(this::showTreeLine);
+            hotspots.setSource(dataModel.getSource());
+            hotspots.show();
+
+        } else if (event.getSource() == miLoadMetrics) {
+            showLoadMetrics();
+
         // Help Menu
         } else if (event.getSource() == miAbout) {
             AboutController ctrl = new AboutController();
@@ -347,16 +756,39 @@ extends WindowFX
         }
         SourceTree.refresh();
     }
+
+    /**
+     * Hide the lines of the profiler tree below the share of the threshold slider.
+     * The slider is logarithmic from 0.001% to 10% of the total, 0 shows all lines.
+     */
+    private void updateThreshold()
+    {
+        double value = sliderThreshold.getValue();
+        double percent = value <= 0 ? 0 : 0.001 * Math.pow(10, value / 25);
+        lbThreshold.setText(percent == 0 ? "all lines" : String.format(percent < 0.1 ? "≥ %.3f %%" : "≥ %.1f %%", percent));
+
+        ProfileAggregates.Metric metric = groupThreshold.getSelectedToggle() == radioTH_C
+                ? ProfileAggregates.Metric.CALLS : ProfileAggregates.Metric.TOTAL_TIME;
+        dataModel.setTreeThreshold(metric, percent / 100);
+    }
+
     protected void handleFunctionTime(ObservableValue<? extends Toggle> observable,
                                        Toggle oldBtn, Toggle newBtn) {
         if (newBtn == radioFT_M) {
             colFuncTime.setText("Time [ms]");
+            colCallerTime.setText("Time [ms]");
+            colCalleeTime.setText("Time [ms]");
             dataModel.setFunctionTimeScaler(2);
         } else if (newBtn == radioFT_U) {
             colFuncTime.setText("Time [µs]");
+            colCallerTime.setText("Time [µs]");
+            colCalleeTime.setText("Time [µs]");
             dataModel.setFunctionTimeScaler(3);
         }
         tableFunctions.refresh();
+        tableCallers.refresh();
+        tableCallees.refresh();
+        showCalls(tableFunctions.getSelectionModel().getSelectedItem());
     }
     
     public File loadDialog(String title)
@@ -381,10 +813,11 @@ extends WindowFX
                 this.setText(null);
                 this.setGraphic(null);
 
+                FrameStats.cellUpdated();
                 Function func = this.getTableRow().getItem();
                 if (empty || item==null || func==null) return;
 
-                this.setText(String.format("%d", item));
+                this.setText(CellText.number(item));
             }
         };
         return tableCell;
@@ -398,17 +831,11 @@ extends WindowFX
                 this.setText(null);
                 this.setGraphic(null);
 
+                FrameStats.cellUpdated();
                 Function func = this.getTableRow().getItem();
                 if (empty || item==null || func==null) return;
 
-                switch (dataModel.getFunctionTimeScaler()) {
-                    case 2:
-                        this.setText(String.format("%.2f", item/1000));
-                        break;
-                    case 3:
-                        this.setText(String.format("%.0f", item));
-                        break;
-                }
+                this.setText(dataModel.getTimeText(func));
             }
         };
         return tableCell;
@@ -425,11 +852,12 @@ extends WindowFX
                 this.setText(null);
                 this.setGraphic(null);
 
+                FrameStats.cellUpdated();
                 SourceLine srcLine = this.getTableRow().getItem();
                 if (empty || item==null || srcLine==null) return;
 
                 if (srcLine.isCodeLine())
-                    this.setText(String.format("%d", item));
+                    this.setText(CellText.number(item));
             }
         };
         return tableCell;
@@ -443,11 +871,12 @@ extends WindowFX
                 this.setText(null);
                 this.setGraphic(null);
                 
+                FrameStats.cellUpdated();
                 SourceLine srcLine = this.getTableRow().getItem();
                 if (empty || item==null || srcLine==null) return;
                 
                 if (srcLine.isCodeLine() || srcLine.isHeader())
-                    this.setText(String.format("%d", item));
+                    this.setText(CellText.number(item));
             }
         };
         return tableCell;
@@ -461,22 +890,12 @@ extends WindowFX
                 this.setText(null);
                 this.setGraphic(null);
 
+                FrameStats.cellUpdated();
                 SourceLine srcLine = this.getTableRow().getItem();
                 if (empty || item==null || srcLine==null) return;
                 
-                if (srcLine.isCodeLine() || srcLine.isHeader()) {
-                    switch (dataModel.getSourceTimeScaler()) {
-                        case 1:
-                            this.setText(String.format("%.3f", item/1000000));
-                            break;
-                        case 2:
-                            this.setText(String.format("%.2f", item/1000));
-                            break;
-                        case 3:
-                            this.setText(String.format("%.0f", item));
-                            break;
-                    }
-                }
+                if (srcLine.isCodeLine() || srcLine.isHeader())
+                    this.setText(dataModel.getTimeText(srcLine));
             }
         };
         return tableCell;
@@ -490,25 +909,99 @@ extends WindowFX
                 this.setText(null);
                 this.setGraphic(null);
 
+                FrameStats.cellUpdated();
                 SourceLine srcLine = this.getTableRow().getItem();
                 if (empty || item==null || srcLine==null) return;
 
-                if (srcLine.isCodeLine() && srcLine.getLevel()>0) {
-                    String format=String.format("%%%ds%%s",srcLine.getLevel()*4);
-                    this.setText(String.format(format,"",item));
-                } else
+                if (srcLine.isCodeLine() && srcLine.getLevel()>0)
+                    this.setText(dataModel.getCodeText(srcLine));
+                else
                     this.setText(item);
             }
         };
         return tableCell;
     };
 
+    /**
+     * Cell factories of the differences to a baseline run
+     */
+    private Callback<TreeTableColumn<SourceLine, SourceLine>, TreeTableCell<SourceLine, SourceLine>> formatTreeDiff(Callback<SourceLine, String> text)
+    {
+        return (tableColumn) -> new TreeTableCell<>() {
+            @Override
+            protected void updateItem(SourceLine item, boolean empty) {
+                super.updateItem(item, empty);
+                this.setText(null);
+                this.setGraphic(null);
+
+                FrameStats.cellUpdated();
+                if (empty || item==null) return;
+
+                if (item.isCodeLine() || item.isHeader())
+                    this.setText(text.call(item));
+            }
+        };
+    }
+
+    private Callback<TableColumn<CallGraph.Call, Float>, TableCell<CallGraph.Call, Float>> formatCall(Callback<Float, String> text)
+    {
+        return (tableColumn) -> new TableCell<>() {
+            @Override
+            protected void updateItem(Float item, boolean empty) {
+                super.updateItem(item, empty);
+                this.setText(null);
+                this.setGraphic(null);
+
+                FrameStats.cellUpdated();
+                if (empty || item==null) return;
+
+                this.setText(text.call(item));
+            }
+        };
+    }
+
+    private <T> Callback<TableColumn<Function, T>, TableCell<Function, T>> formatCellDiff(Callback<Function, String> text)
+    {
+        return (tableColumn) -> new TableCell<>() {
+            @Override
+            protected void updateItem(T item, boolean empty) {
+                super.updateItem(item, empty);
+                this.setText(null);
+                this.setGraphic(null);
+
+                FrameStats.cellUpdated();
+                Function func = this.getTableRow().getItem();
+                if (empty || item==null || func==null) return;
+
+                this.setText(text.call(func));
+            }
+        };
+    }
+
     // ---------------------------------------------------------------------------------------- 
     //                          task helper functions
     // ---------------------------------------------------------------------------------------- 
+    /**
+     * The errand has loaded the program into a new source. It replaces the one,
+     * that has been shown until now.
+     */
     private void loadSourceSucceeded(WorkerStateEvent ev)
     {
-        Source.Mode mode = (Source.Mode) ev.getSource().getValue();
+        Source src = (Source) ev.getSource().getValue();
+        dataModel.setSource(src);
+        showSource(src.getMode());
+        watchFiles();
+        buildSearchIndex();
+        showSuccess("Data successfully loaded!");
+
+        LoadMetrics metrics = dataModel.getSource().getLoadMetrics();
+        lbMetrics.setText(metrics.getSummary());
+        if (loadMetrics != null && loadMetrics.isShowing())
+            loadMetrics.setMetrics(metrics);
+    }
+
+    private void showSource(Source.Mode mode)
+    {
         switch (mode) {
             case NODATA -> dataModel.modeProperty().set("Mode: No Data");
             case SOURCEONLY -> dataModel.modeProperty().set("Mode: Source only");
@@ -516,15 +1009,174 @@ extends WindowFX
             case SOURCEANDPROFILER -> dataModel.modeProperty().set("Mode: Source & Profiler Data");
         }
         
+        showProfileDiff(null);
+        dataModel.setRunStatistics(null);
+        menuStatistic.setDisable(true);
+
+        Source src = dataModel.getSource();
+        LoadMetrics.Phase phase = src.getLoadMetrics().begin("Profiler tree");
         dataModel.updateProfilerTree();
         SourceTree.setRoot(dataModel.getProfilerTree());
         SourceTree.setShowRoot(false);
+        phase.end(src.getSourceLineCnt(), 0);
+
+        phase = src.getLoadMetrics().begin("Function list");
         dataModel.updateFunctionList();
-        showSuccess("Data successfully loaded!");
+        phase.end(src.getFunctionList().size(), 0);
+
+        updateFlameChart();
+        updateHotspots(true);
+    }
+
+    /**
+     * Watch the files of the loaded program, if this is enabled in the menu.
+     */
+    private void watchFiles()
+    {
+        if (fileWatcher != null) {
+            fileWatcher.close();
+            fileWatcher = null;
+        }
+
+        Source src = dataModel.getSource();
+        if (!miWatch.isSelected() || src.getMode() == Source.Mode.NODATA) return;
+
+        List<File> files = src.getSourceFiles();
+        files.add(src.getProfilerLogFile());
+        try {
+            fileWatcher = new FileWatcher(files, this::filesChanged);
+        } catch (IOException ex) {
+            miWatch.setSelected(false);
+            showError("Files can't be watched: "+ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * A new profiler log of the same program is loaded into the source as it is,
+     * so only the values in the views have to be updated. Changes of the program
+     * itself require a full load.
+     */
+    private void filesChanged(Set<File> files)
+    {
+        Source src = dataModel.getSource();
+        File log = src.getProfilerLogFile();
+        if (src.getMode() == Source.Mode.SOURCEANDPROFILER && files.size() == 1 && files.contains(log)) {
+            execErrandLoadProfileRun(src, log, this::reloadProfileRunSucceeded, this::taskFailed);
+        } else {
+            String name = dataModel.getProgramName();
+            int pos=name.lastIndexOf('.');
+            if (pos != -1) name=name.substring(0,pos);
+
+            execErrandLoadSource(log.getParent(), name, this::loadSourceSucceeded, this::taskFailed);
+        }
+    }
+
+    private void reloadProfileRunSucceeded(WorkerStateEvent ev)
+    {
+        ProfileRun run = (ProfileRun) ev.getSource().getValue();
+        Source src = dataModel.getSource();
+        src.setProfileRun(run);
+        dataModel.refreshProfilerData();
+
+        ProfileDiff diff = dataModel.getProfileDiff();
+        if (diff != null)
+            dataModel.setProfileDiff(new ProfileDiff(diff.getBaseline(), src.getProfileRun(run.getName())));
+
+        if (dataModel.getRunStatistics() != null) {
+            dataModel.setRunStatistics(null);
+            menuStatistic.setDisable(true);
+            dataModel.modeProperty().set("Mode: Source & Profiler Data");
+        }
+
+        SourceTree.sort();
+        SourceTree.refresh();
+        tableFunctions.sort();
+        tableFunctions.refresh();
+        showCalls(tableFunctions.getSelectionModel().getSelectedItem());
+        updateFlameChart();
+        updateHotspots(false);
+        showSuccess(run.getName()+" successfully reloaded!");
+    }
+
+    private void loadRunStatisticsSucceeded(WorkerStateEvent ev)
+    {
+        dataModel.setRunStatistics((RunStatistics) ev.getSource().getValue());
+        menuStatistic.setDisable(false);
+        if (miStatLoaded.isSelected()) miStatMedian.setSelected(true);
+        showRunStatistic();
+        showSuccess(dataModel.getRunStatistics().getRunCnt()+" runs successfully merged!");
+    }
+
+    /**
+     * Show the selected statistic of several runs in all views.
+     */
+    private void showRunStatistic()
+    {
+        RunStatistics stats = dataModel.getRunStatistics();
+        if (stats == null) return;
+
+        Toggle item = groupStatistic.getSelectedToggle();
+        if (item == null) item = miStatMedian;
+
+        RunStatistics.Statistic stat;
+        if (item == miStatLoaded)      stat = null;
+        else if (item == miStatMean)   stat = RunStatistics.Statistic.MEAN;
+        else if (item == miStatStdDev) stat = RunStatistics.Statistic.STDDEV;
+        else if (item == miStatMin)    stat = RunStatistics.Statistic.MIN;
+        else if (item == miStatMax)    stat = RunStatistics.Statistic.MAX;
+        else if (item == miStatP90)    stat = RunStatistics.Statistic.P90;
+        else                           stat = RunStatistics.Statistic.MEDIAN;
+
+        showProfileDiff(null);
+        dataModel.applyRunStatistic(stat);
+        if (stat == null)
+            dataModel.modeProperty().set("Mode: Source & Profiler Data");
+        else
+            dataModel.modeProperty().set("Mode: Source & "+((RadioMenuItem) item).getText()+" of "+stats.getRunCnt()+" Runs");
+        dataModel.updateProfilerTree();
+        SourceTree.setRoot(dataModel.getProfilerTree());
+        SourceTree.setShowRoot(false);
+        dataModel.updateFunctionList();
+        updateFlameChart();
+        updateHotspots(false);
+    }
+
+    private void loadProfileDiffSucceeded(WorkerStateEvent ev)
+    {
+        ProfileDiff diff = (ProfileDiff) ev.getSource().getValue();
+        showProfileDiff(diff);
+        showSuccess("Compared "+diff.getCandidate().getName()+" with baseline "+diff.getBaseline().getName());
+    }
+
+    /**
+     * Show or hide the differences to a baseline run.
+     */
+    private void showProfileDiff(ProfileDiff diff)
+    {
+        SourceTree.getSortOrder().clear();
+        tableFunctions.getSortOrder().remove(colFuncDiffCalls);
+        tableFunctions.getSortOrder().remove(colFuncDiffTime);
+        tableFunctions.getSortOrder().remove(colFuncDiffPercent);
+        dataModel.setProfileDiff(diff);
+
+        boolean visible = diff != null;
+        colDiffCalls.setVisible(visible);
+        colDiffTime.setVisible(visible);
+        colDiffPercent.setVisible(visible);
+        colFuncDiffCalls.setVisible(visible);
+        colFuncDiffTime.setVisible(visible);
+        colFuncDiffPercent.setVisible(visible);
+        SourceTree.refresh();
+        tableFunctions.refresh();
     }
 
     private void taskFailed(WorkerStateEvent ev)
     {
+        if (ev.getEventType() == WorkerStateEvent.WORKER_STATE_CANCELLED) {
+            showMessage("Loading cancelled");
+            return;
+        }
+
         Throwable ex = ev.getSource().getException();
         String errormsg = ex == null ? "Loading of data failed!" : ex.getLocalizedMessage();
         showError(errormsg);
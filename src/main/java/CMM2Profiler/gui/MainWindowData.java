@@ -16,10 +16,19 @@
  */
 package CMM2Profiler.gui;
 
+import CMM2Profiler.core.CallGraph;
 import CMM2Profiler.core.Function;
+import CMM2Profiler.core.ProfileAggregates;
+import CMM2Profiler.core.ProfileDiff;
+import CMM2Profiler.core.ProfileRun;
+import CMM2Profiler.core.RunStatistics;
 import CMM2Profiler.core.Source;
 import CMM2Profiler.core.SourceFile;
 import CMM2Profiler.core.SourceLine;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
@@ -39,77 +48,523 @@ public class MainWindowData
 
     private final ObservableList<Function> functionList =  FXCollections.observableArrayList();
     
-    protected Source mainSource = new Source();
+    private Source mainSource = new Source();       // swapped as a whole, see setSource()
     private TreeItem<SourceLine> treeRoot=null;
-    private int SourceTimeScaler;
-    private int FunctionTimeScaler;
+    private TreeItem<SourceLine>[] treeIndex=null;     // tree item of each source line
+    private final ArrayList<TreeItem<SourceLine>> fileItems = new ArrayList<>();
+
+    // lines below a share of the total are hidden in the tree, see setTreeThreshold()
+    private ProfileAggregates aggregates=null;
+    private ProfileAggregates.Metric thresholdMetric = ProfileAggregates.Metric.TOTAL_TIME;
+    private double thresholdShare=0;
+    private SourceLine keptLine=null;       // shown below the threshold, see keepTreeLine()
+
+    // display strings of the tree table and the function table, the index is the time scaler
+    private final CellText sourceText = new CellText(
+            new String[] {null, "0.000", "0.00", "0"}, new float[] {1f, 1000000f, 1000f, 1f});
+    private final CellText functionText = new CellText(
+            new String[] {null, null, "0.00", "0"}, new float[] {1f, 1f, 1000f, 1f});
+
+    // call graph of the functions, it is created when it is needed first
+    private CallGraph callGraph=null;
+    private final ObservableList<CallGraph.Call> callerList = FXCollections.observableArrayList();
+    private final ObservableList<CallGraph.Call> calleeList = FXCollections.observableArrayList();
+    private final CellText callText = new CellText(
+            new String[] {null, null, "0.00", "0"}, new float[] {1f, 1f, 1000f, 1f});
+
+    // statistics of several runs, one of them is applied to the source instead of the loaded run
+    private RunStatistics runStatistics=null;
+    private ProfileRun loadedRun=null;
+
+    // differences to a baseline run, the delta strings are shared by both tables
+    private ProfileDiff profileDiff=null;
+    private final CellText sourceDiffText = new CellText(
+            new String[] {null, "+0.000;-0.000", "+0.00;-0.00", "+0;-0"}, new float[] {1f, 1000000f, 1000f, 1f});
+    private final CellText functionDiffText = new CellText(
+            new String[] {null, null, "+0.00;-0.00", "+0;-0"}, new float[] {1f, 1f, 1000f, 1f});
+    private final CellText callsDiffText = new CellText(new String[] {"+0;-0"}, new float[] {1f});
+    private final CellText percentDiffText = new CellText(new String[] {"+0.0;-0.0"}, new float[] {1f});
     
     public MainWindowData()
     {
-        SourceTimeScaler = 1;
-        FunctionTimeScaler = 2;
+        sourceText.setScaler(1);
+        functionText.setScaler(2);
+        callText.setScaler(2);
+        sourceDiffText.setScaler(1);
+        functionDiffText.setScaler(2);
     }
 
     public String getProgramName()            { return programName.get(); }
     public void   setProgramName(String name) { programName.set(name); }
+
+    public Source getSource()                 { return mainSource; }
+
+    /**
+     * Swap in a newly loaded source. The source is loaded completely by an errand
+     * and isn't changed by it afterwards. The previous source stays untouched, so
+     * the views keep working on it until this swap. Everything derived from the
+     * previous source is dropped, the profiler tree and the function list must be
+     * updated afterwards. Must be called on the FX application thread.
+     */
+    public void setSource(Source src)
+    {
+        mainSource = src;
+        programName.set(src.getProgramName());
+        sourceText.reset(src.getSourceLineCnt());
+        functionText.reset(src.getSourceLineCnt());
+        callGraph = null;
+        runStatistics = null;
+        setProfileDiff(null);
+    }
     
-    public int    getSourceTimeScaler()          { return SourceTimeScaler; }
-    public void   setSourceTimeScaler(int scale) { SourceTimeScaler = scale; }
+    public int    getSourceTimeScaler()          { return sourceText.getScaler(); }
+    public void   setSourceTimeScaler(int scale) { sourceText.setScaler(scale); sourceDiffText.setScaler(scale); }
 
-    public int    getFunctionTimeScaler()          { return FunctionTimeScaler; }
-    public void   setFunctionTimeScaler(int scale) { FunctionTimeScaler = scale; }
+    public int    getFunctionTimeScaler()          { return functionText.getScaler(); }
+    public void   setFunctionTimeScaler(int scale) { functionText.setScaler(scale); functionDiffText.setScaler(scale); callText.setScaler(scale); }
 
     // Convinience Functions to access data model of Function List GUI element
     public ObservableList<Function> getFunctionList() { return functionList; }
     public void updateFunctionList()
     {
+        functionText.reset(mainSource.getSourceLineCnt());
         functionList.clear();
         functionList.addAll(mainSource.getFunctionList());
+        updateCallLists(null);
+        callGraph = null;
+    }
+
+    /**
+     * Display strings of the table cells. They are created once per line and
+     * cached until the time scaler changes or the next program is loaded.
+     */
+    public String getTimeText(SourceLine srcLine)
+    {
+        return sourceText.value(mainSource.indexOf(srcLine), srcLine.getTime());
+    }
+
+    public String getTimeText(Function func)
+    {
+        return functionText.value(mainSource.indexOf(func.getData()), func.getTime());
+    }
+
+    public String getCodeText(SourceLine srcLine)
+    {
+        return sourceText.code(mainSource.indexOf(srcLine), srcLine.getLevel(), srcLine.getSource());
+    }
+
+    /**
+     * Drop the display strings of the profiler data, after the data of the
+     * loaded source has been changed in place. The tree and the function list
+     * stay as they are.
+     */
+    public void refreshProfilerData()
+    {
+        sourceText.reset(mainSource.getSourceLineCnt());
+        functionText.reset(mainSource.getSourceLineCnt());
+        callGraph = null;
+        aggregates = mainSource.createAggregates();
+        keptLine = null;
+        filterProfilerTree();
+    }
+
+    // Convinience Functions to access the call graph
+    public ObservableList<CallGraph.Call> getCallerList() { return callerList; }
+    public ObservableList<CallGraph.Call> getCalleeList() { return calleeList; }
+
+    public CallGraph getCallGraph()
+    {
+        if (callGraph == null)
+            callGraph = mainSource.createCallGraph();
+        return callGraph;
+    }
+
+    /**
+     * Show the callers and the callees of a function or nothing with null.
+     */
+    public void updateCallLists(Function func)
+    {
+        callerList.clear();
+        calleeList.clear();
+        if (func == null) return;
+
+        CallGraph graph = getCallGraph();
+        int node = graph.indexOf(func);
+        callerList.addAll(graph.getCallers(node));
+        calleeList.addAll(graph.getCallees(node));
+    }
+
+    /**
+     * @return Total time of a call in the unit of the function table, it isn't cached
+     */
+    public String getCallTimeText(float time)
+    {
+        return callText.value(-1, time);
+    }
+
+    // Convinience Functions to access the statistics of several runs
+    public RunStatistics getRunStatistics()                  { return runStatistics; }
+
+    /**
+     * Set the statistics of several runs or remove them with null. The profiler
+     * data of the source is kept, when statistics are set first, so it can be
+     * restored. It is dropped with the statistics.
+     */
+    public void setRunStatistics(RunStatistics stat)
+    {
+        runStatistics = stat;
+        if (stat == null)
+            loadedRun = null;
+        else if (loadedRun == null)
+            loadedRun = mainSource.getProfileRun(mainSource.getProfilerLogFile().getName());
+    }
+
+    /**
+     * Replace the profiler data of the source by a statistic of the runs. The
+     * profiler tree and the function list must be updated afterwards.
+     *
+     * @param stat  Statistic to apply or null to restore the loaded run
+     */
+    public void applyRunStatistic(RunStatistics.Statistic stat)
+    {
+        if (runStatistics != null)
+            mainSource.setProfileRun(stat != null ? runStatistics.toProfileRun(stat) : loadedRun);
+    }
+
+    // Convinience Functions to access the differences to a baseline run
+    public ProfileDiff getProfileDiff() { return profileDiff; }
+
+    /**
+     * Set the differences to a baseline run or remove them with null. They must
+     * belong to the loaded source.
+     */
+    public void setProfileDiff(ProfileDiff diff)
+    {
+        profileDiff = diff;
+        int lines = diff == null ? 0 : diff.size();
+        sourceDiffText.reset(lines);
+        functionDiffText.reset(lines);
+        callsDiffText.reset(lines);
+        percentDiffText.reset(lines);
+    }
+
+    public int getCallsDelta(Function func)
+    {
+        int idx = diffIndexOf(func.getData());
+        return idx < 0 ? 0 : profileDiff.getCallsDelta(idx);
+    }
+
+    public float getTimeDelta(Function func)
+    {
+        int idx = diffIndexOf(func.getData());
+        return idx < 0 ? 0 : profileDiff.getTimeDelta(idx);
+    }
+
+    public float getTimePercent(Function func)
+    {
+        int idx = diffIndexOf(func.getData());
+        return idx < 0 ? 0 : profileDiff.getTimePercent(idx);
+    }
+
+    public String getCallsDiffText(SourceLine srcLine)
+    {
+        int idx = diffIndexOf(srcLine);
+        return idx < 0 ? null : callsDiffText.value(idx, profileDiff.getCallsDelta(idx));
+    }
+
+    public String getTimeDiffText(SourceLine srcLine)
+    {
+        int idx = diffIndexOf(srcLine);
+        if (idx >= 0) return sourceDiffText.value(idx, profileDiff.getTimeDelta(idx));
+
+        int file = diffFileOf(srcLine);
+        return file < 0 ? null : sourceDiffText.value(-1, profileDiff.getFileTimeDelta(file));
+    }
+
+    public String getTimeDiffText(Function func)
+    {
+        int idx = diffIndexOf(func.getData());
+        return idx < 0 ? null : functionDiffText.value(idx, profileDiff.getTimeDelta(idx));
+    }
+
+    public String getPercentDiffText(SourceLine srcLine)
+    {
+        float percent;
+
+        int idx = diffIndexOf(srcLine);
+        int file = idx < 0 ? diffFileOf(srcLine) : -1;
+        if (idx >= 0)
+            percent = profileDiff.getTimePercent(idx);
+        else if (file >= 0)
+            percent = profileDiff.getFileTimePercent(file);
+        else
+            return null;
+
+        return Float.isNaN(percent) ? "new" : percentDiffText.value(idx, percent);
+    }
+
+    private int diffIndexOf(SourceLine srcLine)
+    {
+        if (profileDiff == null) return -1;
+        int idx = mainSource.indexOf(srcLine);
+        return idx < profileDiff.size() ? idx : -1;
+    }
+
+    /**
+     * @return Position of the source file with this header line in the
+     *         structure map or -1
+     */
+    private int diffFileOf(SourceLine header)
+    {
+        if (profileDiff == null || !header.isHeader()) return -1;
+
+        int file = 0;
+        for (SourceFile srcFile : mainSource.getStructureMap()) {
+            if (header.equals(srcFile.getSource()))
+                return file < profileDiff.getBaseline().getFileCnt() ? file : -1;
+            file++;
+        }
+        return -1;
     }
     
     // Convinience Functions to access data model of Profiler Tree Table View
     public TreeItem<SourceLine> getProfilerTree() { return treeRoot; }
+
+    /**
+     * Create the profiler tree. Only the root and the items of the source files are
+     * created here. The lines of a file and the bodies of the functions are added
+     * when their item is expanded for the first time.
+     */
+    @SuppressWarnings("unchecked")
     public void updateProfilerTree()
     {
         SourceLine header;
 
+        treeRoot = null;
+        treeIndex = (TreeItem<SourceLine>[]) new TreeItem<?>[mainSource.getSourceLineCnt()];
+        sourceText.reset(mainSource.getSourceLineCnt());
+
         header = SourceLine.createSourceHeader(programName.get());
         TreeItem<SourceLine> root = new TreeItem<>(header);
         
+        fileItems.clear();
         for (SourceFile srcFile : mainSource.getStructureMap()) {
             header = srcFile.getSource();
-//            header = SourceLine.createSourceHeader(idx++ == 0 ? "Main" : srcFile.getPath());
-            TreeItem<SourceLine> include = new TreeItem<>(header);
-            root.getChildren().add(include);
-            
-            boolean processEndFunction=false;
-            TreeItem<SourceLine> parent = include;
-            for (int lineno = srcFile.getFirstLine(); lineno<srcFile.getLastLine(); lineno++) {
-                SourceLine srcLine = mainSource.getSourceLine(lineno);
-                TreeItem<SourceLine> codeLine = new TreeItem<>(srcLine);
-
-                if (processEndFunction) {
-                    if (!srcLine.isEmpty()) {
-                        parent = include;
-                        processEndFunction=false;
-                    }
-                }
-                
-                parent.getChildren().add(codeLine);
-
-                if (srcLine.isFunction()) {
-                    parent = codeLine;
-                } else if (srcLine.isEndFunction()) {
-                    processEndFunction=true;
-                }
-            }
+            fileItems.add(new LazyTreeItem(header, srcFile.getFirstLine(), srcFile.getLastLine(), this::createFileItems));
         }
+        root.getChildren().setAll(fileItems);
         treeRoot=root;
+
+        aggregates = mainSource.createAggregates();
+        filterProfilerTree();
+    }
+
+    /**
+     * Hide the lines, functions and files of the profiler tree, whose largest
+     * value is below a share of the total. A function or file stays visible, as
+     * long as one of its lines reaches the share. Only the items, that are shown,
+     * are checked at once, the others when they are expanded.
+     *
+     * @param metric  Total time or calls
+     * @param share   Share of the total, e.g. 0.01 for 1%, or 0 to show all lines
+     */
+    public void setTreeThreshold(ProfileAggregates.Metric metric, double share)
+    {
+        thresholdMetric = metric;
+        thresholdShare = share;
+        keptLine = null;
+        filterProfilerTree();
+    }
+
+    /**
+     * Show a line and its function and file, even if they are below the
+     * threshold, e.g. the line of a search hit. Only the last line is kept,
+     * until the threshold changes. The children of the file and the function
+     * are updated, so the line is linked to its parents before they are expanded.
+     *
+     * @param target  Line to show
+     */
+    public void keepTreeLine(SourceLine target)
+    {
+        if (target != keptLine) {
+            boolean refilter = isBelowThreshold(keptLine) || isBelowThreshold(target);
+            keptLine = target;
+            if (refilter) filterProfilerTree();
+        }
+
+        int idx = mainSource.indexOf(target);
+        if (idx < 0) return;
+        for (TreeItem<SourceLine> include : fileItems) {
+            if (!((LazyTreeItem) include).contains(idx)) continue;
+            for (TreeItem<SourceLine> child : include.getChildren())
+                if (child instanceof LazyTreeItem && ((LazyTreeItem) child).contains(idx)) child.getChildren();
+        }
+    }
+
+    private boolean isBelowThreshold(SourceLine srcLine)
+    {
+        if (srcLine == null || treeRoot == null || thresholdShare <= 0) return false;
+
+        double threshold = aggregates.getThreshold(thresholdMetric, thresholdShare);
+        int idx = mainSource.indexOf(srcLine);
+        if (idx >= 0) return aggregates.getValue(idx, thresholdMetric) < threshold;
+
+        for (int file=0; file < fileItems.size(); file++)
+            if (srcLine.equals(fileItems.get(file).getValue()))
+                return aggregates.getFileValue(file, thresholdMetric) < threshold;
+        return false;
+    }
+
+    private void filterProfilerTree()
+    {
+        if (treeRoot == null) return;
+
+        Predicate<TreeItem<SourceLine>> filter = null;
+        ArrayList<TreeItem<SourceLine>> shown = new ArrayList<>(fileItems);
+        if (thresholdShare > 0) {
+            ProfileAggregates values = aggregates;
+            ProfileAggregates.Metric metric = thresholdMetric;
+            double threshold = values.getThreshold(metric, thresholdShare);
+
+            SourceLine keep = keptLine;
+            int kept = keep == null ? -1 : mainSource.indexOf(keep);
+
+            filter = item -> values.getValue(mainSource.indexOf(item.getValue()), metric) >= threshold
+                                || isKept(item, keep, kept);
+            shown.clear();
+            for (int file=0; file < fileItems.size(); file++)
+                if (values.getFileValue(file, metric) >= threshold || isKept(fileItems.get(file), keep, kept))
+                    shown.add(fileItems.get(file));
+        }
+
+        if (!shown.equals(treeRoot.getChildren()))
+            treeRoot.getChildren().setAll(shown);
+        for (TreeItem<SourceLine> include : fileItems)
+            ((LazyTreeItem) include).filter(filter);
+    }
+
+    /**
+     * The item of the kept line or a file or function, that contains it.
+     */
+    private static boolean isKept(TreeItem<SourceLine> item, SourceLine keep, int kept)
+    {
+        if (keep == null) return false;
+        if (keep.equals(item.getValue())) return true;
+        return kept >= 0 && item instanceof LazyTreeItem && ((LazyTreeItem) item).contains(kept);
+    }
+
+    /**
+     * Create the items of a source file. A function becomes an item of its own,
+     * with the lines up to its END SUB or END FUNCTION and the following empty
+     * lines as children.
+     */
+    private List<TreeItem<SourceLine>> createFileItems(LazyTreeItem include)
+    {
+        ArrayList<TreeItem<SourceLine>> items = new ArrayList<>();
+        int last = include.getLast();
+
+        for (int lineno = include.getFirst(); lineno <= last; lineno++) {
+            SourceLine srcLine = mainSource.getSourceLine(lineno);
+            TreeItem<SourceLine> codeLine;
+
+            if (srcLine.isFunction()) {
+                int end = lineno+1;
+                while (end < last && !mainSource.getSourceLine(end).isEndFunction()) end++;
+                while (end < last && mainSource.getSourceLine(end+1).isEmpty()) end++;
+
+                codeLine = new LazyTreeItem(srcLine, lineno+1, Math.min(end, last), this::createFunctionItems);
+                lineno = end;
+            } else
+                codeLine = new TreeItem<>(srcLine);
+
+            treeIndex[mainSource.indexOf(srcLine)] = codeLine;
+            items.add(codeLine);
+        }
+        return items;
+    }
+
+    private List<TreeItem<SourceLine>> createFunctionItems(LazyTreeItem function)
+    {
+        ArrayList<TreeItem<SourceLine>> items = new ArrayList<>(function.getLast() - function.getFirst() + 1);
+        for (int lineno = function.getFirst(); lineno <= function.getLast(); lineno++) {
+            TreeItem<SourceLine> codeLine = new TreeItem<>(mainSource.getSourceLine(lineno));
+            treeIndex[lineno] = codeLine;
+            items.add(codeLine);
+        }
+        return items;
+    }
+
+    /**
+     * Get the tree item of a source line. Lines of the source are looked up by
+     * their index. If the item hasn't been created yet, the items of its file
+     * and its function will be created.
+     *
+     * @param target  Line to look for
+     * @return Tree item or null, if the line is not part of the tree
+     */
+    public TreeItem<SourceLine> getTreeItem(SourceLine target)
+    {
+        if (treeRoot == null) return null;
+
+        int idx = mainSource.indexOf(target);
+        if (idx < 0) {
+            // header lines of the program and the source files
+            if (target.equals(treeRoot.getValue())) return treeRoot;
+            for (TreeItem<SourceLine> include : fileItems)
+                if (target.equals(include.getValue())) return include;
+            return null;
+        }
+        if (idx >= treeIndex.length) return null;
+
+        if (treeIndex[idx] == null) {
+            for (TreeItem<SourceLine> include : fileItems)
+                if (((LazyTreeItem) include).contains(idx)) include.getChildren();
+        }
+        if (treeIndex[idx] == null) {
+            // the line is part of a function body, look for the function header
+            for (int lineno = idx-1; lineno >= 0; lineno--) {
+                TreeItem<SourceLine> item = treeIndex[lineno];
+                if (item == null) continue;
+
+                if (item instanceof LazyTreeItem && ((LazyTreeItem) item).contains(idx))
+                    item.getChildren();
+                break;
+            }
+        }
+        return treeIndex[idx];
+    }
+
+    /**
+     * Sort the lines of each file and function by a rank, e.g. the rank of the
+     * time deltas to a baseline run. The files keep their order. Items, that
+     * haven't been created yet, are sorted when they are created.
+     *
+     * @param rank        Rank of each line in the full source context, or null
+     *                    for the order of the source
+     * @param descending  Sort the line with rank 0 first, e.g. the largest
+     *                    regression
+     */
+    public void sortProfilerTree(int[] rank, boolean descending)
+    {
+        if (treeRoot == null) return;
+
+        Comparator<TreeItem<SourceLine>> order;
+        if (rank == null)
+            order = Comparator.comparingInt(item -> mainSource.indexOf(item.getValue()));
+        else
+            order = Comparator.comparingInt(item -> rank[mainSource.indexOf(item.getValue())]);
+        if (rank != null && !descending) order = order.reversed();
+
+        for (TreeItem<SourceLine> include : fileItems)
+            ((LazyTreeItem) include).sort(order);
     }
 
+    /**
+     * Search a subtree for a line. All items of the subtree will be created.
+     */
     public TreeItem<SourceLine> findTreeItem (TreeItem<SourceLine> node, SourceLine target)
     {
-        if (node.getValue() == target)
+        if (target.equals(node.getValue()))
             return node;
 
         for (TreeItem<SourceLine> child : node.getChildren()) {
@@ -85,6 +85,14 @@ extends Dialog<Void>
         vbox.getChildren().add(0, contentText);
         contentText.textProperty().bind(dialogPane.contentTextProperty());
         dialogPane.setContent(vbox);
+
+        // The cancel button closes the dialog and cancels the worker. Closing the
+        // dialog after the worker has finished must not cancel it.
+        dialogPane.getButtonTypes().add(ButtonType.CANCEL);
+        setOnCloseRequest(ev -> {
+            if (worker.getState() == State.SCHEDULED || worker.getState() == State.RUNNING)
+                worker.cancel();
+        });
     }
     
     /**************************************************************************
@@ -16,8 +16,14 @@
  */
 package CMM2Profiler.utils;
 
+import CMM2Profiler.core.ProfileDiff;
+import CMM2Profiler.core.ProfileRun;
+import CMM2Profiler.core.RunStatistics;
+import CMM2Profiler.core.SearchIndex;
 import CMM2Profiler.core.Source;
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.EventHandler;
 
@@ -27,14 +33,25 @@ import javafx.event.EventHandler;
  */
 public class ErrandFactory
 {
-    public static Errand<Source.Mode> loadSourceErrand(Source src, String filePath, String fileName,
+    // errand, that is loading a source for the main window, see supersede()
+    private static Errand<?> sourceErrand;
+    // errand, that is reloading the profiler log of the shown source, see refresh()
+    private static Errand<?> refreshErrand;
+
+    /**
+     * Load a program into a new source. The source, that is shown, isn't touched,
+     * the new one is the value of the errand.
+     */
+    public static Errand<Source> loadSourceErrand(String filePath, String fileName,
                                         EventHandler<WorkerStateEvent> onSuccess,
                                         EventHandler<WorkerStateEvent> onFailure)
     {
-        Errand<Source.Mode> E = new Errand<>() {
+        Errand<Source> E = new Errand<>() {
                 @Override 
-                protected Source.Mode call() throws IOException {
-                    return src.load(filePath, fileName);
+                protected Source call() throws IOException {
+                    Source src = new Source();
+                    src.load(filePath, fileName);
+                    return src;
                 }};
         
         E.setOnSucceeded(onSuccess);
@@ -43,11 +60,194 @@ public class ErrandFactory
         return E;
     }
     
-    public static void execErrandLoadSource(Source src, String filePath, String fileName,
+    /**
+     * Load a program with a progress dialog, that can cancel the load. A load,
+     * that is still running, is cancelled and superseded by this one.
+     */
+    public static void execErrandLoadSource(String filePath, String fileName,
                                         EventHandler<WorkerStateEvent> onSuccess,
                                         EventHandler<WorkerStateEvent> onFailure)
     {
-        loadSourceErrand(src, filePath, fileName, onSuccess, onFailure).execute();
+        Errand<Source> E = supersede(loadSourceErrand(filePath, fileName, onSuccess, onFailure),
+                                     onSuccess, onFailure);
+        E.withProgressDialog("Loading "+fileName+" ...");
+        E.execute();
+    }
+
+    /**
+     * Load the profiler log of the loaded source again, e.g. after the program
+     * has been run once more.
+     */
+    public static Errand<ProfileRun> loadProfileRunErrand(Source src, File log,
+                                        EventHandler<WorkerStateEvent> onSuccess,
+                                        EventHandler<WorkerStateEvent> onFailure)
+    {
+        Errand<ProfileRun> E = new Errand<>() {
+                @Override 
+                protected ProfileRun call() throws IOException {
+                    return src.loadProfileRun(log);
+                }};
+        
+        E.setOnSucceeded(onSuccess);
+        E.setOnFailed(onFailure);
+        E.setOnCancelled(onFailure);
+        return E;
+    }
+
+    /**
+     * Reload the profiler log of the shown source in the background. A reload,
+     * that is still running, is superseded by this one. While a source is being
+     * loaded, the reload is skipped, so it never cancels a load the user asked
+     * for. The new source brings its own profiler data.
+     */
+    public static void execErrandLoadProfileRun(Source src, File log,
+                                        EventHandler<WorkerStateEvent> onSuccess,
+                                        EventHandler<WorkerStateEvent> onFailure)
+    {
+        Errand<ProfileRun> E = refresh(loadProfileRunErrand(src, log, onSuccess, onFailure), onSuccess, onFailure);
+        if (E != null) E.execute();
+    }
+
+    /**
+     * Load a baseline profiler log and compare it with the profiler data of the
+     * loaded source. The candidate is taken from the source by the caller, so the
+     * profiler data of the source isn't read by the errand.
+     */
+    public static Errand<ProfileDiff> loadProfileDiffErrand(Source src, File baseline, ProfileRun candidate,
+                                        EventHandler<WorkerStateEvent> onSuccess,
+                                        EventHandler<WorkerStateEvent> onFailure)
+    {
+        Errand<ProfileDiff> E = new Errand<>() {
+                @Override 
+                protected ProfileDiff call() throws IOException {
+                    return new ProfileDiff(src.loadProfileRun(baseline), candidate);
+                }};
+        
+        E.setOnSucceeded(onSuccess);
+        E.setOnFailed(onFailure);
+        E.setOnCancelled(onFailure);
+        return E;
+    }
+
+    public static void execErrandLoadProfileDiff(Source src, File baseline, ProfileRun candidate,
+                                        EventHandler<WorkerStateEvent> onSuccess,
+                                        EventHandler<WorkerStateEvent> onFailure)
+    {
+        loadProfileDiffErrand(src, baseline, candidate, onSuccess, onFailure).execute();
+    }
+
+    /**
+     * Load several profiler logs of the loaded source and merge them into
+     * statistics. Each run is folded in, as soon as it has been read.
+     */
+    public static Errand<RunStatistics> loadRunStatisticsErrand(Source src, List<File> logs,
+                                        EventHandler<WorkerStateEvent> onSuccess,
+                                        EventHandler<WorkerStateEvent> onFailure)
+    {
+        Errand<RunStatistics> E = new Errand<>() {
+                @Override 
+                protected RunStatistics call() throws IOException {
+                    RunStatistics stats = new RunStatistics(src.getSourceLineCnt(), src.getStructureMap().size());
+                    src.loadProfileRuns(logs, stats::add);
+                    return stats;
+                }};
+        
+        E.setOnSucceeded(onSuccess);
+        E.setOnFailed(onFailure);
+        E.setOnCancelled(onFailure);
+        return E;
+    }
+
+    public static void execErrandLoadRunStatistics(Source src, List<File> logs,
+                                        EventHandler<WorkerStateEvent> onSuccess,
+                                        EventHandler<WorkerStateEvent> onFailure)
+    {
+        loadRunStatisticsErrand(src, logs, onSuccess, onFailure).execute();
+    }
+
+    /**
+     * Build the search index of a loaded source in the background.
+     */
+    public static Errand<SearchIndex> buildSearchIndexErrand(Source src,
+                                        EventHandler<WorkerStateEvent> onSuccess,
+                                        EventHandler<WorkerStateEvent> onFailure)
+    {
+        Errand<SearchIndex> E = new Errand<>() {
+                @Override
+                protected SearchIndex call() {
+                    return src.createSearchIndex();
+                }};
+
+        E.setOnSucceeded(onSuccess);
+        E.setOnFailed(onFailure);
+        E.setOnCancelled(onFailure);
+        return E;
+    }
+
+    public static void execErrandBuildSearchIndex(Source src,
+                                        EventHandler<WorkerStateEvent> onSuccess,
+                                        EventHandler<WorkerStateEvent> onFailure)
+    {
+        buildSearchIndexErrand(src, onSuccess, onFailure).execute();
+    }
+
+    /**
+     * Only one errand at a time loads a source for the main window. A running
+     * one is cancelled and the events of a superseded errand are dropped, even
+     * if it has finished already, so its data never reaches the views. A reload
+     * of the profiler log is dropped as well, it belongs to the previous source.
+     * Errands are only started and report their events on the FX application
+     * thread.
+     */
+    private static <V> Errand<V> supersede(Errand<V> E,
+                                        EventHandler<WorkerStateEvent> onSuccess,
+                                        EventHandler<WorkerStateEvent> onFailure)
+    {
+        if (sourceErrand != null) sourceErrand.cancel();
+        if (refreshErrand != null) refreshErrand.cancel();
+        sourceErrand = E;
+        refreshErrand = null;
+        return report(E, onSuccess, onFailure);
+    }
+
+    /**
+     * Only one errand at a time reloads the profiler log of the shown source,
+     * like supersede() does for the sources. No reload is started, while a
+     * source is being loaded.
+     *
+     * @return The errand to execute or null, if the reload is skipped
+     */
+    private static <V> Errand<V> refresh(Errand<V> E,
+                                        EventHandler<WorkerStateEvent> onSuccess,
+                                        EventHandler<WorkerStateEvent> onFailure)
+    {
+        if (sourceErrand != null) return null;
+
+        if (refreshErrand != null) refreshErrand.cancel();
+        refreshErrand = E;
+        return report(E, onSuccess, onFailure);
+    }
+
+    private static <V> Errand<V> report(Errand<V> E,
+                                        EventHandler<WorkerStateEvent> onSuccess,
+                                        EventHandler<WorkerStateEvent> onFailure)
+    {
+        E.setOnSucceeded(ev -> { if (finish(E)) onSuccess.handle(ev); });
+        E.setOnFailed(ev -> { if (finish(E)) onFailure.handle(ev); });
+        E.setOnCancelled(ev -> { if (finish(E)) onFailure.handle(ev); });
+        return E;
+    }
+
+    private static boolean finish(Errand<?> E)
+    {
+        if (sourceErrand == E) {
+            sourceErrand = null;
+            return true;
+        }
+        if (refreshErrand == E) {
+            refreshErrand = null;
+            return true;
+        }
+        return false;
     }
-    
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.utils;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the tasks of an executor: the tasks waiting in the queue, the
+ * running tasks and the latency of the finished ones. The latency of a task is
+ * the time from its submission to its end, split into the time waited in the
+ * queue and the time it has run.
+ *
+ * @author Matthias Grimm
+ */
+public final class ExecutorStats
+{
+    private final String name;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+    private final AtomicLong runTime = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    public ExecutorStats(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * A task has been submitted.
+     *
+     * @return Time stamp of the submission
+     */
+    long submitted()
+    {
+        queued.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * A task leaves the queue and starts.
+     *
+     * @return Time stamp of the start
+     */
+    long started(long submitTime)
+    {
+        long now = System.nanoTime();
+        queued.decrementAndGet();
+        active.incrementAndGet();
+        waitTime.addAndGet(now - submitTime);
+        return now;
+    }
+
+    /**
+     * A task has finished or failed.
+     */
+    void finished(long submitTime, long startTime)
+    {
+        long now = System.nanoTime();
+        active.decrementAndGet();
+        completed.incrementAndGet();
+        runTime.addAndGet(now - startTime);
+        maxLatency.accumulateAndGet(now - submitTime, Math::max);
+    }
+
+    /**
+     * A task has been removed from the queue without running, e.g. on a shutdown.
+     */
+    void dropped()
+    {
+        queued.decrementAndGet();
+    }
+
+    public String getName()     { return name; }
+    public int getQueued()      { return queued.get(); }
+    public int getActive()      { return active.get(); }
+    public long getCompleted()  { return completed.get(); }
+
+    /**
+     * @return Mean time in ms, that a finished task has waited in the queue
+     */
+    public double getMeanWait()
+    {
+        long cnt = completed.get();
+        return cnt == 0 ? 0 : waitTime.get() / 1e6 / cnt;
+    }
+
+    /**
+     * @return Mean time in ms, that a finished task has run
+     */
+    public double getMeanRun()
+    {
+        long cnt = completed.get();
+        return cnt == 0 ? 0 : runTime.get() / 1e6 / cnt;
+    }
+
+    /**
+     * @return Longest time in ms from the submission to the end of a task
+     */
+    public double getMaxLatency()
+    {
+        return maxLatency.get() / 1e6;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(Locale.US, "%-8s queued %3d  active %3d  done %6d  wait %8.2f ms  run %8.2f ms  max %8.2f ms",
+                name, getQueued(), getActive(), getCompleted(), getMeanWait(), getMeanRun(), getMaxLatency());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+
+/**
+ * Watches a set of files for changes. The directories of the files are registered
+ * with a WatchService. Changes are collected until the files have been quiet for a
+ * moment, because a file is often written in several steps, e.g. when it is copied
+ * from the CMM2 SD card. The changed files are then handed over to the listener
+ * on the JavaFX application thread.
+ *
+ * @author Matthias Grimm
+ */
+public class FileWatcher
+implements AutoCloseable
+{
+    private static final long QUIET_TIME = 500;     // ms
+
+    private final Set<Path> files = new HashSet<>();
+    private final Consumer<Set<File>> listener;
+    private final WatchService watcher;
+    private final Thread thread;
+
+    /**
+     * Start to watch the files.
+     *
+     * @param files     Files to watch
+     * @param listener  Will be called with the changed files on the JavaFX application thread
+     * @throws IOException  if a directory can't be watched
+     */
+    public FileWatcher(Collection<File> files, Consumer<Set<File>> listener) throws IOException
+    {
+        this.listener = listener;
+        this.watcher = FileSystems.getDefault().newWatchService();
+
+        Set<Path> dirs = new HashSet<>();
+        for (File fh : files) {
+            Path path = fh.toPath().toAbsolutePath().normalize();
+            this.files.add(path);
+            dirs.add(path.getParent());
+        }
+
+        try {
+            for (Path dir : dirs)
+                dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                      StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException ex) {
+            watcher.close();
+            throw ex;
+        }
+
+        thread = new Thread(this::watch, "FileWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch()
+    {
+        Set<File> changed = new HashSet<>();
+        try {
+            while (true) {
+                WatchKey key = changed.isEmpty() ? watcher.take()
+                                                 : watcher.poll(QUIET_TIME, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    Set<File> result = changed;
+                    changed = new HashSet<>();
+                    Platform.runLater(() -> listener.accept(result));
+                    continue;
+                }
+
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+
+                    Path path = dir.resolve((Path) event.context());
+                    if (files.contains(path)) changed.add(path.toFile());
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // watcher has been closed
+        }
+    }
+
+    /**
+     * Stop watching the files. Pending changes are dropped.
+     */
+    @Override
+    public void close()
+    {
+        try {
+            watcher.close();
+        } catch (IOException ex) {
+            // nothing to do
+        }
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.utils;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor, that passes its tasks to another one and counts them in
+ * {@link ExecutorStats}. A cancelled task is still run by the executor, e.g. a
+ * cancelled {@link Errand}, but finishes at once.
+ *
+ * @author Matthias Grimm
+ */
+public final class InstrumentedExecutor
+extends AbstractExecutorService
+{
+    private final ExecutorService executor;
+    private final ExecutorStats stats;
+
+    public InstrumentedExecutor(String name, ExecutorService executor)
+    {
+        this.executor = executor;
+        this.stats = new ExecutorStats(name);
+    }
+
+    public ExecutorStats getStats() { return stats; }
+
+    @Override
+    public void execute(Runnable task)
+    {
+        long submitTime = stats.submitted();
+        try {
+            executor.execute(() -> {
+                long startTime = stats.started(submitTime);
+                try {
+                    task.run();
+                } finally {
+                    stats.finished(submitTime, startTime);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            stats.dropped();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        List<Runnable> tasks = executor.shutdownNow();
+        for (int n=0; n < tasks.size(); n++)
+            stats.dropped();
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
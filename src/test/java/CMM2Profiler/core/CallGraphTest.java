@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Call graph of a small program with a cycle of two functions and a self
+ * recursive function. The expected times are computed by hand from the log.
+ *
+ * @author Matthias Grimm
+ */
+public class CallGraphTest
+{
+    // calls, time per call and code of each line of prog.bas
+    private static final Object[][] PROGRAM = {
+        {1, 2f,  "x = Outer(3)"},
+        {1, 1f,  "Leaf"},
+        {1, 1f,  "y = Fact(4)"},
+        {1, 0f,  "END"},
+        {1, 0f,  "FUNCTION Outer(n)"},
+        {1, 3f,  "  Outer = Ping(n)"},
+        {1, 0f,  "END FUNCTION"},
+        {4, 0f,  "FUNCTION Ping(n)"},
+        {4, 1f,  "  IF n > 0 THEN"},
+        {3, 2f,  "    Ping = Pong(n-1)"},
+        {0, 0f,  "  ELSE"},
+        {1, 1f,  "    Ping = 0"},
+        {4, 0f,  "  ENDIF"},
+        {4, 0f,  "END FUNCTION"},
+        {3, 0f,  "FUNCTION Pong(n)"},
+        {3, 1f,  "  Leaf"},
+        {3, 2f,  "  Pong = Ping(n)"},
+        {3, 0f,  "END FUNCTION"},
+        {4, 0f,  "SUB Leaf"},
+        {4, 10f, "  PAUSE 1"},
+        {4, 0f,  "END SUB"},
+        {4, 0f,  "FUNCTION Fact(n)"},
+        {4, 1f,  "  IF n < 2 THEN"},
+        {1, 1f,  "    Fact = 1"},
+        {0, 0f,  "  ELSE"},
+        {3, 2f,  "    Fact = n * Fact(n-1)"},
+        {4, 0f,  "  ENDIF"},
+        {4, 0f,  "END FUNCTION"},
+    };
+
+    @TempDir
+    Path dir;
+
+    private Source source;
+    private CallGraph graph;
+
+    @BeforeEach
+    public void load() throws IOException
+    {
+        StringBuilder bas = new StringBuilder();
+        StringBuilder csv = new StringBuilder("B:/prog.bas\n");
+        for (int n=0; n < PROGRAM.length; n++) {
+            bas.append(PROGRAM[n][2]).append('\n');
+            csv.append(PROGRAM[n][0]).append(',').append(PROGRAM[n][1]).append(",\"")
+               .append(PROGRAM[n][2]).append("\",,").append(n+1).append('\n');
+        }
+        Files.writeString(dir.resolve("prog.bas"), bas, Charset.defaultCharset());
+        Files.writeString(dir.resolve("prog.csv"), csv, Charset.defaultCharset());
+
+        source = new Source();
+        assertEquals(Source.Mode.SOURCEANDPROFILER, source.load(dir.toString(), "prog"));
+        graph = source.createCallGraph();
+    }
+
+    private int node(String name)
+    {
+        for (Function func : source.getFunctionList())
+            if (func.getName().equals(name)) return graph.indexOf(func);
+        throw new AssertionError("no function " + name);
+    }
+
+    private CallGraph.Call call(String caller, String callee)
+    {
+        for (CallGraph.Call call : graph.getCallers(node(callee)))
+            if (call.getCallerName().equals(caller)) return call;
+        throw new AssertionError("no call from " + caller + " to " + callee);
+    }
+
+    @Test
+    public void nodes()
+    {
+        assertEquals(6, graph.size());
+        int main = graph.size()-1;
+        assertEquals("Main Program", graph.getName(main));
+        assertNull(graph.getFunction(main));
+        assertEquals(4, graph.getCalls(node("Ping")));
+        assertEquals(3, graph.getCalls(node("Pong")));
+    }
+
+    @Test
+    public void selfTimes()
+    {
+        assertEquals(4f, graph.getSelfTime(graph.size()-1));
+        assertEquals(3f, graph.getSelfTime(node("Outer")));
+        assertEquals(11f, graph.getSelfTime(node("Ping")));
+        assertEquals(9f, graph.getSelfTime(node("Pong")));
+        assertEquals(40f, graph.getSelfTime(node("Leaf")));
+        assertEquals(11f, graph.getSelfTime(node("Fact")));
+    }
+
+    @Test
+    public void returnValueIsNoCall()
+    {
+        // "Ping = ..." inside Ping assigns the result, "Fact(n-1)" inside Fact recurses
+        for (CallGraph.Call call : graph.getCallers(node("Ping")))
+            assertNotEquals("Ping", call.getCallerName());
+        assertEquals(2, graph.getCallers(node("Ping")).size());
+        assertTrue(call("Fact", "Fact").isRecursive());
+        assertEquals(3f, call("Fact", "Fact").getCalls());
+    }
+
+    @Test
+    public void callsAreSplitByCallingLines()
+    {
+        assertEquals(1f, call("Main Program", "Leaf").getCalls());
+        assertEquals(3f, call("Pong", "Leaf").getCalls());
+        assertEquals(1f, call("Outer", "Ping").getCalls());
+        assertEquals(3f, call("Pong", "Ping").getCalls());
+        assertEquals(3f, call("Ping", "Pong").getCalls());
+    }
+
+    @Test
+    public void cycles()
+    {
+        int ping = node("Ping"), pong = node("Pong"), fact = node("Fact");
+        assertTrue(graph.isCycle(ping));
+        assertTrue(graph.isCycle(pong));
+        assertTrue(graph.isCycle(fact));
+        assertFalse(graph.isCycle(node("Outer")));
+        assertFalse(graph.isCycle(node("Leaf")));
+
+        assertEquals(graph.getCycleNo(ping), graph.getCycleNo(pong));
+        assertNotEquals(graph.getCycleNo(ping), graph.getCycleNo(fact));
+        assertEquals(0, graph.getCycleNo(node("Outer")));
+
+        assertTrue(call("Ping", "Pong").isRecursive());
+        assertFalse(call("Outer", "Ping").isRecursive());
+    }
+
+    @Test
+    public void inclusiveTimes()
+    {
+        // Leaf: 40, a quarter of it on behalf of the main program
+        assertEquals(40f, graph.getInclusiveTime(node("Leaf")));
+        assertEquals(10f, call("Main Program", "Leaf").getTime());
+        assertEquals(30f, call("Pong", "Leaf").getTime());
+
+        // no time along calls inside the cycle, the cycle is 11 + 9 + 30
+        assertEquals(11f, graph.getInclusiveTime(node("Ping")));
+        assertEquals(39f, graph.getInclusiveTime(node("Pong")));
+        assertEquals(0f, call("Ping", "Pong").getTime());
+        assertEquals(50f, graph.getCycleTime(node("Ping")));
+        assertEquals(50f, graph.getCycleTime(node("Pong")));
+
+        assertEquals(53f, graph.getInclusiveTime(node("Outer")));
+        assertEquals(11f, graph.getInclusiveTime(node("Fact")));
+
+        // the root contains the time of the whole program
+        int main = graph.size()-1;
+        assertEquals(78f, graph.getInclusiveTime(main));
+        assertEquals(List.of("Outer", "Fact", "Leaf"),
+                graph.getCallees(main).stream().map(CallGraph.Call::getCalleeName).toList());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import CMM2Profiler.core.Hotspots.Metric;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The incremental lists of the hottest lines, functions and files against a
+ * full sort of the source after every change.
+ *
+ * @author Matthias Grimm
+ */
+public class HotspotsTest
+{
+    private static final int LINES = 2000;
+    private static final int SIZE = 10;
+
+    private final Random random = new Random(7);
+    private final LineStore store = new LineStore();
+    private final List<SourceFile> files = new ArrayList<>();
+
+    @BeforeEach
+    public void createSource()
+    {
+        for (int n=0; n < LINES; n++) {
+            store.add(n % 20 == 0 ? "SUB Func" + n : "x = " + n);
+            randomize(n);
+        }
+        for (int file=0; file < 12; file++) {
+            SourceFile srcFile = new SourceFile("file" + file, 0, 0);
+            srcFile.getSource().setTime(random.nextInt(50));
+            files.add(srcFile);
+        }
+    }
+
+    // few distinct values, so there are many ties
+    private void randomize(int idx)
+    {
+        store.calls[idx] = random.nextInt(4) == 0 ? 0 : random.nextInt(30);
+        store.time[idx] = random.nextInt(40) / 4f;
+    }
+
+    /**
+     * @return Indices of the lines or function headers with a value, sorted like
+     *         the hotspots: the largest value first, equal values by their index
+     */
+    private List<Integer> expected(Metric metric, boolean functions)
+    {
+        ArrayList<Integer> list = new ArrayList<>();
+        for (int idx=0; idx < store.size; idx++) {
+            boolean isFunction = (store.flags[idx] & MMBasic.FUNCTION) != 0;
+            if (isFunction == functions && value(idx, metric) > 0) list.add(idx);
+        }
+        list.sort(Comparator.comparingDouble((Integer idx) -> value(idx, metric)).reversed()
+                            .thenComparing(Comparator.naturalOrder()));
+        return list.subList(0, Math.min(SIZE, list.size()));
+    }
+
+    private double value(int idx, Metric metric)
+    {
+        return Hotspots.valueOf(new SourceLine(store, idx), metric);
+    }
+
+    private static List<Integer> indices(List<SourceLine> lines)
+    {
+        ArrayList<Integer> list = new ArrayList<>();
+        for (SourceLine srcLine : lines) list.add(srcLine.getIndex());
+        return list;
+    }
+
+    private void check(Hotspots hotspots)
+    {
+        for (Metric metric : Metric.values()) {
+            assertEquals(expected(metric, false), indices(hotspots.getLines(metric)), metric.name());
+            assertEquals(expected(metric, true), indices(hotspots.getFunctions(metric)), metric.name());
+        }
+
+        ArrayList<SourceFile> sorted = new ArrayList<>(files);
+        sorted.removeIf(srcFile -> srcFile.getSource().getTime() <= 0);
+        sorted.sort(Comparator.comparingDouble((SourceFile srcFile) -> srcFile.getSource().getTime()).reversed()
+                              .thenComparing(files::indexOf));
+        ArrayList<SourceLine> headers = new ArrayList<>();
+        for (SourceFile srcFile : sorted.subList(0, Math.min(SIZE, sorted.size())))
+            headers.add(srcFile.getSource());
+        assertEquals(headers, hotspots.getFiles());
+    }
+
+    @Test
+    public void scan()
+    {
+        Hotspots hotspots = new Hotspots(store, files, SIZE);
+        check(hotspots);
+        assertEquals(1, hotspots.getScans());
+        assertFalse(hotspots.update());
+    }
+
+    @Test
+    public void fewChangedLines()
+    {
+        Hotspots hotspots = new Hotspots(store, files, SIZE);
+        for (int round=0; round < 500; round++) {
+            for (int n=random.nextInt(5); n >= 0; n--) {
+                int idx = random.nextInt(LINES);
+                switch (random.nextInt(4)) {
+                    case 0 -> store.calls[idx] = 0;                     // drop out
+                    case 1 -> store.time[idx] += 100;                   // new hottest
+                    default -> randomize(idx);
+                }
+            }
+            // the time of a file changes with the time of its lines
+            store.time[random.nextInt(LINES)] += 0.25f;
+            files.get(random.nextInt(files.size())).getSource().setTime(random.nextInt(50));
+
+            assertTrue(hotspots.update());
+            check(hotspots);
+        }
+        // most rounds are answered from the heaps
+        assertTrue(hotspots.getScans() < 250, "scans: " + hotspots.getScans());
+    }
+
+    @Test
+    public void hottestLinesDropOut()
+    {
+        Hotspots hotspots = new Hotspots(store, files, SIZE);
+        for (int round=0; round < 50; round++) {
+            for (SourceLine srcLine : hotspots.getLines(Metric.TOTAL_TIME))
+                store.time[srcLine.getIndex()] = 0;
+
+            assertTrue(hotspots.update());
+            check(hotspots);
+        }
+    }
+
+    @Test
+    public void mostLinesChanged()
+    {
+        Hotspots hotspots = new Hotspots(store, files, SIZE);
+        for (int idx=0; idx < LINES; idx++) randomize(idx);
+
+        assertTrue(hotspots.update());
+        check(hotspots);
+        assertEquals(2, hotspots.getScans());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Classification and reference tokens of the single-pass lexer.
+ *
+ * @author Matthias Grimm
+ */
+public class MMBasicTest
+{
+    private final LineStore store = new LineStore();
+
+    private int flags(String line)
+    {
+        return store.flags[store.add(line)];
+    }
+
+    private List<String> tokens(String line)
+    {
+        int idx = store.add(line);
+        ArrayList<String> list = new ArrayList<>();
+        for (int n=0; n < store.tokenCnt[idx]; n++) {
+            int token = store.tokens[store.tokenFirst[idx] + n];
+            list.add(store.source[idx].substring(LineStore.tokenStart(token), LineStore.tokenEnd(token)));
+        }
+        return list;
+    }
+
+    @Test
+    public void functionHeaders()
+    {
+        int idx = store.add("SUB DrawBox x, y");
+        assertEquals(MMBasic.FUNCTION | MMBasic.BLOCK_OPEN, store.flags[idx]);
+        assertEquals("DrawBox", store.name[idx]);
+
+        idx = store.add("Function Area%(w, h)");
+        assertEquals(MMBasic.FUNCTION | MMBasic.FUNCTION_KW | MMBasic.BLOCK_OPEN, store.flags[idx]);
+        assertEquals("Area%", store.name[idx]);
+
+        idx = store.add("SUB");
+        assertEquals("<INVALID>", store.name[idx]);
+    }
+
+    @Test
+    public void keywordsAreWholeWords()
+    {
+        assertEquals(0, flags("subtotal = 1"));
+        assertEquals(0, flags("Sub557 a, b"));
+        assertEquals(0, flags("dot = 1"));
+        assertEquals(0, flags("iffy = 2"));
+        assertNull(store.name[store.add("subtotal = 1")]);
+    }
+
+    @Test
+    public void blockEnds()
+    {
+        assertEquals(MMBasic.END_FUNCTION | MMBasic.BLOCK_CLOSE, flags("END SUB"));
+        assertEquals(MMBasic.END_FUNCTION | MMBasic.BLOCK_CLOSE, flags("end function"));
+        assertEquals(MMBasic.BLOCK_CLOSE, flags("END IF"));
+        assertEquals(MMBasic.BLOCK_CLOSE, flags("ENDIF"));
+        assertEquals(MMBasic.BLOCK_CLOSE, flags("End Select"));
+        assertEquals(MMBasic.BLOCK_CLOSE, flags("NEXT i"));
+        assertEquals(MMBasic.BLOCK_CLOSE, flags("LOOP UNTIL x > 3"));
+        assertEquals(0, flags("END"));
+    }
+
+    @Test
+    public void blockStartsAndMiddles()
+    {
+        assertEquals(MMBasic.BLOCK_OPEN, flags("IF x > 1 THEN"));
+        assertEquals(MMBasic.BLOCK_OPEN, flags("FOR i = 1 TO 10"));
+        assertEquals(MMBasic.BLOCK_OPEN, flags("DO WHILE x < 3"));
+        assertEquals(MMBasic.BLOCK_OPEN, flags("SELECT CASE k"));
+        assertEquals(MMBasic.BLOCK_MIDDLE, flags("ELSE"));
+        assertEquals(MMBasic.BLOCK_MIDDLE, flags("ELSEIF x = 2 THEN"));
+        assertEquals(MMBasic.BLOCK_MIDDLE, flags("CASE 1, 2"));
+    }
+
+    @Test
+    public void oneLinersDontOpenBlocks()
+    {
+        assertEquals(0, flags("IF x > 1 THEN PRINT x"));
+        assertEquals(0, flags("FOR i = 1 TO 3 : PRINT i : NEXT i"));
+        assertEquals(0, flags("DO : x = x + 1 : LOOP UNTIL x > 3"));
+        assertEquals(MMBasic.BLOCK_OPEN, flags("IF x > 1 THEN ' PRINT x"));
+    }
+
+    @Test
+    public void referenceTokens()
+    {
+        assertEquals(List.of("DrawBox", "y"), tokens("DrawBox x, y"));   // "x," isn't followed by " (:"
+        assertEquals(List.of("a", "Area%"), tokens("a = Area%(w, 3)"));
+        assertEquals(List.of("PRINT", "b"), tokens("PRINT a+b"));
+        assertEquals(List.of("x", "z"), tokens("x:y=z"));
+        assertEquals(List.of(), tokens(""));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Rows of the profiler log as the RFC-4180 tokenizer splits them.
+ *
+ * @author Matthias Grimm
+ */
+public class ProfilerLogTest
+{
+    @TempDir
+    Path dir;
+
+    private ProfilerLog open(String... rows) throws IOException
+    {
+        File fh = dir.resolve("prog.csv").toFile();
+        Files.writeString(fh.toPath(), String.join("\n", rows) + "\n", Charset.defaultCharset());
+        return ProfilerLog.open(fh);
+    }
+
+    @Test
+    public void plainRow() throws IOException
+    {
+        try (ProfilerLog log = open("B:/test/prog.bas", "12,1.5,\"PRINT x\",,7")) {
+            assertTrue(log.next());
+            assertEquals(12, log.getCalls());
+            assertEquals(1.5f, log.getTime());
+            assertEquals("PRINT x", log.getCode());
+            assertEquals("", log.getFileName());
+            assertEquals(7, log.getLineNo());
+            assertFalse(log.next());
+        }
+    }
+
+    @Test
+    public void quotedComma() throws IOException
+    {
+        try (ProfilerLog log = open("B:/prog.bas", "1,2,\"PRINT a, b, c\",lib.inc,3")) {
+            assertTrue(log.next());
+            assertEquals("PRINT a, b, c", log.getCode());
+            assertEquals("lib.inc", log.getFileName());
+            assertEquals(3, log.getLineNo());
+        }
+    }
+
+    @Test
+    public void escapedQuotes() throws IOException
+    {
+        try (ProfilerLog log = open("B:/prog.bas", "1,2,\"#INCLUDE \"\"lib.inc\"\"\",,3")) {
+            assertTrue(log.next());
+            assertEquals("#INCLUDE \"lib.inc\"", log.getCode());
+            assertEquals(3, log.getLineNo());
+        }
+    }
+
+    @Test
+    public void lineBreakInQuotedField() throws IOException
+    {
+        try (ProfilerLog log = open("B:/prog.bas", "1,2,\"PRINT \"\"a\nb\"\"\",,3", "4,5,\"x = 1\",,4")) {
+            assertTrue(log.next());
+            assertEquals("PRINT \"a\nb\"", log.getCode());
+            assertEquals(3, log.getLineNo());
+            assertTrue(log.next());
+            assertEquals(4, log.getLineNo());
+        }
+    }
+
+    @Test
+    public void crlf() throws IOException
+    {
+        try (ProfilerLog log = open("B:/prog.bas\r", "1,0.25,\"x = 1\",,1\r", "2,0.5,\"y = 2\",lib.inc,2\r")) {
+            assertTrue(log.next());
+            assertEquals(0.25f, log.getTime());
+            assertEquals(1, log.getLineNo());
+            assertTrue(log.next());
+            assertEquals("lib.inc", log.getFileName());
+            assertEquals(2, log.getLineNo());
+            assertFalse(log.next());
+        }
+    }
+
+    @Test
+    public void decimalComma() throws IOException
+    {
+        try (ProfilerLog log = open("B:/prog.bas", "3,1,75,\"x = 1\",,1", "3,\"2,5\",\"y = 2\",,2", "3,7,\"z = 3\",,3")) {
+            assertTrue(log.next());
+            assertEquals(1.75f, log.getTime());
+            assertEquals("x = 1", log.getCode());
+            assertEquals(1, log.getLineNo());
+            assertTrue(log.next());
+            assertEquals(2.5f, log.getTime());
+            assertTrue(log.next());
+            assertEquals(7f, log.getTime());
+        }
+    }
+
+    @Test
+    public void exponentAndSign() throws IOException
+    {
+        try (ProfilerLog log = open("B:/prog.bas", "-1,1.5E+2,\"x\",,1", "1,+2.5e-1,\"y\",,2")) {
+            assertTrue(log.next());
+            assertEquals(-1, log.getCalls());
+            assertEquals(150f, log.getTime());
+            assertTrue(log.next());
+            assertEquals(0.25f, log.getTime());
+        }
+    }
+
+    @Test
+    public void shortAndEmptyRowsAreSkipped() throws IOException
+    {
+        try (ProfilerLog log = open("B:/prog.bas", "", "1,2,3", "   ", "1,2,\"x\",,9")) {
+            assertTrue(log.next());
+            assertEquals(9, log.getLineNo());
+            assertFalse(log.next());
+        }
+    }
+
+    @Test
+    public void fileNameIsShared() throws IOException
+    {
+        try (ProfilerLog log = open("B:/prog.bas", "1,2,\"x\",lib.inc,1", "1,2,\"y\",lib.inc,2")) {
+            assertTrue(log.next());
+            String name = log.getFileName();
+            assertTrue(log.next());
+            assertSame(name, log.getFileName());
+        }
+    }
+
+    @Test
+    public void badHeader()
+    {
+        assertThrows(IOException.class, () -> open("B:/prog.txt", "1,2,\"x\",,1"));
+        assertThrows(IOException.class, () -> open(""));
+    }
+}
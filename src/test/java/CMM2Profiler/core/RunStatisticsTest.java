@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import CMM2Profiler.core.RunStatistics.Statistic;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Statistics of several runs, exact for few runs and estimated for many.
+ *
+ * @author Matthias Grimm
+ */
+public class RunStatisticsTest
+{
+    private static ProfileRun run(float time, int calls, float fileTime)
+    {
+        ProfileRun run = new ProfileRun("run", 1, 1);
+        run.time[0] = time;
+        run.calls[0] = calls;
+        run.fileTime[0] = fileTime;
+        return run;
+    }
+
+    @Test
+    public void fewRunsAreExact()
+    {
+        RunStatistics stats = new RunStatistics(List.of(run(4, 10, 40), run(1, 20, 10), run(7, 30, 70), run(2, 40, 20)));
+
+        assertEquals(4, stats.getRunCnt());
+        assertEquals(3.5f, stats.getTime(Statistic.MEAN, 0), 1e-6);
+        assertEquals(3f, stats.getTime(Statistic.MEDIAN, 0), 1e-6);
+        assertEquals((float) Math.sqrt(7), stats.getTime(Statistic.STDDEV, 0), 1e-6);
+        assertEquals(1f, stats.getTime(Statistic.MIN, 0));
+        assertEquals(7f, stats.getTime(Statistic.MAX, 0));
+        assertEquals(6.1f, stats.getTime(Statistic.P90, 0), 1e-6);
+        assertEquals(25f, stats.getCalls(Statistic.MEDIAN, 0), 1e-6);
+        assertEquals(61f, stats.getFileTime(Statistic.P90, 0), 1e-5);
+
+        ProfileRun median = stats.toProfileRun(Statistic.MEDIAN);
+        assertEquals("median of 4 runs", median.getName());
+        assertEquals(25, median.getCalls(0));
+        assertEquals(3f, median.getTime(0), 1e-6);
+    }
+
+    @Test
+    public void singleRun()
+    {
+        RunStatistics stats = new RunStatistics(List.of(run(5, 1, 5)));
+        for (Statistic stat : Statistic.values())
+            assertEquals(stat == Statistic.STDDEV ? 0f : 5f, stats.getTime(stat, 0));
+    }
+
+    @Test
+    public void manyRunsAreEstimated()
+    {
+        Random random = new Random(42);
+        int cnt = 2000;
+        float[] samples = new float[cnt];
+        RunStatistics stats = new RunStatistics(1, 1);
+        double sum = 0;
+        for (int n=0; n < cnt; n++) {
+            samples[n] = 100 + random.nextInt(1000);
+            sum += samples[n];
+            stats.add(run(samples[n], n, 0));
+        }
+        double mean = sum / cnt;
+        double square = 0;
+        for (float value : samples) square += (value - mean) * (value - mean);
+        Arrays.sort(samples);
+
+        assertEquals(mean, stats.getTime(Statistic.MEAN, 0), 1e-3);
+        assertEquals(Math.sqrt(square / (cnt-1)), stats.getTime(Statistic.STDDEV, 0), 1e-3);
+        assertEquals(samples[0], stats.getTime(Statistic.MIN, 0));
+        assertEquals(samples[cnt-1], stats.getTime(Statistic.MAX, 0));
+        assertEquals(samples[cnt/2], stats.getTime(Statistic.MEDIAN, 0), 20);
+        assertEquals(samples[cnt*9/10], stats.getTime(Statistic.P90, 0), 20);
+    }
+
+    @Test
+    public void runsOfDifferentSources()
+    {
+        RunStatistics stats = new RunStatistics(1, 1);
+        assertThrows(IllegalArgumentException.class, () -> stats.add(new ProfileRun("other", 2, 1)));
+        assertThrows(IllegalArgumentException.class, () -> new RunStatistics(List.of()));
+    }
+}
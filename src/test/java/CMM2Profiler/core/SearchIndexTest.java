@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.core;
+
+import java.util.List;
+import java.util.Locale;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Literals of regular expressions and case insensitive searches of the trigram
+ * index.
+ *
+ * @author Matthias Grimm
+ */
+public class SearchIndexTest
+{
+    private static SearchIndex index(String... code)
+    {
+        LineStore store = new LineStore();
+        for (String line : code) store.add(line);
+        return new SearchIndex(store);
+    }
+
+    @Test
+    public void literals()
+    {
+        assertEquals(List.of("drawbox"), SearchIndex.literals("DrawBox"));
+        assertEquals(List.of("func", "(a, b)"), SearchIndex.literals("Func\\d+\\(a, b\\)"));
+        assertEquals(List.of("abc", "def"), SearchIndex.literals("abc.*def"));
+        assertEquals(List.of("abc"), SearchIndex.literals("abcd?"));
+        assertEquals(List.of("sub"), SearchIndex.literals("sub[0-9]{2}"));
+        assertEquals(List.of("name", "end"), SearchIndex.literals("name(xy)*end"));
+        assertEquals(List.of(), SearchIndex.literals("name(x|y)*end"));
+        assertEquals(List.of(), SearchIndex.literals("abc|def"));
+        assertEquals(List.of("a.b"), SearchIndex.literals("a\\.b"));
+    }
+
+    @Test
+    public void escapesAreSkipped()
+    {
+        assertEquals(List.of("bcd"), SearchIndex.literals("\\x41bcd"));
+        assertEquals(List.of("bcd"), SearchIndex.literals("\\x{41}bcd"));
+        assertEquals(List.of("bcd"), SearchIndex.literals("\\u0041bcd"));
+        assertEquals(List.of("bcd"), SearchIndex.literals("\\0101bcd"));
+        assertEquals(List.of("bcd"), SearchIndex.literals("\\cAbcd"));
+        assertEquals(List.of("bcd"), SearchIndex.literals("\\p{Lu}bcd"));
+        assertEquals(List.of("bcd"), SearchIndex.literals("\\pLbcd"));
+        assertEquals(List.of("bcd"), SearchIndex.literals("(?<n>x)\\k<n>bcd"));
+        assertEquals(List.of("bcd"), SearchIndex.literals("\\Qa.b\\Ebcd"));
+        assertEquals(List.of("abc", "def"), SearchIndex.literals("abc\\s+def"));
+    }
+
+    @Test
+    public void findIgnoresCase()
+    {
+        SearchIndex index = index("PRINT Total", "print total", "x = total", "' no match");
+        assertArrayEquals(new int[] {0, 1}, index.find("Print TOTAL").getLines());
+        assertArrayEquals(new int[] {0, 1, 2}, index.findRegex("TOT?AL").getLines());
+        assertArrayEquals(new int[] {0, 1}, index.findRegex("\\x50rint").getLines());
+    }
+
+    @Test
+    public void findDoesntDependOnLocale()
+    {
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            SearchIndex index = index("IF x THEN", "if y then", "Giİ = 1");
+            assertArrayEquals(new int[] {0, 1}, index.find("IF").getLines());
+            assertArrayEquals(new int[] {0, 1}, index.find("if").getLines());
+            assertArrayEquals(new int[] {2}, index.find("giİ =").getLines());
+            assertArrayEquals(new int[] {2}, index.findRegex("GIİ =").getLines());
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
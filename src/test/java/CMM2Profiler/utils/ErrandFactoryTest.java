@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2026 grimm
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package CMM2Profiler.utils;
+
+import CMM2Profiler.core.ProfileRun;
+import CMM2Profiler.core.Source;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javafx.application.Platform;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * A reload of the profiler log, e.g. by the file watcher, must not get in the
+ * way of a source load. The errands report their events on the FX application
+ * thread, so the tests are skipped without a display.
+ *
+ * @author Matthias Grimm
+ */
+public class ErrandFactoryTest
+{
+    private static final String[] PROGRAM = {
+        "x = Twice(3)",
+        "PRINT x",
+        "END",
+        "FUNCTION Twice(n)",
+        "  Twice = 2 * n",
+        "END FUNCTION",
+    };
+
+    private static boolean toolkit;
+
+    @TempDir
+    Path dir;
+
+    private Source shown;
+
+    @BeforeAll
+    public static void startToolkit() throws InterruptedException
+    {
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            Platform.startup(started::countDown);
+            toolkit = started.await(10, TimeUnit.SECONDS);
+        } catch (IllegalStateException ex) {
+            toolkit = true;     // already started
+        } catch (RuntimeException ex) {
+            toolkit = false;    // no display
+        }
+    }
+
+    @BeforeEach
+    public void load() throws IOException
+    {
+        assumeTrue(toolkit, "JavaFX toolkit not available");
+
+        StringBuilder bas = new StringBuilder();
+        StringBuilder csv = new StringBuilder("B:/prog.bas\n");
+        for (int n=0; n < PROGRAM.length; n++) {
+            bas.append(PROGRAM[n]).append('\n');
+            csv.append("1,1,\"").append(PROGRAM[n]).append("\",,").append(n+1).append('\n');
+        }
+        Files.writeString(dir.resolve("prog.bas"), bas, Charset.defaultCharset());
+        Files.writeString(dir.resolve("prog.csv"), csv, Charset.defaultCharset());
+
+        shown = new Source();
+        assertEquals(Source.Mode.SOURCEANDPROFILER, shown.load(dir.toString(), "prog"));
+    }
+
+    /**
+     * Wait until the events, that are queued on the FX application thread, have
+     * been delivered.
+     */
+    private static void drainEvents() throws Exception
+    {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Platform.runLater(() -> done.complete(null));
+        done.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void reloadDoesntCancelSourceLoad() throws Exception
+    {
+        CompletableFuture<String> load = new CompletableFuture<>();
+        List<String> reload = new CopyOnWriteArrayList<>();
+        Platform.runLater(() -> {
+            ErrandFactory.execErrandLoadSource(dir.toString(), "prog",
+                    ev -> load.complete("succeeded"), ev -> load.complete("failed"));
+            ErrandFactory.execErrandLoadProfileRun(shown, shown.getProfilerLogFile(),
+                    ev -> reload.add("succeeded"), ev -> reload.add("failed"));
+        });
+
+        assertEquals("succeeded", load.get(30, TimeUnit.SECONDS));
+        drainEvents();
+        assertTrue(reload.isEmpty(), "reload reported " + reload);
+    }
+
+    @Test
+    public void sourceLoadDropsReload() throws Exception
+    {
+        CompletableFuture<String> load = new CompletableFuture<>();
+        List<String> reload = new CopyOnWriteArrayList<>();
+        Platform.runLater(() -> {
+            ErrandFactory.execErrandLoadProfileRun(shown, shown.getProfilerLogFile(),
+                    ev -> reload.add("succeeded"), ev -> reload.add("failed"));
+            ErrandFactory.execErrandLoadSource(dir.toString(), "prog",
+                    ev -> load.complete("succeeded"), ev -> load.complete("failed"));
+        });
+
+        assertEquals("succeeded", load.get(30, TimeUnit.SECONDS));
+        drainEvents();
+        assertTrue(reload.isEmpty(), "reload reported " + reload);
+    }
+
+    @Test
+    public void reload() throws Exception
+    {
+        CompletableFuture<Object> reload = new CompletableFuture<>();
+        Platform.runLater(() ->
+            ErrandFactory.execErrandLoadProfileRun(shown, shown.getProfilerLogFile(),
+                    ev -> reload.complete(ev.getSource().getValue()), ev -> reload.complete("failed")));
+
+        Object run = reload.get(30, TimeUnit.SECONDS);
+        assertTrue(run instanceof ProfileRun, "reload reported " + run);
+    }
+}